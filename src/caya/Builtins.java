@@ -1,38 +1,21 @@
 package caya;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.WeakReference;
 import java.math.BigInteger;
-import java.util.LinkedHashMap;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
 
-import scala.collection.JavaConverters;
-import scala.collection.mutable.ArrayDeque;
-import scala.collection.ArrayOps;
 
 import caya.Runtime.Value;
 
 public final class Builtins {
   public static final Int math_sign(Int value) {
-    return switch(value.value.signum()) {
-      case -1 -> new Int(BigInteger.ONE.negate());
-      case 0 -> new Int(BigInteger.ZERO);
-      case 1 -> new Int(BigInteger.ONE);
-      default -> { throw new RuntimeException("impossible"); }
-    };
-  }
-
-  public static final Module load(Str path) throws java.io.IOException {
-    var p = java.nio.file.Path.of(path.value);
-    var code = java.nio.file.Files.readString(p, java.nio.charset.StandardCharsets.UTF_8);
-    var node = ParserHelper.parse(code);
-    var exprs = switch(node) {
-      case Node.Seq(_, var nodes) -> nodes;
-      default -> Arrays.asList(node);
-    };
-    var scope = new Interpreter.Scope(Interpreter.root, null, false, false);
-    scope.eval_all(exprs);
-    return new Module(p.getFileName().toString(), scope.bindings);
+    return Int.of(value.signum());
   }
 
   public static final Str http_get(Str url) throws java.io.IOException, java.net.URISyntaxException {
@@ -45,6 +28,15 @@ public final class Builtins {
     }
   }
 
+  public static final Task task_spawn(Value fn) { return Task.spawn(fn); }
+  public static final Value task_join(Task task) { return task.join(); }
+  public static final Value task_scope(Value body) { return Task.scope(body); }
+  public static final void par_each(Value items, Value fn) { Parallel.each(items, fn); }
+  public static final Value par_reduce(Value items, Value fn, Value combine, Value initial) { return Parallel.reduce(items, fn, combine, initial); }
+  public static final Parallel.Range par_range(Value... bounds) { return Parallel.Range.create(bounds); }
+  public static final Channel task_channel(Value... capacity) { return Channel.create(capacity); }
+  public static final Channel.Actor task_actor(Value handler, Value state, Value... capacity) { return Channel.Actor.create(handler, state, capacity); }
+
   public static final Runtime.Type typeof(Value v) {
     return v.type();
   }
@@ -53,16 +45,70 @@ public final class Builtins {
     return v.type() == t ? TRUE : FALSE;  // TODO: handle inheritance
   }
 
-  public static JVM.Cls jvm_cls(Str class_name) throws ClassNotFoundException { return new JVM.Cls(JVM.class.getClassLoader().loadClass(class_name.value)); }
+  public static JVM.Cls jvm_cls(Str class_name) throws ClassNotFoundException { return JVM.cls(JVM.class.getClassLoader().loadClass(class_name.value)); }
 
+  // Values that fit in a `long` are stored in `small` (and `big` is `null`); larger values are promoted to `big`.
+  // Every value has exactly one representation, so `equals` and `hashCode` don't depend on how an `Int` was created.
   public final static class Int extends Value {
-    public final BigInteger value;
-    public Int(BigInteger value) { this.value = value; }
-    public Int(int value) { this.value = BigInteger.valueOf(value); }
-    public Int(long value) { this.value = BigInteger.valueOf(value); }
-    @Override public String toString() { return value.toString(); }
-    @Override public int hashCode() { return value.hashCode(); }
-    @Override public boolean equals(Object other) { return other instanceof Int i && i.value.equals(this.value); }
+    public final long small;
+    public final BigInteger big;
+    private Int(long small, BigInteger big) { this.small = small; this.big = big; }
+
+    private static final int CACHE_LOW = -128, CACHE_HIGH = 1024;
+    private static final Int[] CACHE = new Int[CACHE_HIGH - CACHE_LOW + 1];
+    static {
+      for(var i = 0; i < CACHE.length; i++) { CACHE[i] = new Int(i + CACHE_LOW, null); }
+    }
+
+    public static Int of(long value) {
+      return value >= CACHE_LOW && value <= CACHE_HIGH ? CACHE[(int) value - CACHE_LOW] : new Int(value, null);
+    }
+    public static Int of(BigInteger value) { return value.bitLength() < 64 ? of(value.longValue()) : new Int(0, value); }
+
+    public BigInteger big_value() { return big != null ? big : BigInteger.valueOf(small); }
+    public int int32() { if(big != null || (int) small != small) { throw new ArithmeticException("integer out of int range"); } return (int) small; }
+    public long int64() { if(big != null) { throw new ArithmeticException("integer out of long range"); } return small; }
+
+    public Int add(Int other) {
+      if(big == null && other.big == null) {
+        try { return of(Math.addExact(small, other.small)); } catch(ArithmeticException e) {}
+      }
+      return of(big_value().add(other.big_value()));
+    }
+    public Int subtract(Int other) {
+      if(big == null && other.big == null) {
+        try { return of(Math.subtractExact(small, other.small)); } catch(ArithmeticException e) {}
+      }
+      return of(big_value().subtract(other.big_value()));
+    }
+    public Int multiply(Int other) {
+      if(big == null && other.big == null) {
+        try { return of(Math.multiplyExact(small, other.small)); } catch(ArithmeticException e) {}
+      }
+      return of(big_value().multiply(other.big_value()));
+    }
+    public Int negate() {
+      if(big == null && small != Long.MIN_VALUE) { return of(-small); }
+      return of(big_value().negate());
+    }
+    public int signum() { return big != null ? big.signum() : Long.signum(small); }
+    public int compareTo(Int other) {
+      if(big == null && other.big == null) { return Long.compare(small, other.small); }
+      return big_value().compareTo(other.big_value());
+    }
+
+    @Override public String toString() { return big != null ? big.toString() : Long.toString(small); }
+    // same as `BigInteger.hashCode`, without allocating a `BigInteger`
+    @Override public int hashCode() {
+      if(big != null) { return big.hashCode(); }
+      var magnitude = small < 0 ? -small : small;     // unsigned, also for `Long.MIN_VALUE`
+      var high = (int) (magnitude >>> 32);
+      var low = (int) magnitude;
+      return (high != 0 ? 31 * high + low : low) * Long.signum(small);
+    }
+    @Override public boolean equals(Object other) {
+      return other instanceof Int i && (big == null ? i.big == null && i.small == small : big.equals(i.big));
+    }
     public static Int create(Value[] args, Map<String, Value> named_args) {
       if(named_args != null && !named_args.isEmpty()) {
         throw new Interpreter.InterpreterError("int(...) cannot be called with named arguments");
@@ -72,7 +118,7 @@ public final class Builtins {
       }
       return switch(args[0]) {
         case Int i -> i;
-        case Str s -> new Int(new BigInteger(s.value));
+        case Str s -> of(new BigInteger(s.value));
         default -> throw new Interpreter.InterpreterError("unexpected type: " + args[0].getClass());
       };
     }
@@ -110,26 +156,114 @@ public final class Builtins {
 
   public static Value null_to_none(Value value) { return value == null ? Builtins.NONE : value; }
 
+  // A builtin Java method, adapted once to a `MethodHandle` of generic type that takes the receiver (ignored by static
+  // methods) followed by the arguments, so that calls don't go through reflection. Methods with more parameters take
+  // the arguments as an array instead; so do varargs methods, whose handles collect the trailing arguments into an
+  // array of the varargs type, adapted once for each number of arguments.
+  public static final class Builtin {
+    private static final int MAX_DIRECT = 3;      // more parameters than this are spread from an array
+    private static final int MAX_CACHED = 16;     // varargs handles for more arguments than this are adapted per call
+
+    public final java.lang.reflect.Method m;
+    private final Class<?> declaring;
+    private final int params;                     // not counting the receiver, varargs count as one
+    private final Class<?> varargs;               // component type of the varargs parameter, or `null`
+    private final MethodHandle handle;            // the receiver and either each argument or an array of arguments
+    private final MethodHandle[] collectors;      // for varargs methods, the handle for each number of arguments
+
+    public Builtin(java.lang.reflect.Method m) {
+      this.m = m;
+      this.declaring = m.getDeclaringClass();
+      this.params = m.getParameterCount();
+      this.varargs = m.isVarArgs() ? m.getParameterTypes()[params - 1].componentType() : null;
+      try {
+        var handle = MethodHandles.publicLookup().unreflect(m).asFixedArity();
+        if(java.lang.reflect.Modifier.isStatic(m.getModifiers())) { handle = MethodHandles.dropArguments(handle, 0, Object.class); }
+        if(varargs != null) {
+          this.handle = handle;
+          this.collectors = new MethodHandle[MAX_CACHED + 1];
+        } else {
+          handle = handle.asType(MethodType.genericMethodType(params + 1));
+          this.handle = params > MAX_DIRECT ? handle.asSpreader(1, Object[].class, params) : handle;
+          this.collectors = null;
+        }
+      } catch(IllegalAccessException e) { throw new RuntimeException(e); }
+    }
+
+    // the handle of a varargs method for `count` arguments, taking the receiver and an array of arguments
+    private MethodHandle collector(int count) {
+      var collector = count <= MAX_CACHED ? collectors[count] : null;
+      if(collector == null) {
+        var rest = count - params + 1;
+        collector = handle.asCollector(handle.type().lastParameterType(), rest)
+          .asType(MethodType.genericMethodType(count + 1))
+          .asSpreader(1, Object[].class, count);
+        if(count <= MAX_CACHED) { collectors[count] = collector; }
+      }
+      return collector;
+    }
+
+    public Value invoke(Value obj, Value[] args) {
+      if(obj != null && declaring != obj.getClass()) {
+        throw new Interpreter.InterpreterError("wrong type");
+      }
+      if(varargs != null ? args.length < params - 1 : args.length != params) { throw arity(args.length); }
+      try {
+        var result = varargs != null ? (Object) collector(args.length).invokeExact((Object) obj, (Object[]) args) : switch(params) {
+          case 0 -> (Object) handle.invokeExact((Object) obj);
+          case 1 -> (Object) handle.invokeExact((Object) obj, (Object) args[0]);
+          case 2 -> (Object) handle.invokeExact((Object) obj, (Object) args[0], (Object) args[1]);
+          case 3 -> (Object) handle.invokeExact((Object) obj, (Object) args[0], (Object) args[1], (Object) args[2]);
+          default -> (Object) handle.invokeExact((Object) obj, (Object[]) args);
+        };
+        return null_to_none((Value) result);
+      } catch(ClassCastException e) {
+        if(!accepts(args)) { throw new Interpreter.InterpreterError("wrong argument types for builtin `" + m.getName() + "`"); }
+        throw e;
+      } catch(RuntimeException | Error e) {
+        throw e;
+      } catch(Throwable e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private Interpreter.InterpreterError arity(int count) {
+      return new Interpreter.InterpreterError("builtin `" + m.getName() + "` expects " + (varargs != null ? "at least " + (params - 1) : params) + " arguments, got " + count);
+    }
+
+    // only called to tell apart a bad argument from a `ClassCastException` thrown by the builtin itself
+    private boolean accepts(Value[] args) {
+      var types = m.getParameterTypes();
+      for(var i = 0; i < args.length; i++) {
+        var type = varargs != null && i >= params - 1 ? varargs : types[i];
+        if(args[i] != null && !MethodType.methodType(type).wrap().returnType().isInstance(args[i])) { return false; }
+      }
+      return true;
+    }
+
+    @Override public int hashCode() { return m.hashCode(); }
+    @Override public boolean equals(Object other) { return other instanceof Builtin b && b.m.equals(this.m); }
+  }
+
   sealed public static interface Descriptor {
-    public java.lang.reflect.Method m();
+    public Builtin builtin();
+    public default java.lang.reflect.Method m() { return builtin().m; }
     public Value call(Value obj, Value[] args);
     public Value get(Value obj);
   }
 
-  public record Property(java.lang.reflect.Method m) implements Descriptor {
-    @Override public Value get(Value obj) {
-      try {
-        return null_to_none((Value) m.invoke(obj));
-      } catch (Throwable e) { throw new RuntimeException(e); }
-    }
+  public record Property(Builtin builtin) implements Descriptor {
+    @Override public Value get(Value obj) { return builtin.invoke(obj, NO_ARGS); }
     @Override public Value call(Value obj, Value[] args) { return get(obj).call(args, null); }
   }
 
-  public record Method(java.lang.reflect.Method m) implements Descriptor {
+  public record Method(Builtin builtin) implements Descriptor {
     @Override public Value get(Value obj) { return new BoundMethod(obj, this); }
-    @Override public Value call(Value obj, Value[] args) { return invoke(m, obj, args); }
+    @Override public Value call(Value obj, Value[] args) { return builtin.invoke(obj, args); }
   }
 
+  private static final Value[] NO_ARGS = new Value[0];
+
   private static java.lang.reflect.Method find_unique(Class<?> cls, String name) {
     java.lang.reflect.Method found = null;
     for(var m : cls.getMethods()) {
@@ -154,15 +288,6 @@ public final class Builtins {
     }
   }
 
-  private static Value invoke(java.lang.reflect.Method m, Value obj, Value[] args) {
-    if(obj != null && m.getDeclaringClass() != obj.getClass()) {
-      throw new Interpreter.InterpreterError("wrong type");
-    }
-    try {
-      return null_to_none((Value) m.invoke(obj, JVM.prepare_arguments(m, args)));
-    } catch (Throwable e) { throw new RuntimeException(e); }
-  }
-
   public static abstract class BuiltinValue extends Value {
     public abstract HashMap<String, Descriptor> attrs();
 
@@ -177,10 +302,10 @@ public final class Builtins {
     public static HashMap<String, Descriptor> resolve_attrs(Class<?> cls, String[] props, String[] methods) {
       var descriptors = new HashMap<String, Descriptor>();
       for(var prop : props) {
-        descriptors.put(prop, new Property(get_method(cls, prop)));
+        descriptors.put(prop, new Property(new Builtin(get_method(cls, prop))));
       }
       for(var method : methods) {
-        descriptors.put(method, new Method(find_unique(cls, method)));
+        descriptors.put(method, new Method(new Builtin(find_unique(cls, method))));
       }
       return descriptors;
     }
@@ -211,7 +336,7 @@ public final class Builtins {
       if(named_args != null && !named_args.isEmpty()) {
         throw new Interpreter.InterpreterError("builtin method `" + descriptor.m().getName() + "` cannot be called with named arguments");
       }
-      return invoke(descriptor.m(), args[0], Arrays.copyOfRange(args, 1, args.length));
+      return descriptor.builtin().invoke(args[0], Arrays.copyOfRange(args, 1, args.length));
     }
     @Override public int hashCode() { return Runtime.combine_hash(UnboundMethod.class, descriptor); }
     @Override public boolean equals(Object other) { return other instanceof UnboundMethod m && m.descriptor.equals(this.descriptor); }
@@ -220,15 +345,33 @@ public final class Builtins {
     @Override public Type type() { return TYPE; }
   }
 
+  // `load(path)` of an `Interpreter` instance
+  public static final class Load extends Value {
+    private final Interpreter interpreter;
+    public Load(Interpreter interpreter) { this.interpreter = interpreter; }
+    @Override public Value call(Value[] args, Map<String, Value> named_args) {
+      if((named_args != null && !named_args.isEmpty()) || args.length != 1 || !(args[0] instanceof Str path)) {
+        throw new Interpreter.InterpreterError("builtin `load` expects a path");
+      }
+      try {
+        return interpreter.load(java.nio.file.Path.of(path.value));
+      } catch(java.io.IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    @Override public Type type() { return Function.TYPE; }
+  }
+
   public static final class Function extends Value {
     public final java.lang.reflect.Method method;
-    public Function(java.lang.reflect.Method method) { this.method = method; }
+    private final Builtin builtin;
+    public Function(java.lang.reflect.Method method) { this.method = method; this.builtin = new Builtin(method); }
     public Function(String fn) { this(find_unique(Builtins.class, fn)); }
     @Override public Value call(Value[] args, Map<String, Value> named_args) {
       if(named_args != null && !named_args.isEmpty()) {
         throw new Interpreter.InterpreterError("builtin function `" + method.getName() + "` cannot be called with named arguments");
       }
-      return invoke(method, null, args);
+      return builtin.invoke(null, args);
     }
     @Override public int hashCode() { return method.hashCode(); }
     @Override public boolean equals(Object other) { return other instanceof Function f && f.method.equals(this.method); }
@@ -242,7 +385,7 @@ public final class Builtins {
     public Str(String value) { this.value = value; }
     @Override public String toString() { return value; }
 
-    public Int size() { return new Int(value.length()); }
+    public Int size() { return Int.of(value.length()); }
     public Value join(Value items) {
       var result = new StringBuilder();
       var first = true;
@@ -272,9 +415,26 @@ public final class Builtins {
     @Override public Type type() { return TYPE; }
   }
 
+  // Atoms are interned, so there is a single `Atom` per name (while it's in use) and they are compared by identity.
   public final static class Atom extends BuiltinValue {
+    private static final WeakHashMap<String, WeakReference<Atom>> atoms = new WeakHashMap<>();
+
+    public static Atom of(String name) {
+      synchronized(atoms) {
+        var ref = atoms.get(name);
+        var atom = ref == null ? null : ref.get();
+        if(atom == null) {
+          atom = new Atom(name);
+          atoms.remove(name);     // the table must be keyed by the atom's own name, so it's kept as long as the atom is
+          atoms.put(atom.name, new WeakReference<>(atom));
+        }
+        return atom;
+      }
+    }
+
     public final String name;
-    public Atom(String name) { this.name = name; }
+    private final int hash;
+    private Atom(String name) { this.name = name; this.hash = Runtime.combine_hash(Atom.class, name); }
     @Override public String toString() { return "`" + name; }
 
     public Str name() { return new Str(name); }
@@ -288,33 +448,139 @@ public final class Builtins {
     public static final Type TYPE = new Type("atom", null, new HashMap<>(), ATTRS);
     @Override public Type type() { return TYPE; }
 
-    @Override public int hashCode() { return Runtime.combine_hash(Atom.class, name); }
-    @Override public boolean equals(Object other) { return other instanceof Atom a && a.name.equals(this.name); }
+    @Override public int hashCode() { return hash; }
+    @Override public boolean equals(Object other) { return other == this; }
   }
 
+  // A deque in a circular buffer. While all elements are small ints (see `Int`) they are stored unboxed in `longs`;
+  // the first other element moves all of them to `values`, which is then used for good.
   public final static class List extends BuiltinValue {
-    public final ArrayDeque<Value> data;
-    public List() { data = new ArrayDeque<>(4); }
+    private long[] longs;               // `null` once the list has been generalized
+    private Value[] values;             // `null` while all elements are small ints
+    private int head = 0, count = 0;    // the first element is at `head`, the capacity is a power of 2
+    private int mutations = 0;          // changes of the structure, so that iterators can detect them
+
+    public List() { longs = new long[4]; }
     public List(Value... items) {
-      data = new ArrayDeque<>(items.length);
-      data.addAll(new ArrayOps.ArrayIterator<>(items));
+      var capacity = 4;
+      while(capacity < items.length) { capacity *= 2; }
+      longs = new long[capacity];
+      for(var item : items) { add_last(item); }
+    }
+
+    @Override public String toString() {
+      var s = new StringBuilder("![");
+      for(var i = 0; i < count; i++) {
+        if(i > 0) { s.append(", "); }
+        s.append(at(i));
+      }
+      return s.append(']').toString();
+    }
+
+    public void push(Value item) {
+      grow();
+      head = (head - 1) & (length() - 1);
+      store(head, item);
+      count += 1;
+      mutations += 1;
+    }
+    public void append(Value... items) { for(var item : items) { add_last(item); } }
+    public Value pop() {
+      var item = at(check_nonempty(0));
+      if(values != null) { values[head] = null; }
+      head = (head + 1) & (length() - 1);
+      count -= 1;
+      mutations += 1;
+      return item;
+    }
+    public Value shift() {
+      var item = at(check_nonempty(count - 1));
+      if(values != null) { values[(head + count - 1) & (length() - 1)] = null; }
+      count -= 1;
+      mutations += 1;
+      return item;
+    }
+    public Int size() { return Int.of(count); }
+    public Value last() { return at(check_nonempty(count - 1)); }
+    public Atom storage() { return Atom.of(longs != null ? "int" : "value"); }
+    // the number of slots of the buffer: 8 bytes each with `int` storage, a reference each (plus the boxed elements) with
+    // `value` storage
+    public Int capacity() { return Int.of(length()); }
+    public Iterator iter() {
+      return new Iterator(new java.util.Iterator<Value>() {
+        private int i = 0;
+        private final int expected = mutations;
+        @Override public boolean hasNext() { return i < count; }
+        @Override public Value next() {
+          if(mutations != expected) { throw new Interpreter.InterpreterError("list changed during iteration"); }
+          if(i >= count) { throw new java.util.NoSuchElementException(); }
+          return at(i++);
+        }
+      });
+    }
+
+    @Override public Value get_item(Value item) { return at(check_index(Interpreter.to_int32(item))); }
+    @Override public void set_item(Value item, Value value) {
+      var i = check_index(Interpreter.to_int32(item));
+      store((head + i) & (length() - 1), value);
+    }
+
+    private int length() { return longs != null ? longs.length : values.length; }
+    private int check_index(int i) {
+      if(!(0 <= i && i < count)) { throw new IndexOutOfBoundsException(i); }
+      return i;
+    }
+    private int check_nonempty(int i) {
+      if(count == 0) { throw new Interpreter.InterpreterError("empty list"); }
+      return i;
+    }
+
+    // the `i`-th element
+    private Value at(int i) {
+      var j = (head + i) & (length() - 1);
+      return longs != null ? Int.of(longs[j]) : values[j];
+    }
+
+    // stores `item` at position `j` of the buffer, generalizing the storage if needed
+    private void store(int j, Value item) {
+      if(longs != null) {
+        if(item instanceof Int i && i.big == null) { longs[j] = i.small; return; }
+        values = new Value[longs.length];
+        for(var k = 0; k < longs.length; k++) { values[k] = Int.of(longs[k]); }
+        longs = null;
+      }
+      values[j] = item;
     }
-    @Override public String toString() { return data.mkString("![", ", ", "]"); }
 
-    public void push(Value item) { data.prepend(item); }
-    public void append(Value... items) { for(var item : items) { data.append(item); } }
-    public Value pop() { return data.removeHead(true); }
-    public Value shift() { return data.removeLast(true); }
-    public Int size() { return new Int(data.size()); }
-    public Value last() { return data.last(); }
-    public Iterator iter() { return new Iterator(JavaConverters.asJava(this.data.iterator())); }
+    private void add_last(Value item) {
+      grow();
+      store((head + count) & (length() - 1), item);
+      count += 1;
+      mutations += 1;
+    }
 
-    @Override public Value get_item(Value item) { return this.data.apply(Interpreter.to_int32(item)); }
-    @Override public void set_item(Value item, Value value) { data.update(Interpreter.to_int32(item), value); }
+    // makes room for one more element, moving the elements to the start of a twice larger buffer if it's full
+    private void grow() {
+      var capacity = length();
+      if(count < capacity) { return; }
+      var first = capacity - head;
+      if(longs != null) {
+        var grown = new long[2 * capacity];
+        System.arraycopy(longs, head, grown, 0, first);
+        System.arraycopy(longs, 0, grown, first, head);
+        longs = grown;
+      } else {
+        var grown = new Value[2 * capacity];
+        System.arraycopy(values, head, grown, 0, first);
+        System.arraycopy(values, 0, grown, first, head);
+        values = grown;
+      }
+      head = 0;
+    }
 
     @Override public final HashMap<String, Descriptor> attrs() { return ATTRS; }
     public static final HashMap<String, Descriptor> ATTRS = BuiltinValue.resolve_attrs(List.class,
-      new String[] {"size", "last"},
+      new String[] {"size", "last", "storage", "capacity"},
       new String[] {"push", "append", "pop", "shift", "iter"}
     );
     public static List create(Value[] args, Map<String, Value> named_args) {
@@ -327,46 +593,180 @@ public final class Builtins {
     @Override public Type type() { return TYPE; }
 
     @Override public int hashCode() { throw new Interpreter.InterpreterError("mutable list is not hashable"); }
-    @Override public boolean equals(Object other) { return other instanceof List l && l.data.equals(this.data); }
+    @Override public boolean equals(Object other) {
+      if(!(other instanceof List l) || l.count != count) { return false; }
+      for(var i = 0; i < count; i++) {
+        if(!at(i).equals(l.at(i))) { return false; }
+      }
+      return true;
+    }
   }
 
+  // A compact, insertion-ordered hash table, like CPython's `dict`. Entries are appended to the dense `hashes`, `keys`
+  // and `values` arrays, and `index` is an open-addressing table of entry positions, stored in a `byte[]`, `short[]`
+  // or `int[]` depending on its size. Removed entries leave a `null` key behind (and `DUMMY` in `index`) until the
+  // entries are compacted, the next time the table runs out of space.
   public final static class Dict extends BuiltinValue {
-    public final LinkedHashMap<Value, Value> data;
-    public Dict() { data = new LinkedHashMap<>(); }
-    public Dict(Map<Value, Value> data) { this.data = new LinkedHashMap<>(data); }
-    @Override public String toString() { return "!" + data.toString(); }
+    private static final int EMPTY = -1, DUMMY = -2, MIN_SIZE = 8;
+
+    private Object index;             // `byte[]`, `short[]` or `int[]`, its size is a power of 2
+    private int mask;                 // size of `index` - 1
+    private int[] hashes;
+    private Value[] keys, values;     // 2/3 of the size of `index`
+    private int used = 0;             // number of entries, including removed ones
+    private int count = 0;
+
+    public Dict() { allocate(MIN_SIZE); }
+
+    @Override public String toString() {
+      var s = new StringBuilder("!{");
+      for(var i = 0; i < used; i++) {
+        if(keys[i] == null) { continue; }
+        if(s.length() > 2) { s.append(", "); }
+        s.append(keys[i]).append('=').append(values[i]);
+      }
+      return s.append('}').toString();
+    }
 
-    public Value get(Value key) { return data.get(key); }
-    public Int size() { return new Int(data.size()); }
-    public void clear() { data.clear(); }
+    public Value get(Value key) {
+      var i = find(key, key.hashCode());
+      return i >= 0 ? values[slot(i)] : null;
+    }
+    public Int size() { return Int.of(count); }
+    public void clear() { allocate(MIN_SIZE); used = count = 0; }
+    public Value remove(Value key) {
+      var i = find(key, key.hashCode());
+      if(i < 0) { return NONE; }
+      var entry = slot(i);
+      var value = values[entry];
+      keys[entry] = null;
+      values[entry] = null;
+      set_slot(i, DUMMY);
+      count -= 1;
+      return value;
+    }
+
+    @Override public Value get_item(Value key) { return get(key); }
+    @Override public void set_item(Value key, Value value) {
+      var hash = key.hashCode();
+      var i = find(key, hash);
+      if(i >= 0) { values[slot(i)] = value; return; }
+      if(used == keys.length) {
+        resize();
+        i = find(key, hash);
+      }
+      hashes[used] = hash;
+      keys[used] = key;
+      values[used] = value;
+      set_slot(-1 - i, used);
+      used += 1;
+      count += 1;
+    }
+
+    private int slot(int i) {
+      return switch(index) {
+        case byte[] b -> b[i];
+        case short[] s -> s[i];
+        default -> ((int[]) index)[i];
+      };
+    }
+
+    private void set_slot(int i, int entry) {
+      switch(index) {
+        case byte[] b -> b[i] = (byte) entry;
+        case short[] s -> s[i] = (short) entry;
+        default -> ((int[]) index)[i] = entry;
+      }
+    }
+
+    // the position of `key` in `index`, or `-1 - position` of the slot where it should be inserted
+    private int find(Value key, int hash) {
+      var i = hash & mask;
+      var perturb = hash & 0xffffffffL;
+      var free = -1;
+      while(true) {
+        var entry = slot(i);
+        if(entry == EMPTY) { return -1 - (free >= 0 ? free : i); }
+        if(entry == DUMMY) {
+          if(free < 0) { free = i; }
+        } else if(hashes[entry] == hash && (keys[entry] == key || keys[entry].equals(key))) {
+          return i;
+        }
+        perturb >>>= 5;
+        i = (int) ((5L * i + perturb + 1) & mask);
+      }
+    }
 
-    @Override public Value get_item(Value key) { return data.get(key); }
-    @Override public void set_item(Value key, Value value) { data.put(key, value); }
+    private void allocate(int size) {
+      index = size <= 128 ? new byte[size] : size <= 1 << 15 ? new short[size] : new int[size];
+      switch(index) {
+        case byte[] b -> Arrays.fill(b, (byte) EMPTY);
+        case short[] s -> Arrays.fill(s, (short) EMPTY);
+        default -> Arrays.fill((int[]) index, EMPTY);
+      }
+      mask = size - 1;
+      hashes = new int[size * 2 / 3];
+      keys = new Value[hashes.length];
+      values = new Value[hashes.length];
+    }
+
+    // rebuilds the table with room for at least as many entries as are left, dropping removed entries
+    private void resize() {
+      var size = MIN_SIZE;
+      while(size * 2 / 3 < 2 * count) { size *= 2; }
+      var hashes = this.hashes;
+      var keys = this.keys;
+      var values = this.values;
+      var used = this.used;
+      allocate(size);
+      this.used = 0;
+      for(var i = 0; i < used; i++) {
+        if(keys[i] == null) { continue; }
+        var j = -1 - find(keys[i], hashes[i]);
+        this.hashes[this.used] = hashes[i];
+        this.keys[this.used] = keys[i];
+        this.values[this.used] = values[i];
+        set_slot(j, this.used);
+        this.used += 1;
+      }
+    }
 
     @Override public final HashMap<String, Descriptor> attrs() { return ATTRS; }
     public static final HashMap<String, Descriptor> ATTRS = BuiltinValue.resolve_attrs(Dict.class,
       new String[] {"size"},
-      new String[] {"clear"}
+      new String[] {"clear", "remove"}
     );
 
     @Override public int hashCode() { throw new Interpreter.InterpreterError("mutable dict is not hashable"); }
-    @Override public boolean equals(Object other) { return other instanceof Dict d && d.data.equals(this.data); }
+    @Override public boolean equals(Object other) {
+      if(!(other instanceof Dict d) || d.count != count) { return false; }
+      for(var i = 0; i < used; i++) {
+        if(keys[i] == null) { continue; }
+        var j = d.find(keys[i], hashes[i]);
+        if(j < 0 || !d.values[d.slot(j)].equals(values[i])) { return false; }
+      }
+      return true;
+    }
 
     public static final Type TYPE = new Type("dict", null, new HashMap<>(), ATTRS);
     @Override public Type type() { return TYPE; }
   }
 
   public final static class Index extends BuiltinValue {
-    public final scala.collection.immutable.HashMap<Value, Value> data;
-    public Index() { data = new scala.collection.immutable.HashMap<>(); }
-    public Index(scala.collection.immutable.HashMap<Value, Value> data) { this.data = data; }
-    public Index(Map<Value, Value> data) { this.data = scala.collection.immutable.HashMap.from(JavaConverters.asScala(data)); }
+    public final Champ<Value, Value> data;
+    public Index() { data = Champ.empty(); }
+    public Index(Champ<Value, Value> data) { this.data = data; }
 
-    public Value get(Value key) { return data.apply(key); }
+    public Value get(Value key) {
+      var value = data.get(key);
+      if(value == null) { throw new Interpreter.InterpreterError("key not found: " + key); }
+      return value;
+    }
     public Index update(Value key, Value value) { return new Index(data.updated(key, value)); }
-    public Int size() { return new Int(data.size()); }
+    public Int size() { return Int.of(data.size()); }
 
-    @Override public Value get_item(Value key) { return data.apply(key); }
+    @Override public Value get_item(Value key) { return get(key); }
+    @Override public String toString() { return data.toString(); }
 
     @Override public final HashMap<String, Descriptor> attrs() { return ATTRS; }
     public static final HashMap<String, Descriptor> ATTRS = BuiltinValue.resolve_attrs(Index.class,
@@ -374,8 +774,14 @@ public final class Builtins {
       new String[] {"get", "update"}
     );
 
-    @Override public int hashCode() { return Runtime.hash_mapping(JavaConverters.asJava(this.data).entrySet()); }
-    @Override public boolean equals(Object other) { return other instanceof Index d && d.data.equals(this.data); }
+    private int hash = 0;     // computed lazily, 0 if not yet known
+
+    @Override public int hashCode() {
+      var h = hash;
+      if(h == 0) { hash = h = Runtime.hash_mapping(data); }
+      return h;
+    }
+    @Override public boolean equals(Object other) { return other instanceof Index d && (hash == 0 || d.hash == 0 || hash == d.hash) && d.data.equals(this.data); }
 
     public static final Type TYPE = new Type("index", null, new HashMap<>(), ATTRS);
     @Override public Type type() { return TYPE; }
@@ -421,8 +827,10 @@ public final class Builtins {
     public final Runtime.Callable constructor;
     public final HashMap<String, Value> static_attrs;
     public final HashMap<String, Descriptor> obj_attrs;
+    private final HashMap<String, UnboundMethod> unbound = new HashMap<>();
     public Type(String name, Runtime.Callable constructor, HashMap<String, Value> static_attrs, HashMap<String, Descriptor> obj_attrs) {
       this.name = name; this.constructor = constructor; this.static_attrs = static_attrs; this.obj_attrs = obj_attrs;
+      obj_attrs.forEach((attr, descriptor) -> unbound.put(attr, new UnboundMethod(descriptor)));
 
       var attrs = new java.util.HashSet<>(static_attrs.keySet());
       attrs.retainAll(obj_attrs.keySet());
@@ -432,9 +840,8 @@ public final class Builtins {
     @Override public Value get_attr(String attr) {
       var value = static_attrs.get(attr);
       if(value != null) { return value; }
-      var desc = obj_attrs.get(attr);
-      if(desc == null) { throw new Interpreter.AttrError(getClass(), attr); }
-      value = new UnboundMethod(desc);
+      value = unbound.get(attr);
+      if(value == null) { throw new Interpreter.AttrError(getClass(), attr); }
       return value;
     }
 
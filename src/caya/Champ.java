@@ -0,0 +1,314 @@
+package caya;
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+// A persistent hash map, implemented as a compressed hash-array mapped prefix-tree (CHAMP). Each node keeps its entries
+// inline, followed by its sub-nodes in reverse order, in a single array that is indexed by two bitmaps of 5-bit hash
+// fragments; keys whose full hashes are equal end up in a `Collision` node. Entries are only ever added, so maps with
+// the same entries have the same structure, and `equals` compares them node by node, skipping shared nodes.
+public final class Champ<K, V> {
+  private static final int BITS = 5, MASK = (1 << BITS) - 1, MAX_SHIFT = 30;
+
+  private static final class Node {
+    int datamap, nodemap;
+    Object[] content;       // key, value, key, value, ..., sub-node, sub-node
+    final Object edit;      // the `Builder` that can change this node in place, if any
+
+    Node(int datamap, int nodemap, Object[] content, Object edit) {
+      this.datamap = datamap; this.nodemap = nodemap; this.content = content; this.edit = edit;
+    }
+  }
+
+  private static final class Collision {
+    final int hash;
+    Object[] content;       // key, value, key, value, ...
+    final Object edit;
+
+    Collision(int hash, Object[] content, Object edit) { this.hash = hash; this.content = content; this.edit = edit; }
+  }
+
+  private static final Node EMPTY_NODE = new Node(0, 0, new Object[0], null);
+  private static final Champ<?, ?> EMPTY = new Champ<>(EMPTY_NODE, 0);
+
+  private final Node root;
+  private final int size;
+
+  private Champ(Node root, int size) { this.root = root; this.size = size; }
+
+  @SuppressWarnings("unchecked")
+  public static <K, V> Champ<K, V> empty() { return (Champ<K, V>) EMPTY; }
+
+  public int size() { return size; }
+
+  // the value of `key`, or `null` if there is none
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    var hash = key.hashCode();
+    Object node = root;
+    for(var shift = 0;; shift += BITS) {
+      if(node instanceof Node n) {
+        var bit = bit(hash, shift);
+        if((n.datamap & bit) != 0) {
+          var i = 2 * index(n.datamap, bit);
+          return key.equals(n.content[i]) ? (V) n.content[i + 1] : null;
+        }
+        if((n.nodemap & bit) == 0) { return null; }
+        node = n.content[n.content.length - 1 - index(n.nodemap, bit)];
+      } else {
+        var c = (Collision) node;
+        for(var i = 0; i < c.content.length; i += 2) {
+          if(key.equals(c.content[i])) { return (V) c.content[i + 1]; }
+        }
+        return null;
+      }
+    }
+  }
+
+  public Champ<K, V> updated(K key, V value) {
+    var change = new Change();
+    var updated = (Node) put(root, key, value, key.hashCode(), 0, null, change);
+    return updated == root ? this : new Champ<>(updated, change.added ? size + 1 : size);
+  }
+
+  @SuppressWarnings("unchecked")
+  public void for_each(BiConsumer<? super K, ? super V> action) { for_each(root, (BiConsumer<Object, Object>) action); }
+
+  private static void for_each(Object node, BiConsumer<Object, Object> action) {
+    if(node instanceof Node n) {
+      var entries = 2 * Integer.bitCount(n.datamap);
+      for(var i = 0; i < entries; i += 2) { action.accept(n.content[i], n.content[i + 1]); }
+      for(var i = entries; i < n.content.length; i++) { for_each(n.content[i], action); }
+    } else {
+      var c = (Collision) node;
+      for(var i = 0; i < c.content.length; i += 2) { action.accept(c.content[i], c.content[i + 1]); }
+    }
+  }
+
+  // The entries of the map as `entry(key, value)`, for parallel streams. Splitting divides the sub-nodes of a node
+  // between two parts, and a part left with a single node splits its entries off from its sub-nodes.
+  public <T> Spliterator<T> spliterator(BiFunction<? super K, ? super V, ? extends T> entry) {
+    return new EntrySpliterator<>(null, new Object[] {root}, 0, 1, size, entry);
+  }
+
+  private static final class EntrySpliterator<T> implements Spliterator<T> {
+    private Node entries;               // a node whose own entries (but not those of its sub-nodes) are still to come
+    private Object[] nodes;             // the nodes `nodes[from..to)` are still to come, with all their entries
+    private int from, to;
+    private long estimate;
+    private final BiFunction<Object, Object, ? extends T> entry;
+    private final ArrayDeque<T> buffer = new ArrayDeque<>();
+
+    @SuppressWarnings("unchecked")
+    EntrySpliterator(Node entries, Object[] nodes, int from, int to, long estimate, BiFunction<?, ?, ? extends T> entry) {
+      this.entries = entries; this.nodes = nodes; this.from = from; this.to = to; this.estimate = estimate;
+      this.entry = (BiFunction<Object, Object, ? extends T>) entry;
+    }
+
+    @Override public Spliterator<T> trySplit() {
+      if(entries == null && to - from == 1 && nodes[from] instanceof Node n && n.nodemap != 0) {
+        entries = n;
+        nodes = n.content;
+        from = 2 * Integer.bitCount(n.datamap);
+        to = nodes.length;
+      }
+      EntrySpliterator<T> prefix;
+      if(to - from >= 2) {
+        var mid = (from + to) >>> 1;
+        prefix = new EntrySpliterator<>(entries, nodes, from, mid, estimate / 2, entry);
+        from = mid;
+      } else if(entries != null && to - from == 1) {
+        prefix = new EntrySpliterator<>(entries, nodes, 0, 0, Integer.bitCount(entries.datamap), entry);
+      } else {
+        return null;
+      }
+      entries = null;
+      estimate = Math.max(estimate - prefix.estimate, 0);
+      return prefix;
+    }
+
+    @Override public boolean tryAdvance(Consumer<? super T> action) {
+      if(buffer.isEmpty()) { forEachPart(buffer::add, true); }
+      if(buffer.isEmpty()) { return false; }
+      action.accept(buffer.poll());
+      return true;
+    }
+
+    @Override public void forEachRemaining(Consumer<? super T> action) {
+      while(!buffer.isEmpty()) { action.accept(buffer.poll()); }
+      forEachPart(action, false);
+    }
+
+    // passes the entries of the next part (or of all remaining parts) to `action`
+    private void forEachPart(Consumer<? super T> action, boolean one) {
+      if(entries != null) {
+        var n = entries;
+        entries = null;
+        for(var i = 0; i < 2 * Integer.bitCount(n.datamap); i += 2) { action.accept(entry.apply(n.content[i], n.content[i + 1])); }
+        if(one) { return; }
+      }
+      while(from < to) {
+        for_each(nodes[from++], (key, value) -> action.accept(entry.apply(key, value)));
+        if(one) { return; }
+      }
+    }
+
+    @Override public long estimateSize() { return estimate; }
+    @Override public int characteristics() { return DISTINCT | IMMUTABLE | NONNULL; }
+  }
+
+  // Collects entries into nodes that it owns and changes in place, so adding an entry doesn't copy its path. Nodes of
+  // built maps are no longer owned, so the builder can be used again.
+  public static final class Builder<K, V> {
+    private Object edit = new Object();
+    private Node root;
+    private int size;
+    private final Change change = new Change();
+
+    public Builder() { this(empty()); }
+    public Builder(Champ<K, V> map) { root = map.root; size = map.size; }
+
+    public Builder<K, V> put(K key, V value) {
+      change.added = false;
+      root = (Node) Champ.put(root, key, value, key.hashCode(), 0, edit, change);
+      if(change.added) { size += 1; }
+      return this;
+    }
+
+    public Champ<K, V> build() {
+      edit = new Object();
+      return size == 0 ? empty() : new Champ<>(root, size);
+    }
+  }
+
+  private static final class Change { boolean added = false; }
+
+  private static int bit(int hash, int shift) { return 1 << ((hash >>> shift) & MASK); }
+  private static int index(int bitmap, int bit) { return Integer.bitCount(bitmap & (bit - 1)); }
+
+  private static Object put(Object node, Object key, Object value, int hash, int shift, Object edit, Change change) {
+    if(node instanceof Collision c) { return put(c, key, value, edit, change); }
+    var n = (Node) node;
+    var bit = bit(hash, shift);
+    if((n.datamap & bit) != 0) {
+      var i = 2 * index(n.datamap, bit);
+      var existing = n.content[i];
+      if(existing.equals(key)) {
+        if(n.content[i + 1] == value) { return n; }
+        var content = edit != null && n.edit == edit ? n.content : n.content.clone();
+        content[i + 1] = value;
+        return with(n, n.datamap, n.nodemap, content, edit);
+      }
+      // two entries with the same fragment move into a new sub-node
+      change.added = true;
+      var sub = merge(existing, n.content[i + 1], existing.hashCode(), key, value, hash, shift + BITS, edit);
+      var content = new Object[n.content.length - 1];
+      var j = n.content.length - 2 - index(n.nodemap, bit);     // position of the sub-node in `content`
+      System.arraycopy(n.content, 0, content, 0, i);
+      System.arraycopy(n.content, i + 2, content, i, j - i);
+      content[j] = sub;
+      System.arraycopy(n.content, j + 2, content, j + 1, n.content.length - j - 2);
+      return with(n, n.datamap ^ bit, n.nodemap | bit, content, edit);
+    }
+    if((n.nodemap & bit) != 0) {
+      var j = n.content.length - 1 - index(n.nodemap, bit);
+      var sub = n.content[j];
+      var updated = put(sub, key, value, hash, shift + BITS, edit, change);
+      if(updated == sub) { return n; }
+      var content = edit != null && n.edit == edit ? n.content : n.content.clone();
+      content[j] = updated;
+      return with(n, n.datamap, n.nodemap, content, edit);
+    }
+    change.added = true;
+    var i = 2 * index(n.datamap, bit);
+    var content = new Object[n.content.length + 2];
+    System.arraycopy(n.content, 0, content, 0, i);
+    content[i] = key;
+    content[i + 1] = value;
+    System.arraycopy(n.content, i, content, i + 2, n.content.length - i);
+    return with(n, n.datamap | bit, n.nodemap, content, edit);
+  }
+
+  // `n` changed in place if it's owned by `edit`, or a copy
+  private static Node with(Node n, int datamap, int nodemap, Object[] content, Object edit) {
+    if(edit != null && n.edit == edit) {
+      n.datamap = datamap; n.nodemap = nodemap; n.content = content;
+      return n;
+    }
+    return new Node(datamap, nodemap, content, edit);
+  }
+
+  private static Object put(Collision c, Object key, Object value, Object edit, Change change) {
+    for(var i = 0; i < c.content.length; i += 2) {
+      if(c.content[i].equals(key)) {
+        if(c.content[i + 1] == value) { return c; }
+        var content = edit != null && c.edit == edit ? c.content : c.content.clone();
+        content[i + 1] = value;
+        if(content == c.content) { return c; }
+        return new Collision(c.hash, content, edit);
+      }
+    }
+    change.added = true;
+    var content = java.util.Arrays.copyOf(c.content, c.content.length + 2);
+    content[c.content.length] = key;
+    content[c.content.length + 1] = value;
+    if(edit != null && c.edit == edit) { c.content = content; return c; }
+    return new Collision(c.hash, content, edit);
+  }
+
+  private static Object merge(Object key1, Object value1, int hash1, Object key2, Object value2, int hash2, int shift, Object edit) {
+    if(shift > MAX_SHIFT) { return new Collision(hash1, new Object[] {key1, value1, key2, value2}, edit); }
+    var bit1 = bit(hash1, shift);
+    var bit2 = bit(hash2, shift);
+    if(bit1 == bit2) {
+      return new Node(0, bit1, new Object[] {merge(key1, value1, hash1, key2, value2, hash2, shift + BITS, edit)}, edit);
+    }
+    return new Node(bit1 | bit2, 0, Integer.compareUnsigned(bit1, bit2) < 0 ? new Object[] {key1, value1, key2, value2} : new Object[] {key2, value2, key1, value1}, edit);
+  }
+
+  @Override public boolean equals(Object other) { return other instanceof Champ<?, ?> c && c.size == size && equal(root, c.root); }
+
+  private static boolean equal(Object a, Object b) {
+    if(a == b) { return true; }
+    if(a instanceof Node x && b instanceof Node y) {
+      if(x.datamap != y.datamap || x.nodemap != y.nodemap) { return false; }
+      var entries = 2 * Integer.bitCount(x.datamap);
+      for(var i = 0; i < entries; i++) {
+        if(!x.content[i].equals(y.content[i])) { return false; }
+      }
+      for(var i = entries; i < x.content.length; i++) {
+        if(!equal(x.content[i], y.content[i])) { return false; }
+      }
+      return true;
+    }
+    if(a instanceof Collision x && b instanceof Collision y && x.hash == y.hash && x.content.length == y.content.length) {
+      // entries of collision nodes are in insertion order
+      outer:
+      for(var i = 0; i < x.content.length; i += 2) {
+        for(var j = 0; j < y.content.length; j += 2) {
+          if(x.content[i].equals(y.content[j])) {
+            if(!x.content[i + 1].equals(y.content[j + 1])) { return false; }
+            continue outer;
+          }
+        }
+        return false;
+      }
+      return true;
+    }
+    return false;
+  }
+
+  @Override public int hashCode() { return Runtime.hash_mapping(this); }
+
+  @Override public String toString() {
+    var s = new StringBuilder("[");
+    for_each((key, value) -> {
+      if(s.length() > 1) { s.append(", "); }
+      s.append(key).append(" = ").append(value);
+    });
+    return s.append(']').toString();
+  }
+}
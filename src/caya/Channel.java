@@ -0,0 +1,180 @@
+package caya;
+
+import java.util.HashMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import caya.Builtins.BuiltinValue;
+import caya.Builtins.Descriptor;
+import caya.Runtime.Value;
+import static caya.Builtins.*;
+
+// A queue of messages between tasks (see `Task`), with any number of senders and receivers. `send` waits while a
+// bounded channel is full and `receive` waits while a channel is empty; once a channel is closed, `receive` returns
+// the remaining messages and then `iter.stop`, so `for message in channel` runs until the channel is closed. All
+// operations take a single lock, which parks virtual threads without pinning them.
+public final class Channel extends BuiltinValue {
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition not_empty = lock.newCondition();
+  private final Condition not_full = lock.newCondition();
+  private final int capacity;         // -1 if unbounded
+  private Value[] items;              // circular buffer, grows as needed up to `capacity`
+  private int head = 0, count = 0;
+  private boolean closed = false;
+
+  public Channel(int capacity) {
+    if(capacity == 0 || capacity < -1) { throw new Interpreter.InterpreterError("channel capacity must be positive"); }
+    this.capacity = capacity;
+    this.items = new Value[capacity > 0 ? Math.min(capacity, 16) : 16];
+  }
+
+  public static Channel create(Value... capacity) {
+    if(capacity.length > 1) { throw new Interpreter.InterpreterError("channel(...) expects at most one argument"); }
+    return new Channel(capacity.length == 0 ? -1 : Interpreter.to_int32(capacity[0]));
+  }
+
+  public void send(Value message) {
+    if(!put(message)) { throw new Interpreter.InterpreterError("send on a closed channel"); }
+  }
+
+  // adds `message`, waiting while the channel is full; `false` if the channel is closed
+  private boolean put(Value message) {
+    lock.lock();
+    try {
+      while(count == capacity && !closed) { await(not_full); }
+      if(closed) { return false; }
+      if(count == items.length) { grow(); }
+      items[(head + count) % items.length] = message;
+      count += 1;
+      not_empty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // the next message, or `iter.stop` if the channel is closed and empty
+  public Value receive() {
+    lock.lock();
+    try {
+      while(count == 0 && !closed) { await(not_empty); }
+      if(count == 0) { return STOP; }
+      var message = items[head];
+      items[head] = null;
+      head = (head + 1) % items.length;
+      count -= 1;
+      not_full.signal();
+      return message;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void close() {
+    lock.lock();
+    try {
+      closed = true;
+      not_empty.signalAll();
+      not_full.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public Int size() {
+    lock.lock();
+    try { return Int.of(count); } finally { lock.unlock(); }
+  }
+
+  public Bool closed() {
+    lock.lock();
+    try { return closed ? TRUE : FALSE; } finally { lock.unlock(); }
+  }
+
+  public Iterator iter() {
+    return new Iterator(new java.util.Iterator<Value>() {
+      private Value next = null;
+      @Override public boolean hasNext() {
+        if(next == null) { next = receive(); }
+        return next != STOP;
+      }
+      @Override public Value next() {
+        if(!hasNext()) { throw new java.util.NoSuchElementException(); }
+        var message = next;
+        next = null;
+        return message;
+      }
+    });
+  }
+
+  private void grow() {
+    var grown = new Value[capacity > 0 ? Math.min(2 * items.length, capacity) : 2 * items.length];
+    var first = Math.min(count, items.length - head);
+    System.arraycopy(items, head, grown, 0, first);
+    System.arraycopy(items, 0, grown, first, count - first);
+    items = grown;
+    head = 0;
+  }
+
+  private static void await(Condition condition) {
+    try {
+      condition.await();
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Interpreter.InterpreterError("interrupted while waiting on a channel");
+    }
+  }
+
+  @Override public final HashMap<String, Descriptor> attrs() { return ATTRS; }
+  public static final HashMap<String, Descriptor> ATTRS = BuiltinValue.resolve_attrs(Channel.class,
+    new String[] {"size", "closed"},
+    new String[] {"send", "receive", "close", "iter"}
+  );
+
+  public static final Type TYPE = new Type("task.channel", null, new HashMap<>(), ATTRS);
+  @Override public Type type() { return TYPE; }
+
+  // Handles the messages sent to it one at a time, on a task of its own: `state = handler(state, message)` for every
+  // message, until the actor is closed. `join` waits for the remaining messages and returns the final state. If the
+  // handler fails, the mailbox is closed, so that senders don't wait for it forever, and `join` raises the error.
+  public static final class Actor extends BuiltinValue {
+    private final Channel mailbox;
+    private final Task task;
+
+    public Actor(Value handler, Value state, int capacity) {
+      this.mailbox = new Channel(capacity);
+      this.task = Task.start(() -> {
+        try {
+          var result = state;
+          for(var message = mailbox.receive(); message != STOP; message = mailbox.receive()) {
+            result = handler.call(new Value[] {result, message}, null);
+          }
+          return result;
+        } finally {
+          mailbox.close();
+        }
+      });
+    }
+
+    public static Actor create(Value handler, Value state, Value... capacity) {
+      if(capacity.length > 1) { throw new Interpreter.InterpreterError("actor(...) expects at most three arguments"); }
+      return new Actor(handler, state, capacity.length == 0 ? -1 : Interpreter.to_int32(capacity[0]));
+    }
+
+    public void send(Value message) {
+      if(!mailbox.put(message)) { throw new Interpreter.InterpreterError("send to an actor that has stopped"); }
+    }
+
+    public void close() { mailbox.close(); }
+    public Value join() { return task.join(); }
+
+    @Override public final HashMap<String, Descriptor> attrs() { return ATTRS; }
+    public static final HashMap<String, Descriptor> ATTRS = BuiltinValue.resolve_attrs(Actor.class,
+      new String[] {},
+      new String[] {"send", "close", "join"}
+    );
+
+    public static final Type TYPE = new Type("task.actor", null, new HashMap<>(), ATTRS);
+    @Override public Type type() { return TYPE; }
+  }
+}
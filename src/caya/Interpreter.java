@@ -1,12 +1,13 @@
 package caya;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 
+import caya.Runtime.CallShape;
 import caya.Runtime.Param;
+import caya.jit.JIT;
 import caya.Runtime.Value;
 import caya.Builtins.*;
 import static caya.Builtins.*;
@@ -24,35 +25,40 @@ public final class Interpreter {
     public AttrError(Class<?> cls, String attr) { super("object of type `" + cls + "` has no attribute `" + attr + "`"); this.cls = cls; this.attr = attr; }
   }
 
+  // non-local control flow rather than errors, so no stack traces; `break` and `continue` are preallocated
   public static abstract class Control extends RuntimeException {
+    private Control() { super(null, null, false, false); }
+
     public static final class Return extends Control {
-      Value value;
+      public final Value value;
       public Return(Value value) { this.value = value; }
     }
 
     public static final class Exception extends Control {
-      Value value;
+      public final Value value;
       public Exception(Value value) { this.value = value; }
     }
 
-    public static final class Break extends Control {}
-    public static final class Continue extends Control {}
+    public static final class Break extends Control { private Break() {} }
+    public static final class Continue extends Control { private Continue() {} }
+    public static final Break BREAK = new Break();
+    public static final Continue CONTINUE = new Continue();
   }
 
-  public static BigInteger to_int(Value value) {
+  public static Int to_int(Value value) {
     if(value instanceof Int i) {
-      return i.value;
+      return i;
     } else {
       throw new InterpreterError("expected int, got " + value);
     }
   }
 
   public static int to_int32(Value value) {
-    return to_int(value).intValueExact();
+    return to_int(value).int32();
   }
 
   public static long to_int64(Value value) {
-    return to_int(value).longValueExact();
+    return to_int(value).int64();
   }
 
   public static boolean to_bool(Value value) {
@@ -63,42 +69,111 @@ public final class Interpreter {
     }
   }
 
-  public static Value eval_function(Param[] params, Scope closure, Node body, Value[] args, Map<String, Value> named_args, Obj this_obj) {
-    var scope = new Interpreter.Scope(closure, this_obj, false, true);
-    if(named_args != null) {
-      next_arg:
-      for(var arg : named_args.entrySet()) {
-        for(var param : params) {
-          if(param.name().equals(arg.getKey())) {
-            scope.declare(param.name(), arg.getValue());
-            continue next_arg;
-          }
+  public static Value eval_function(Param[] params, Scope closure, Node body, JIT.Entry jit, Value[] args, Map<String, Value> named_args, Obj this_obj) {
+    if(named_args == null) { return eval_function(params, closure, body, jit, args, (CallShape) null, this_obj); }
+    var all_args = java.util.Arrays.copyOf(args, args.length + named_args.size());
+    var i = args.length;
+    for(var value : named_args.values()) { all_args[i++] = value; }
+    return eval_function(params, closure, body, jit, all_args, CallShape.of(args.length, named_args), this_obj);
+  }
+
+  // A call in tail position of a function (see `Resolver.tail`) to another Caya function. It's returned as the result
+  // of the calling function, and `eval_function` runs it in a loop, so that tail calls run in constant stack space.
+  public static final class TailCall extends Value {
+    final Param[] params;
+    final Scope closure;
+    final Node body;
+    final JIT.Entry jit;
+    final Value[] args;
+    final CallShape shape;
+    final Obj this_obj;
+    TailCall(Param[] params, Scope closure, Node body, JIT.Entry jit, Value[] args, CallShape shape, Obj this_obj) {
+      this.params = params; this.closure = closure; this.body = body; this.jit = jit; this.args = args; this.shape = shape; this.this_obj = this_obj;
+    }
+    public Value run() { return eval_function(params, closure, body, jit, args, shape, this_obj); }
+    @Override public Runtime.Type type() { throw new IllegalStateException("tail call escaped its function"); }
+  }
+
+  // calls `fn` in tail position; only Caya functions are deferred to `eval_function`
+  public static Value tail_call(Value fn, Value[] args, CallShape shape) {
+    return switch(fn) {
+      case Runtime.Function f -> new TailCall(f.params, f.closure, f.body, f.jit, args, shape, null);
+      case Obj.BoundMethod m -> new TailCall(m.method.params(), m.method.closure(), m.method.body(), m.method.jit(), args, shape, m.obj);
+      default -> call(fn, args, shape);
+    };
+  }
+
+  // `args` are laid out as described by `shape`, or are all positional if it's `null`
+  public static Value eval_function(Param[] params, Scope closure, Node body, JIT.Entry jit, Value[] args, CallShape shape, Obj this_obj) {
+    while(true) {
+      var result = eval_body(params, closure, body, jit, args, shape, this_obj);
+      if(!(result instanceof TailCall call)) { return result; }
+      params = call.params; closure = call.closure; body = call.body; jit = call.jit;
+      args = call.args; shape = call.shape; this_obj = call.this_obj;
+    }
+  }
+
+  private static Value eval_body(Param[] params, Scope closure, Node body, JIT.Entry jit, Value[] args, CallShape shape, Obj this_obj) {
+    // parameters occupy the slots of the call frame, in order
+    var scope = new Interpreter.Scope(closure, this_obj, false, true, params.length);
+    var slots = scope.slots;
+    if(shape == null) {
+      for(var j = 0; j < params.length; j++) {
+        if(j < args.length) {
+          slots[j] = args[j];
+        } else if(params[j].default_value() != null) {
+          slots[j] = scope.eval(params[j].default_value());
+        } else {
+          throw new Interpreter.InterpreterError("missing parameter ` " + params[j].name() + "`");
         }
-        throw new Interpreter.InterpreterError("invalid named argument `" + arg.getKey() + "`");
       }
-    }
-    var i = 0;
-    for(var param : params) {
-      if(named_args != null && named_args.containsKey(param.name())) {
-        // continue;
-      } else if(i < args.length) {
-        scope.declare(param.name(), args[i]);
-        i += 1;
-      } else if(param.default_value() != null) {
-        scope.declare(param.name(), scope.eval(param.default_value()));
-      } else {
-        throw new Interpreter.InterpreterError("missing parameter ` " + param.name() + "`");
+    } else {
+      var source = shape.bind(params);
+      // named arguments are bound first, so that default values can refer to them
+      for(var j = 0; j < params.length; j++) {
+        if(source[j] >= 0 && shape.names[source[j]] != null) { slots[j] = args[source[j]]; }
+      }
+      for(var j = 0; j < params.length; j++) {
+        if(source[j] >= 0) {
+          slots[j] = args[source[j]];
+        } else if(params[j].default_value() != null) {
+          slots[j] = scope.eval(params[j].default_value());
+        } else {
+          throw new Interpreter.InterpreterError("missing parameter ` " + params[j].name() + "`");
+        }
       }
     }
+    var compiled = JIT.compiled(jit, body);
     try {
-      return scope.eval(body);
+      return compiled != null ? compiled.run(scope) : scope.eval(body);
     } catch (Control.Return e) {
       return e.value;
     }
   }
 
-  public static final Scope root = new Scope(null, null, false, false);
-  static {
+  // calls `fn` with the arguments of a call site; named arguments are only collected into a map for builtins
+  public static Value call(Value fn, Value[] args, CallShape shape) {
+    if(shape == null) { return fn.call(args, null); }
+    return switch(fn) {
+      case Runtime.Function f -> f.invoke(args, shape);
+      case Obj.BoundMethod m -> m.method.invoke(m.obj, args, shape);
+      default -> fn.call(shape.positional(args), shape.named(args));
+    };
+  }
+
+  // An isolated instance of the language: its own root scope (which holds the builtins), table of loaded modules and
+  // output stream. Instances don't share any mutable state, so scripts in different instances can run concurrently;
+  // a single instance should only run one script at a time.
+  public final Scope root;
+  public final java.io.PrintStream out;
+  private final HashMap<java.nio.file.Path, Builtins.Module> modules = new HashMap<>();
+
+  // the instance used by `Main` and by the static `eval` methods of the engines
+  public static final Interpreter shared = new Interpreter(System.out);
+
+  public Interpreter(java.io.PrintStream out) {
+    this.out = out;
+    root = new Scope(this);
     root.assign("math", new Builtins.Module("math", new HashMap<>(Map.of(
       "sign", new Builtins.Function("math_sign")
     ))));
@@ -111,7 +186,19 @@ public final class Interpreter {
     root.assign("jvm", new Builtins.Module("jvm", new HashMap<>(Map.of(
       "cls", new Builtins.Function("jvm_cls")
     ))));
-    root.assign("load", new Builtins.Function("load"));
+    root.assign("task", new Builtins.Module("task", new HashMap<>(Map.of(
+      "spawn", new Builtins.Function("task_spawn"),
+      "join", new Builtins.Function("task_join"),
+      "scope", new Builtins.Function("task_scope"),
+      "channel", new Builtins.Function("task_channel"),
+      "actor", new Builtins.Function("task_actor")
+    ))));
+    root.assign("par", new Builtins.Module("par", new HashMap<>(Map.of(
+      "each", new Builtins.Function("par_each"),
+      "reduce", new Builtins.Function("par_reduce"),
+      "range", new Builtins.Function("par_range")
+    ))));
+    root.assign("load", new Builtins.Load(this));
     root.assign("list", Builtins.List.TYPE);
     root.assign("vector", Vector.TYPE);
     root.assign("int", Builtins.Int.TYPE);
@@ -121,16 +208,56 @@ public final class Interpreter {
     root.assign("isinstance", new Builtins.Function("isinstance"));
   }
 
+  // a new top-level scope, like the one of a script or a module
+  public Scope scope() { return new Scope(root, null, false, false); }
+
+  public Value run(String code) { return scope().eval_toplevel(ParserHelper.parse(code)); }
+
+  // evaluates the module at `path`, or returns it if it was already loaded by this instance
+  public Builtins.Module load(java.nio.file.Path path) throws java.io.IOException {
+    path = path.toAbsolutePath().normalize();
+    synchronized(modules) {
+      var module = modules.get(path);
+      if(module != null) { return module; }
+    }
+    var code = java.nio.file.Files.readString(path, java.nio.charset.StandardCharsets.UTF_8);
+    var node = ParserHelper.parse(code);
+    var exprs = node instanceof Node.Seq(_, var nodes) ? nodes : java.util.List.of(node);
+    var scope = scope();
+    for(var expr : exprs) { scope.eval_toplevel(expr); }
+    var module = new Builtins.Module(path.getFileName().toString(), scope.bindings);
+    synchronized(modules) { modules.put(path, module); }
+    return module;
+  }
+
   public static final class Scope {
-    public final HashMap<String, Value> bindings = new HashMap<>();
+    // dynamic scopes (root, REPL, modules) keep `bindings`; frames of resolved code keep `slots` (see `Resolver`)
+    public final HashMap<String, Value> bindings;
+    public final Value[] slots;
     private final Scope parent;
+    private final Scope globals;    // nearest enclosing dynamic scope
     private final Obj this_obj;
     private final boolean in_loop;
     private final boolean in_fn;
-    public Scope(Scope parent, Obj this_obj, boolean in_loop, boolean in_fn) { this.parent = parent; this.this_obj = this_obj; this.in_loop = in_loop; this.in_fn = in_fn; }
+    private final Interpreter interpreter;    // only kept by dynamic scopes
+    private final Object owner = Task.current();     // the task that created the scope, if any
+    private Scope(Interpreter interpreter) {
+      this.bindings = new HashMap<>(); this.slots = null; this.parent = null; this.globals = this;
+      this.this_obj = null; this.in_loop = false; this.in_fn = false; this.interpreter = interpreter;
+    }
+    public Scope(Scope parent, Obj this_obj, boolean in_loop, boolean in_fn) {
+      this.bindings = new HashMap<>(); this.slots = null; this.parent = parent; this.globals = this;
+      this.this_obj = this_obj; this.in_loop = in_loop; this.in_fn = in_fn; this.interpreter = parent.interpreter();
+    }
+    public Scope(Scope parent, Obj this_obj, boolean in_loop, boolean in_fn, int size) {
+      this.bindings = null; this.slots = new Value[size]; this.parent = parent; this.globals = parent.globals;
+      this.this_obj = this_obj; this.in_loop = in_loop; this.in_fn = in_fn; this.interpreter = null;
+    }
 
     public Value lookup(String binding) {
-      if(bindings.containsKey(binding)) {
+      if(bindings == null) {
+        return globals.lookup(binding);
+      } else if(bindings.containsKey(binding)) {
         return bindings.get(binding);
       } else if(parent != null) {
         return parent.lookup(binding);
@@ -140,8 +267,10 @@ public final class Interpreter {
     }
 
     private boolean update(String binding, Value value) {
-      if(this.bindings.containsKey(binding)) {
-        this.bindings.put(binding, value);
+      if(this.bindings == null) {
+        return globals.update(binding, value);
+      } else if(this.bindings.containsKey(binding)) {
+        owned().bindings.put(binding, value);
         return true;
       } else if(this.parent != null) {
         return this.parent.update(binding, value);
@@ -152,14 +281,92 @@ public final class Interpreter {
 
     public void assign(String binding, Value value) {
       if(this.bindings.containsKey(binding) || this.parent == null || !this.parent.update(binding, value)) {
-        this.bindings.put(binding, value);
+        owned().bindings.put(binding, value);
       }
     }
 
     public void declare(String binding, Value value) {
       if(this.bindings.containsKey(binding)) { throw new InterpreterError("duplicate var " + binding); }
-      this.bindings.put(binding, value);
+      owned().bindings.put(binding, value);
+    }
+
+    public Scope parent() { return parent; }
+    public Interpreter interpreter() { return globals.interpreter; }
+
+    // tasks can only change scopes that they created, see `Task`
+    private Scope owned() {
+      var task = Task.current();
+      if(task != null && owner != task) {
+        throw new InterpreterError("a task cannot assign variables of the scopes enclosing it");
+      }
+      return this;
     }
+    public Obj this_obj() { return this_obj; }
+    public boolean in_loop() { return in_loop; }
+    public boolean in_fn() { return in_fn; }
+
+    public Scope frame(int depth) {
+      var scope = this;
+      for(var i = 0; i < depth; i++) { scope = scope.parent; }
+      return scope;
+    }
+
+    public Value load(Node.Local local) {
+      var value = frame(local.depth()).slots[local.index()];
+      if(value != null) { return value; }
+      return switch(local.next()) {
+        case Node.Local next -> load(next);
+        case Node.Ident(_, var name) -> globals.lookup(name);
+        default -> throw new IllegalStateException();
+      };
+    }
+
+    private boolean update(Node target, Value value) {
+      return switch(target) {
+        case Node.Local(_, _, var depth, var index, var next) -> {
+          var frame = frame(depth);
+          if(frame.slots[index] != null) {
+            frame.owned().slots[index] = value;
+            yield true;
+          }
+          yield update(next, value);
+        }
+        case Node.Ident(_, var name) -> globals.update(name, value);
+        default -> throw new IllegalStateException();
+      };
+    }
+
+    public void assign(Node target, Value value) {
+      switch(target) {
+        case Node.Local local -> {
+          if(!update(local, value)) { frame(local.depth()).owned().slots[local.index()] = value; }
+        }
+        case Node.Ident(_, var name) -> assign(name, value);
+        default -> throw new NotImplemented(Node.show(target));
+      }
+    }
+
+    public void declare(Node target, Value value) {
+      switch(target) {
+        case Node.Local(_, var name, var depth, var index, _) -> {
+          var frame = frame(depth);
+          if(frame.slots[index] != null) { throw new InterpreterError("duplicate var " + name); }
+          frame.slots[index] = value;
+        }
+        case Node.Ident(_, var name) -> declare(name, value);
+        default -> throw new NotImplemented(Node.show(target));
+      }
+    }
+
+    private static String name(Node target) {
+      return switch(target) {
+        case Node.Local(_, var name, _, _, _) -> name;
+        case Node.Ident(_, var name) -> name;
+        default -> throw new NotImplemented(Node.show(target));
+      };
+    }
+
+    public Value eval_toplevel(Node n) { return eval(Optimizer.optimize(Resolver.resolve(n))); }
 
     private Param[] get_params(java.util.List<Node> params) {
       var parameters = new Param[params.size()];
@@ -188,69 +395,56 @@ public final class Interpreter {
       return parameters;
     }
 
-    public Map<Value, Value> eval_map(Iterable<Node> items) {
-      var entries = new HashMap<Value, Value>();
+    private void eval_entries(Iterable<Node> items, java.util.function.BiConsumer<Value, Value> put) {
       for(var item : items) {
         switch(item) {
-          case Node.Arg(_, var key, var value) -> entries.put(eval(key), eval(value));
+          case Node.Arg(_, var key, var value) -> put.accept(eval(key), eval(value));
           default -> throw new InterpreterError("expected a `key = value` entry, not " + Node.show(item));
         }
       }
-      return entries;
     }
 
     public Value eval(Node n) {
       Value result = switch(n) {
-        case Node.Int(_, var value) -> new Int(value);
+        case Node.Int(_, var value) -> Int.of(value);
         case Node.Str(_, var value) -> new Str(value);
         case Node.None(_) -> NONE;
         case Node.Bool(_, var value) -> value ? TRUE : FALSE;
-        case Node.Atom(_, var name) -> new Atom(name);
+        case Node.Atom(_, var value) -> value;
+        case Node.Const(_, var value) -> value;
         case Node.Ident(_, var name) -> lookup(name);
+        case Node.Local local -> load(local);
         case Node.List(_, var items) -> new List(items.stream().map(this::eval).toArray(size -> new Value[size]));
         case Node.Vector(_, var items) -> {
           if(items.isEmpty()) { yield Vector.empty; }   // TODO: how to create an empty index?
           yield switch(items.get(0)) {
-            case Node.Arg(_, var key, var value) -> // index
-              new Index(eval_map(items));
+            case Node.Arg(_, var key, var value) -> { // index
+              var index = new Champ.Builder<Value, Value>();
+              eval_entries(items, index::put);
+              yield new Index(index.build());
+            }
             default -> // vector
               Vector.make(items.stream().map(this::eval));
           };
         }
         case Node.Tuple(_, var items) -> Vector.make(items.stream().map(this::eval));
-        case Node.Dict(_, var fields) -> new Dict(eval_map(fields));
+        case Node.Dict(_, var fields) -> {
+          var dict = new Dict();
+          eval_entries(fields, dict::set_item);
+          yield dict;
+        }
         case Node.Record(_, var fields) -> {
-          var seen_fields = new HashSet<String>();
-          var record = new scala.collection.mutable.HashMap<String, Value>();
+          var record = new Record.Builder();
           for(var field : fields) {
             switch(field) {
-              case Node.Arg(_, Node.Ident(_, var name), var expr) -> {
-                if(seen_fields.contains(name)) {
-                  throw new InterpreterError("duplicated record field `" + name + "`");
-                }
-                seen_fields.add(name);
-                record.put(name, eval(expr));
-              }
-              case Node.Ident(_, var name) -> {
-                if(seen_fields.contains(name)) {
-                  throw new InterpreterError("duplicated record field `" + name + "`");
-                }
-                // treat as variable name
-                seen_fields.add(name);
-                record.put(name, eval(field));
-              }
-              case Node.Spread(_, var expr) -> {
-                var value = eval(expr);
-                if(value instanceof Record r) {
-                  record.addAll(r.fields);
-                } else {
-                  throw new InterpreterError("expected a record, not `" + value.getClass() + "`");
-                }
-              }
+              case Node.Arg(_, Node.Ident(_, var name), var expr) -> record.field(name, eval(expr));
+              case Node.Ident(_, var name) -> record.field(name, eval(field));    // treat as variable name
+              case Node.Local(_, var name, _, _, _) -> record.field(name, eval(field));
+              case Node.Spread(_, var expr) -> record.spread(eval(expr));
               default -> throw new NotImplemented(Node.show(field));
             }
           }
-          yield new Record(record);
+          yield record.build();
         }
         case Node.Attr(_, var expr, var attr) -> eval(expr).get_attr(attr);
         case Node.Call(_, var fn, var args) -> {
@@ -270,15 +464,43 @@ public final class Interpreter {
           }
           yield fn_value.call(other_args.toArray(size -> new Value[size]), named_args.isEmpty() ? null : named_args);
         }
+        case Node.Invoke(_, Node.Attr(_, var obj, var attr), var args, var shape, var tail) -> {
+          // methods are called without creating a bound method, other attributes are read before the arguments
+          var target = eval(obj);
+          Obj.MethodDescriptor method = null;
+          Value fn_value = null;
+          if(target instanceof Obj o && o.cls.get_descriptor(attr) instanceof Obj.MethodDescriptor m) { method = m; } else { fn_value = target.get_attr(attr); }
+          var values = new Value[args.size()];
+          for(var i = 0; i < values.length; i++) {
+            if(shape != null && i == shape.duplicate) { throw shape.duplicate_error(); }
+            values[i] = eval(args.get(i));
+          }
+          if(method == null) { yield tail ? tail_call(fn_value, values, shape) : call(fn_value, values, shape); }
+          if(tail && method instanceof Obj.Method m) { yield new TailCall(m.params(), m.closure(), m.body(), m.jit(), values, shape, (Obj) target); }
+          yield method.invoke((Obj) target, values, shape);
+        }
+        case Node.Invoke(_, var fn, var args, var shape, var tail) -> {
+          var fn_value = eval(fn);
+          var values = new Value[args.size()];
+          for(var i = 0; i < values.length; i++) {
+            if(shape != null && i == shape.duplicate) { throw shape.duplicate_error(); }
+            values[i] = eval(args.get(i));
+          }
+          yield tail ? tail_call(fn_value, values, shape) : call(fn_value, values, shape);
+        }
         case Node.Seq(_, var exprs) -> eval_seq(exprs, this.in_loop);
+        case Node.Block block -> eval_block(block, this.in_loop);
+        case Node.Body(_, var body, _) -> eval(body);
         case Node.Assign(_, Node.Ident(_, var name), var expr) -> { assign(name, eval(expr)); yield NONE; }
+        case Node.Assign(_, Node.Local target, var expr) -> { assign(target, eval(expr)); yield NONE; }
         case Node.Assign(_, Node.Attr(_, var obj, var attr), var expr) -> { eval(obj).set_attr(attr, eval(expr)); yield NONE; }
         case Node.Assign(_, Node.Item(_, var obj, var items), var expr) when items.size() == 1 -> { eval(obj).set_item(eval(items.get(0)), eval(expr)); yield NONE; }
         case Node.VarAssign(_, Node.Ident(_, var name), var expr) -> { declare(name, eval(expr)); yield NONE; }
-        case Node.Unary(_, Node.Ident(_, var op), var expr) when op.equals("-") -> new Int(to_int(eval(expr)).negate());
-        case Node.Binary(_, Node.Ident(_, var op), var left, var right) when op.equals("+") -> new Int(to_int(eval(left)).add(to_int(eval(right))));
-        case Node.Binary(_, Node.Ident(_, var op), var left, var right) when op.equals("-") -> new Int(to_int(eval(left)).subtract(to_int(eval(right))));
-        case Node.Binary(_, Node.Ident(_, var op), var left, var right) when op.equals("*") -> new Int(to_int(eval(left)).multiply(to_int(eval(right))));
+        case Node.VarAssign(_, Node.Local target, var expr) -> { declare(target, eval(expr)); yield NONE; }
+        case Node.Unary(_, Node.Ident(_, var op), var expr) when op.equals("-") -> to_int(eval(expr)).negate();
+        case Node.Binary(_, Node.Ident(_, var op), var left, var right) when op.equals("+") -> to_int(eval(left)).add(to_int(eval(right)));
+        case Node.Binary(_, Node.Ident(_, var op), var left, var right) when op.equals("-") -> to_int(eval(left)).subtract(to_int(eval(right)));
+        case Node.Binary(_, Node.Ident(_, var op), var left, var right) when op.equals("*") -> to_int(eval(left)).multiply(to_int(eval(right)));
         case Node.Not(_, var expr) -> to_bool(eval(expr)) ? FALSE : TRUE;
         case Node.And(_, var exprs) -> {
           assert exprs.size() >= 2;
@@ -300,13 +522,13 @@ public final class Interpreter {
         }
         case Node.If(_, var cond, var then) -> to_bool(eval(cond)) ? eval(then) : NONE;
         case Node.IfElse(_, var cond, var then, var else_) -> to_bool(eval(cond)) ? eval(then) : eval(else_);
-        case Node.Assign(_, Node.Call(_, Node.Ident(_, String fn), var params), var body) -> {
+        case Node.Assign(_, Node.Call(_, var fn, var params), var body) when fn instanceof Node.Ident || fn instanceof Node.Local -> {
           assign(fn, new Runtime.Function(get_params(params), this, body));
           yield NONE;
         }
         case Node.Arrow(_, var params, var body) -> new Runtime.Function(get_params(params), this, body);
-        case Node.Func(_, Node.Call(_, Node.Ident(_, var fn_name), var params), var body) -> {
-          assign(fn_name, new Runtime.Function(get_params(params), this, body));
+        case Node.Func(_, Node.Call(_, var fn, var params), var body) when fn instanceof Node.Ident || fn instanceof Node.Local -> {
+          assign(fn, new Runtime.Function(get_params(params), this, body));
           yield NONE;
         }
         case Node.Item(_, var value, var items) when items.size() == 1 -> eval(value).get_item(eval(items.get(0)));
@@ -316,34 +538,34 @@ public final class Interpreter {
           yield NONE;
         }
         case Node.For(_, Node.Ident(_, var item), var items, var body) -> {
-          eval_for(item, items, body);
+          eval_for(items, body);
           yield NONE;
         }
         case Node.Continue(_) -> {
           if(!in_loop) { throw new InterpreterError("`continue` not in loop"); }
-          throw new Control.Continue();
+          throw Control.CONTINUE;
         }
         case Node.Break(_) -> {
           if(!in_loop) { throw new InterpreterError("`break` not in loop"); }
-          throw new Control.Break();
+          throw Control.BREAK;
         }
         case Node.Throw(_, var exception) -> { throw new Control.Exception(eval(exception)); }
         case Node.Try(_, var try_block, Node.Ident(_, var exception), var catch_block) -> {
-          yield eval_try(try_block, exception, catch_block);
+          yield eval_try(try_block, catch_block);
         }
         case Node.This(_) -> {
           if(this_obj == null) { throw new InterpreterError("invalid `this` outside of class"); }
           yield this_obj;
         }
-        case Node.Class(_, Node.Ident(_, var name), Node.Seq(_, var declarations)) -> {
-          declare(name, class_declaration(name, declarations));
+        case Node.Class(_, var target, Node.Seq(_, var declarations)) -> {
+          declare(target, class_declaration(name(target), declarations));
           yield NONE;
         }
         case Node.Return(_, var expr) -> {
           if(!in_fn) { throw new InterpreterError("`return` not in function"); }
           throw new Control.Return(expr != null ? eval(expr) : NONE);
         }
-        case Node.Print(_, var expr) -> { System.out.println(eval(expr)); yield NONE; }
+        case Node.Print(_, var expr) -> { interpreter().out.println(eval(expr)); yield NONE; }
         default -> throw new NotImplemented(Node.show(n));
       };
       return result;
@@ -365,6 +587,10 @@ public final class Interpreter {
       return (new Scope(this, this_obj, in_loop, this.in_fn)).eval_all(exprs);
     }
 
+    public Value eval_block(Node.Block block, boolean in_loop) {
+      return (new Scope(this, this_obj, in_loop, this.in_fn, block.size())).eval_all(block.exprs());
+    }
+
     private Obj.Cls class_declaration(String name, java.util.List<Node> declarations) {
       var fields = new HashMap<String, Integer>();
       var constructor_statements = new ArrayList<Node>();
@@ -408,7 +634,7 @@ public final class Interpreter {
           default -> throw new NotImplemented(Node.show(declaration));
         }
       }
-      Obj.Method constructor = new Obj.Method(new Param[0], this, new Node.Seq(null, constructor_statements));
+      Obj.Method constructor = new Obj.Method(new Param[0], this, new Node.Block(null, constructor_statements, 0));
       return new Obj.Cls(name, fields.size(), constructor, attrs);
     }
 
@@ -439,34 +665,42 @@ public final class Interpreter {
       return true;
     }
 
-    private void eval_while(Node cond, Node.Seq body) {
+    private void eval_while(Node cond, Node body) {
       while(to_bool(eval(cond))) {
-        try { eval_seq(body.exprs(), true); }
+        try { eval_loop_body(body); }
         catch(Control.Break e) { break; }
         catch(Control.Continue e) { continue; }
       }
     }
 
-    private void eval_for(String item, Node items, Node.Seq body) {
+    private Value eval_loop_body(Node body) {
+      return switch(body) {
+        case Node.Block block -> eval_block(block, true);
+        case Node.Seq(_, var exprs) -> eval_seq(exprs, true);
+        default -> eval(body);
+      };
+    }
+
+    private void eval_for(Node items, Node body) {
       var it = Runtime.iter(eval(items));
       while(it.hasNext()) {
-        var scope = new Scope(this, this_obj, true, in_fn);
-        scope.declare(item, it.next());
+        var scope = new Scope(this, this_obj, true, in_fn, 1);
+        scope.slots[0] = it.next();
         try { scope.eval(body); }
         catch(Control.Break e) { break; }
         catch(Control.Continue e) { continue; }
       }
     }
 
-    private Value eval_try(Node.Seq try_block, String exception, Node.Seq catch_block) {
+    private Value eval_try(Node try_block, Node catch_block) {
       try { return eval(try_block); }
       catch(Control.Exception e) {
-        var scope = new Scope(this, this_obj, in_loop, in_fn);
-        scope.declare(exception, e.value);
+        var scope = new Scope(this, this_obj, in_loop, in_fn, 1);
+        scope.slots[0] = e.value;
         return scope.eval(catch_block);
       }
     }
   }
 
-  public static Value eval(Node n) { return new Scope(root, null, false, false).eval(n); }
+  public static Value eval(Node n) { return shared.scope().eval_toplevel(n); }
 }
@@ -4,19 +4,30 @@ import org.apache.commons.lang3.ClassUtils;
 import org.apache.commons.lang3.reflect.ConstructorUtils;
 import org.apache.commons.lang3.reflect.MethodUtils;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import caya.Builtins.*;
 import caya.Runtime.Value;
 import caya.Runtime.Type;
 
 public class JVM {
+  private static final ClassValue<Cls> classes = new ClassValue<>() {
+    @Override protected Cls computeValue(Class<?> cls) { return new Cls(cls); }
+  };
+
+  // the (shared) Caya type of a Java class
+  public static Cls cls(Class<?> cls) { return classes.get(cls); }
+
   public static final class Cls extends Type {
     public final Class<?> cls;
-    public Cls(Class<?> cls) { this.cls = cls; }
+    private Cls(Class<?> cls) { this.cls = cls; }
 
     @Override public String toString() { return "JVM class " + cls.toString(); }
     @Override public int hashCode() { return cls.hashCode(); }
@@ -64,7 +75,6 @@ public class JVM {
 
   public static final class Obj extends Value {
     public final Object obj;
-    public Cls cls;
     public Obj(Object obj) { this.obj = obj; }
 
     @Override public String toString() {
@@ -76,7 +86,7 @@ public class JVM {
     @Override public boolean equals(Object other) { return obj.equals(other); }
 
     @Override public final Value get_attr(String attr) { return new BoundMethod(obj, attr); }
-    @Override public Cls type() { if(cls == null) { cls = new Cls(obj.getClass()); }; return cls; }
+    @Override public Cls type() { return cls(obj.getClass()); }
   }
 
   public static final class BoundMethod extends Value {
@@ -109,18 +119,46 @@ public class JVM {
     }
   }
 
+  // a resolved method, adapted to `(Object receiver, Object[] args) -> Object`
+  private record Invoker(java.lang.reflect.Method method, MethodHandle handle) {}
+  private record Signature(String name, java.util.List<Class<?>> parameter_types) {}
+
+  // resolved methods of each receiver class, by name and argument classes
+  private static final ClassValue<ConcurrentHashMap<Signature, Invoker>> methods = new ClassValue<>() {
+    @Override protected ConcurrentHashMap<Signature, Invoker> computeValue(Class<?> cls) { return new ConcurrentHashMap<>(); }
+  };
+
   public static Object invoke_method(final Object object, final String method_name, Object... args) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
+    var parameter_types = ClassUtils.toClass(args);
+    var cache = methods.get(object.getClass());
+    var signature = new Signature(method_name, Arrays.asList(parameter_types));
+    var invoker = cache.get(signature);
+    if(invoker == null) {
+      invoker = resolve_method(object.getClass(), method_name, parameter_types);
+      cache.putIfAbsent(signature, invoker);
+    }
+    try {
+      return invoker.handle.invokeExact(object, prepare_arguments(invoker.method, args));
+    } catch(Throwable e) {
+      throw new InvocationTargetException(e);
+    }
+  }
+
+  private static Invoker resolve_method(Class<?> receiver, String method_name, Class<?>[] parameter_types) throws NoSuchMethodException, IllegalAccessException {
     // copied from org.apache.commons.lang3.reflect.MethodUtils.invokeMethod and modified to get an accessible superclass
-    final Class<?>[] parameter_types = ClassUtils.toClass(args);
-    Class<?> cls = object.getClass();
+    Class<?> cls = receiver;
     while(!verify_module_access(JVM.class.getModule(), cls)) {
       cls = cls.getSuperclass();
     }
     var method = MethodUtils.getMatchingAccessibleMethod(cls, method_name, parameter_types);
     if (method == null) {
-      throw new NoSuchMethodException("No such accessible method: " + method_name + "() on object: " + object.getClass().getName());
+      throw new NoSuchMethodException("No such accessible method: " + method_name + "() on object: " + receiver.getName());
     }
-    return method.invoke(object, prepare_arguments(method, args));
+    var handle = MethodHandles.publicLookup().unreflect(method).asFixedArity();
+    if(java.lang.reflect.Modifier.isStatic(method.getModifiers())) { handle = MethodHandles.dropArguments(handle, 0, Object.class); }
+    var count = method.getParameterCount();
+    handle = handle.asType(MethodType.genericMethodType(count + 1)).asSpreader(Object[].class, count);
+    return new Invoker(method, handle);
   }
 
   public static Object[] prepare_arguments(java.lang.reflect.Executable e, Object[] args) {
@@ -5,20 +5,58 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 
 public class Main {
+  public enum Engine {
+    tree, ast, vm;
+
+    public Runtime.Value eval(Interpreter.Scope scope, Node node) {
+      return switch(this) {
+        case tree -> scope.eval_toplevel(node);
+        case ast -> caya.ast.Tree.eval_toplevel(scope, node);
+        case vm -> caya.bytecode.VM.eval_toplevel(scope, node);
+      };
+    }
+  }
+
   public static void main(String[] args) throws IOException {
+    var engine = Engine.tree;
+    var ic_stats = false;
+    while(args.length > 0 && args[0].startsWith("--")) {
+      var option = args[0];
+      if(option.startsWith("--engine=")) {
+        engine = Engine.valueOf(option.substring("--engine=".length()));
+      } else if(option.startsWith("--jit=")) {
+        var jit = option.substring("--jit=".length());
+        caya.jit.JIT.threshold = jit.equals("off") ? -1 : jit.equals("force") ? 0 : Integer.parseInt(jit);
+      } else if(option.startsWith("--jit-dump=")) {
+        caya.jit.JIT.dump = Path.of(option.substring("--jit-dump=".length()));
+      } else if(option.startsWith("--opt-level=")) {
+        Optimizer.level = Integer.parseInt(option.substring("--opt-level=".length()));
+      } else if(option.equals("--opt-dump")) {
+        Optimizer.dump = true;
+      } else if(option.equals("--ic-stats")) {
+        ic_stats = Obj.InlineCache.stats = true;
+      } else {
+        throw new RuntimeException("unknown option: " + option);
+      }
+      args = java.util.Arrays.copyOfRange(args, 1, args.length);
+    }
     switch(args.length) {
       case 1 -> {
         var code = Files.readString(Path.of(args[0]), java.nio.charset.StandardCharsets.UTF_8);
         var node = ParserHelper.parse(code);
-        Interpreter.eval(node);
+        try {
+          engine.eval(Interpreter.shared.scope(), node);
+        } finally {
+          if(ic_stats) { System.err.print(Obj.InlineCache.report()); }
+        }
       }
-      case 0 -> { repl(); }
-      default -> { throw new RuntimeException("usage: caya [<path>]"); }
+      case 0 -> { repl(engine); }
+      default -> { throw new RuntimeException("usage: caya [--engine=tree|ast|vm] [--jit=off|force|<calls>] [--jit-dump=<dir>] [--opt-level=0|1|2] [--opt-dump] [--ic-stats] [<path>]"); }
     }
   }
 
-  public static void repl() throws IOException {
-    var scope = new Interpreter.Scope(Interpreter.root, null, false, false);
+  public static void repl(Engine engine) throws IOException {
+    var scope = Interpreter.shared.scope();
     var input = new java.util.Scanner(System.in);
 
     while(true) {
@@ -30,7 +68,7 @@ public class Main {
 
       for(var node : nodes) {
         try {
-          var result = scope.eval(node);
+          var result = engine.eval(scope, node);
           if(result != Builtins.NONE) { System.out.println(result); }
         } catch (Interpreter.Control.Exception e) {
           System.out.println("exception: " + e.value);
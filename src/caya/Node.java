@@ -18,7 +18,7 @@ sealed public interface Node {
 
   record Err(Location loc, String error) implements Node {}
   record Ident(Location loc, String name) implements Node {}
-  record Atom(Location loc, String name) implements Node {}
+  record Atom(Location loc, Builtins.Atom value) implements Node {}     // interned by the parser
   record Int(Location loc, BigInteger value) implements Node {}
   record Bool(Location loc, boolean value) implements Node {}
   record Str(Location loc, String value) implements Node {}
@@ -46,15 +46,24 @@ sealed public interface Node {
   record Not(Location loc, Node expr) implements Node {}
   record Cmp(Location loc, java.util.List<Node> parts) implements Node {}
   record Arrow(Location loc, java.util.List<Node> params, Node body) implements Node {}
-  record Func(Location loc, Node declaration, Seq body) implements Node {}
+  record Func(Location loc, Node declaration, Node body) implements Node {}
   record Print(Location loc, Node value) implements Node {}
   record Return(Location loc, Node value) implements Node {}
-  record While(Location loc, Node cond, Seq body) implements Node {}
-  record For(Location loc, Node pattern, Node items, Seq body) implements Node {}
+  record While(Location loc, Node cond, Node body) implements Node {}
+  record For(Location loc, Node pattern, Node items, Node body) implements Node {}
   record Break(Location loc) implements Node {}
   record Continue(Location loc) implements Node {}
   record Class(Location loc, Node declaration, Seq body) implements Node {}
   record This(Location loc) implements Node {}
-  record Try(Location loc, Seq try_block, Node exception, Seq catch_block) implements Node {}
+  record Try(Location loc, Node try_block, Node exception, Node catch_block) implements Node {}
   record Throw(Location loc, Node exception) implements Node {}
+
+  // produced by `Resolver`
+  record Block(Location loc, java.util.List<Node> exprs, int size) implements Node {}     // a `Seq` with its own frame of `size` slots
+  record Invoke(Location loc, Node fn, java.util.List<Node> args, Runtime.CallShape shape, boolean tail) implements Node {}     // a `Call` with named arguments unwrapped, `shape` is `null` if there are none
+  record Local(Location loc, String name, int depth, int index, Node next) implements Node {}     // `next` is the binding it shadows (`Local` or `Ident`)
+  record Body(Location loc, Node body, caya.jit.JIT.Entry jit) implements Node {}     // a function body, `jit` is shared by all closures created from it
+
+  // produced by `Optimizer`
+  record Const(Location loc, Runtime.Value value) implements Node {}     // an immutable value, e.g. a literal or a folded expression
 }
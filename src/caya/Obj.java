@@ -1,11 +1,14 @@
 package caya;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import caya.Runtime.Param;
 import caya.Runtime.Value;
 import caya.Runtime.Type;
+import caya.jit.JIT;
 
 public final class Obj extends Value {
   public final Cls cls;
@@ -20,9 +23,9 @@ public final class Obj extends Value {
     public final String name;
     public final int num_fields;
     public final HashMap<String, Descriptor> attrs;
-    public final Method constructor;
+    public final Descriptor constructor;
 
-    public Cls(String name, int num_fields, Method constructor, HashMap<String, Descriptor> attrs) {
+    public Cls(String name, int num_fields, Descriptor constructor, HashMap<String, Descriptor> attrs) {
       this.name = name;
       this.num_fields = num_fields;
       this.attrs = attrs;
@@ -38,7 +41,7 @@ public final class Obj extends Value {
       return obj;
     }
 
-    private Descriptor get_descriptor(String attr) {
+    public Descriptor get_descriptor(String attr) {
       var descriptor = attrs.get(attr);
       if(descriptor == null) {
         throw new Interpreter.InterpreterError("object of class `" + name + "` has no attribute `" + attr + "`");
@@ -55,14 +58,113 @@ public final class Obj extends Value {
     public default void set(Obj obj, Value value) { throw new Interpreter.NotImplemented(this.getClass() + ".set"); }
   }
 
-  record Field(int field) implements Descriptor {
+  // implemented by the method descriptors of all engines, so that `obj.m(...)` doesn't have to create a bound method
+  public static interface MethodDescriptor extends Descriptor {
+    public Value invoke(Obj obj, Value[] args, Runtime.CallShape shape);
+  }
+
+  // Per-site polymorphic inline cache of the descriptor of `attr`, keyed on `Cls` identity. A site that sees more than
+  // `SIZE` classes is megamorphic, and keeps looking the attribute up in `Cls.attrs` for the classes it didn't cache.
+  // Records are cached the same way, keyed on `Record.Shape` identity, with the slot of `attr` (or -1 if missing).
+  public static final class InlineCache {
+    public static final int SIZE = 4;
+    public static boolean stats = false;      // keep track of all sites created from now on, see `report`
+    private static final ConcurrentLinkedQueue<InlineCache> sites = new ConcurrentLinkedQueue<>();
+
+    private record Entry(Cls cls, Descriptor descriptor) {}
+    private record ShapeEntry(Record.Shape shape, int slot) {}
+
+    public final String attr;
+    private Entry[] entries = new Entry[0];   // copied on write, so that concurrent readers never see a partial entry
+    private ShapeEntry[] shapes = new ShapeEntry[0];
+    public int hits = 0, misses = 0;          // not synchronized, only for diagnostics
+
+    public InlineCache(String attr) {
+      this.attr = attr;
+      if(stats) { sites.add(this); }
+    }
+
+    public Descriptor lookup(Cls cls) {
+      for(var entry : entries) {
+        if(entry.cls == cls) { hits += 1; return entry.descriptor; }
+      }
+      misses += 1;
+      return insert(cls);
+    }
+
+    // like `lookup`, for a class that was just looked up by the same site
+    public Descriptor peek(Cls cls) {
+      for(var entry : entries) {
+        if(entry.cls == cls) { return entry.descriptor; }
+      }
+      return cls.get_descriptor(attr);
+    }
+
+    private Descriptor insert(Cls cls) {
+      var descriptor = cls.get_descriptor(attr);
+      var entries = this.entries;
+      if(entries.length < SIZE) {
+        var extended = Arrays.copyOf(entries, entries.length + 1);
+        extended[entries.length] = new Entry(cls, descriptor);
+        this.entries = extended;
+      }
+      return descriptor;
+    }
+
+    public int slot(Record.Shape shape) {
+      for(var entry : shapes) {
+        if(entry.shape == shape) { hits += 1; return entry.slot; }
+      }
+      misses += 1;
+      var slot = shape.slot(attr);
+      var shapes = this.shapes;
+      if(shapes.length < SIZE) {
+        var extended = Arrays.copyOf(shapes, shapes.length + 1);
+        extended[shapes.length] = new ShapeEntry(shape, slot);
+        this.shapes = extended;
+      }
+      return slot;
+    }
+
+    public boolean megamorphic() { return (entries.length == SIZE || shapes.length == SIZE) && misses > SIZE; }
+
+    public Value get(Value target) {
+      if(target instanceof Record r) {
+        var slot = slot(r.shape);
+        return slot >= 0 ? r.get(slot) : r.get_attr(attr);
+      }
+      if(!(target instanceof Obj obj)) { return target.get_attr(attr); }
+      var descriptor = lookup(obj.cls);
+      return descriptor instanceof Field field ? obj.fields[field.field] : descriptor.get(obj);
+    }
+
+    public void set(Value target, Value value) {
+      if(!(target instanceof Obj obj)) { target.set_attr(attr, value); return; }
+      var descriptor = lookup(obj.cls);
+      if(descriptor instanceof Field field) { obj.fields[field.field] = value; } else { descriptor.set(obj, value); }
+    }
+
+    // one line per site, most missed first
+    public static String report() {
+      var result = new StringBuilder();
+      sites.stream().sorted((a, b) -> Integer.compare(b.misses, a.misses)).forEach(site -> result.append(String.format(
+        "%-24s hits=%-10d misses=%-10d classes=%d%s%n", site.attr, site.hits, site.misses, site.entries.length + site.shapes.length, site.megamorphic() ? " megamorphic" : "")));
+      return result.toString();
+    }
+
+    @Override public String toString() { return attr; }
+  }
+
+  public record Field(int field) implements Descriptor {
     public Value get(Obj obj) { return obj.fields[field]; }
     public void set(Obj obj, Value value) { obj.fields[field] = value; }
   }
 
-  record Method(Param[] params, Interpreter.Scope closure, Node body) implements Descriptor {
+  record Method(Param[] params, Interpreter.Scope closure, Node body, JIT.Entry jit) implements MethodDescriptor {
+    Method(Param[] params, Interpreter.Scope closure, Node body) { this(params, closure, body, JIT.entry(body)); }
     public Value get(Obj obj) { return new BoundMethod(obj, this); }
-    public Value call(Obj obj, Value[] args, Map<String, Value> named_args) { return Interpreter.eval_function(params, closure, body, args, named_args, obj); }
+    public Value call(Obj obj, Value[] args, Map<String, Value> named_args) { return Interpreter.eval_function(params, closure, body, jit, args, named_args, obj); }
+    public Value invoke(Obj obj, Value[] args, Runtime.CallShape shape) { return Interpreter.eval_function(params, closure, body, jit, args, shape, obj); }
   }
 
   record Property(Method getter, Method setter) implements Descriptor {
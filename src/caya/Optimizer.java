@@ -0,0 +1,164 @@
+package caya;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import caya.Interpreter.InterpreterError;
+import caya.Runtime.Value;
+import caya.Builtins.*;
+import static caya.Builtins.*;
+
+// Rewrites a resolved tree (see `Resolver`) before it is evaluated:
+//  - level 1 hoists literals to `Const` values, so they aren't re-created every time they are evaluated
+//  - level 2 also folds operators on constants and removes `if` branches with a constant condition
+// Only expressions are rewritten; patterns, parameter names and comparison operators are kept as they are.
+public final class Optimizer {
+  public static int level = 2;
+  public static boolean dump = false;     // print the optimized tree to stderr
+
+  private Optimizer() {}
+
+  public static Node optimize(Node n) {
+    var result = level > 0 ? expr(n) : n;
+    if(dump) { System.err.println(Node.show(result)); }
+    return result;
+  }
+
+  private static List<Node> exprs(List<Node> exprs) {
+    var result = new ArrayList<Node>(exprs.size());
+    for(var expr : exprs) { result.add(expr(expr)); }
+    return result;
+  }
+
+  private static Node arg(Node arg) {
+    return switch(arg) {
+      case Node.Arg(var loc, Node.Ident name, var value) -> new Node.Arg(loc, name, expr(value));
+      default -> expr(arg);
+    };
+  }
+
+  private static Node entry(Node item) {
+    return switch(item) {
+      case Node.Arg(var loc, var key, var value) -> new Node.Arg(loc, expr(key), expr(value));
+      default -> expr(item);
+    };
+  }
+
+  private static List<Node> params(List<Node> params) {
+    return params.stream().map(param -> param instanceof Node.Arg(var loc, Node.Ident name, var value) ? new Node.Arg(loc, name, expr(value)) : param).toList();
+  }
+
+  private static Node declaration(Node declaration) {
+    return switch(declaration) {
+      case Node.VarAssign(var loc, Node.Ident field, var value) -> new Node.VarAssign(loc, field, expr(value));
+      case Node.Func(var loc, Node.Call(var call_loc, var name, var params), var body) -> new Node.Func(loc, new Node.Call(call_loc, name, params(params)), expr(body));
+      case Node.Func(var loc, var target, var body) -> new Node.Func(loc, target, expr(body));
+      default -> declaration;
+    };
+  }
+
+  private static Value constant(Node n) { return n instanceof Node.Const(_, var value) ? value : null; }
+  private static boolean constants(List<Node> exprs) { return exprs.stream().allMatch(expr -> expr instanceof Node.Const); }
+
+  private static Node expr(Node n) {
+    if(n == null) { return null; }
+    return switch(n) {
+      case Node.Int(var loc, var value) -> new Node.Const(loc, Int.of(value));
+      case Node.Str(var loc, var value) -> new Node.Const(loc, new Str(value));
+      case Node.Atom(var loc, var value) -> new Node.Const(loc, value);
+      case Node.Bool(var loc, var value) -> new Node.Const(loc, value ? TRUE : FALSE);
+      case Node.None(var loc) -> new Node.Const(loc, NONE);
+      case Node.Vector(var loc, var items) when items.isEmpty() -> new Node.Const(loc, Vector.empty);
+      case Node.Vector(var loc, var items) -> {
+        var optimized = items.stream().map(Optimizer::entry).toList();
+        yield constants(optimized) ? new Node.Const(loc, Vector.make(optimized.stream().map(Optimizer::constant))) : new Node.Vector(loc, optimized);
+      }
+      case Node.Tuple(var loc, var items) -> {
+        var optimized = exprs(items);
+        yield constants(optimized) ? new Node.Const(loc, Vector.make(optimized.stream().map(Optimizer::constant))) : new Node.Tuple(loc, optimized);
+      }
+      case Node.Record(var loc, var fields) -> new Node.Record(loc, fields.stream().map(Optimizer::arg).toList());
+      case Node.Dict(var loc, var fields) -> new Node.Dict(loc, fields.stream().map(Optimizer::entry).toList());
+      case Node.Spread(var loc, var expr) -> new Node.Spread(loc, expr(expr));
+      case Node.List(var loc, var items) -> new Node.List(loc, exprs(items));
+      case Node.Attr(var loc, var expr, var attr) -> new Node.Attr(loc, expr(expr), attr);
+      case Node.Item(var loc, var expr, var items) -> new Node.Item(loc, expr(expr), exprs(items));
+      case Node.Invoke(var loc, var fn, var args, var shape, var tail) -> new Node.Invoke(loc, expr(fn), exprs(args), shape, tail);
+      case Node.Call(var loc, var fn, var args) -> new Node.Call(loc, expr(fn), args.stream().map(Optimizer::arg).toList());
+      case Node.Block(var loc, var exprs, var size) -> new Node.Block(loc, exprs(exprs), size);
+      case Node.Body(var loc, var body, var jit) -> new Node.Body(loc, expr(body), jit);
+      case Node.Seq(var loc, var exprs) -> new Node.Seq(loc, exprs(exprs));
+      case Node.Assign(var loc, Node.Call(var call_loc, var target, var params), var body) -> new Node.Assign(loc, new Node.Call(call_loc, target, params(params)), expr(body));
+      case Node.Assign(var loc, var pattern, var value) -> new Node.Assign(loc, pattern, expr(value));
+      case Node.VarAssign(var loc, var pattern, var value) -> new Node.VarAssign(loc, pattern, expr(value));
+      case Node.Unary(var loc, var op, var expr) -> fold(new Node.Unary(loc, op, expr(expr)));
+      case Node.Binary(var loc, var op, var left, var right) -> fold(new Node.Binary(loc, op, expr(left), expr(right)));
+      case Node.Not(var loc, var expr) -> fold(new Node.Not(loc, expr(expr)));
+      case Node.And(var loc, var exprs) -> logical(loc, exprs(exprs), true);
+      case Node.Or(var loc, var exprs) -> logical(loc, exprs(exprs), false);
+      case Node.Cmp(var loc, var parts) -> {
+        var optimized = new ArrayList<Node>(parts.size());
+        for(var i = 0; i < parts.size(); i++) {
+          optimized.add(i % 2 == 0 ? expr(parts.get(i)) : parts.get(i));    // odd parts are operators
+        }
+        yield fold(new Node.Cmp(loc, optimized));
+      }
+      case Node.If(var loc, var cond, var then) -> {
+        var optimized = expr(cond);
+        if(level >= 2 && constant(optimized) instanceof Bool b) { yield b.value ? expr(then) : new Node.Const(loc, NONE); }
+        yield new Node.If(loc, optimized, expr(then));
+      }
+      case Node.IfElse(var loc, var cond, var then, var else_) -> {
+        var optimized = expr(cond);
+        if(level >= 2 && constant(optimized) instanceof Bool b) { yield expr(b.value ? then : else_); }
+        yield new Node.IfElse(loc, optimized, expr(then), expr(else_));
+      }
+      case Node.Arrow(var loc, var params, var body) -> new Node.Arrow(loc, params(params), expr(body));
+      case Node.Func(var loc, Node.Call(var call_loc, var target, var params), var body) -> new Node.Func(loc, new Node.Call(call_loc, target, params(params)), expr(body));
+      case Node.Print(var loc, var value) -> new Node.Print(loc, expr(value));
+      case Node.Return(var loc, var value) -> new Node.Return(loc, expr(value));
+      case Node.Throw(var loc, var exception) -> new Node.Throw(loc, expr(exception));
+      case Node.While(var loc, var cond, var body) -> new Node.While(loc, expr(cond), expr(body));
+      case Node.For(var loc, var item, var items, var body) -> new Node.For(loc, item, expr(items), expr(body));
+      case Node.Try(var loc, var try_block, var exception, var catch_block) -> new Node.Try(loc, expr(try_block), exception, expr(catch_block));
+      case Node.Class(var loc, var target, Node.Seq(var body_loc, var declarations)) ->
+        new Node.Class(loc, target, new Node.Seq(body_loc, declarations.stream().map(Optimizer::declaration).toList()));
+      default -> n;
+    };
+  }
+
+  // evaluates an operator whose operands are all constants; operations that fail are left to fail at runtime
+  private static Node fold(Node n) {
+    if(level < 2) { return n; }
+    var operands = switch(n) {
+      case Node.Unary(_, _, var expr) -> List.of(expr);
+      case Node.Binary(_, _, var left, var right) -> List.of(left, right);
+      case Node.Not(_, var expr) -> List.of(expr);
+      case Node.And(_, var exprs) -> exprs;
+      case Node.Or(_, var exprs) -> exprs;
+      case Node.Cmp(_, var parts) -> java.util.stream.IntStream.range(0, parts.size()).filter(i -> i % 2 == 0).mapToObj(parts::get).toList();
+      default -> List.<Node>of();
+    };
+    if(operands.isEmpty() || !constants(operands)) { return n; }
+    try {
+      return new Node.Const(n.loc(), Interpreter.shared.scope().eval(n));
+    } catch(InterpreterError e) {
+      return n;
+    }
+  }
+
+  // `and` (or `or`) short-circuits on a leading constant `false` (`true`) and skips leading constants `true` (`false`),
+  // as long as two operands remain, because the result of a single operand would not be converted to `bool`
+  private static Node logical(Parser.Location loc, List<Node> exprs, boolean and) {
+    var skip = 0;
+    if(level >= 2) {
+      while(skip < exprs.size() && constant(exprs.get(skip)) instanceof Bool b) {
+        if(b.value != and) { return new Node.Const(loc, b); }
+        if(exprs.size() - skip <= 2) { break; }
+        skip += 1;
+      }
+    }
+    var remaining = exprs.subList(skip, exprs.size());
+    return fold(and ? new Node.And(loc, remaining) : new Node.Or(loc, remaining));
+  }
+}
@@ -0,0 +1,87 @@
+package caya;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import caya.Builtins.BuiltinValue;
+import caya.Builtins.Descriptor;
+import caya.Builtins.Index;
+import caya.Runtime.Value;
+import static caya.Builtins.*;
+
+// The `par` module: loops over vectors, indexes (calling `fn(key, value)`) and ranges of ints, whose iterations run in
+// parallel on the common fork-join pool. Every iteration is a call of `fn`, so it has a scope of its own; like tasks
+// (see `Task`), iterations can read the variables they capture but not assign them. The first error (or exception
+// thrown by `throw`) of any iteration is raised again by the loop.
+public final class Parallel {
+  private Parallel() {}
+
+  public static void each(Value items, Value fn) {
+    run(() -> { arguments(items).forEach(args -> Task.call_in_task(fn, args)); return NONE; });
+  }
+
+  // combines `fn(...)` of all items with `combine`, which must be associative, and then combines `initial` with the result
+  public static Value reduce(Value items, Value fn, Value combine, Value initial) {
+    return run(() -> {
+      var reduced = arguments(items).map(args -> Task.call_in_task(fn, args)).reduce((a, b) -> Task.call_in_task(combine, new Value[] {a, b}));
+      return reduced.isPresent() ? Task.call_in_task(combine, new Value[] {initial, reduced.get()}) : initial;
+    });
+  }
+
+  // Runs `loop` on the pool and waits for it. Iterations are kept from assigning the caller's variables by running each
+  // of them as a task of its own (see `Task.call_in_task`), not by the thread they run on, which may be the caller's.
+  static <T> T run(java.util.concurrent.Callable<T> loop) {
+    try {
+      return ForkJoinPool.commonPool().submit(loop).get();
+    } catch(ExecutionException e) {
+      throw Task.rethrow(e.getCause());
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Interpreter.InterpreterError("interrupted while waiting for a parallel loop");
+    }
+  }
+
+  private static Stream<Value[]> arguments(Value items) {
+    return switch(items) {
+      case Vector<?> v -> StreamSupport.stream(v.spliterator(), true).map(item -> new Value[] {item});
+      case Index i -> StreamSupport.stream(i.data.spliterator((key, value) -> new Value[] {key, value}), true);
+      case Range r -> LongStream.range(r.from, r.to).parallel().mapToObj(n -> new Value[] {Int.of(n)});
+      default -> throw new Interpreter.InterpreterError("expected a vector, an index or a range, not " + items.type());
+    };
+  }
+
+  // the ints `from`, `from + 1`, ..., `to - 1`
+  public static final class Range extends BuiltinValue {
+    public final long from, to;
+    public Range(long from, long to) { this.from = from; this.to = Math.max(from, to); }
+
+    public static Range create(Value... bounds) {
+      return switch(bounds.length) {
+        case 1 -> new Range(0, Interpreter.to_int64(bounds[0]));
+        case 2 -> new Range(Interpreter.to_int64(bounds[0]), Interpreter.to_int64(bounds[1]));
+        default -> throw new Interpreter.InterpreterError("range(...) expects one or two arguments");
+      };
+    }
+
+    public Int size() { return Int.of(BigInteger.valueOf(to).subtract(BigInteger.valueOf(from))); }
+    public Iterator iter() { return new Iterator(LongStream.range(from, to).mapToObj(n -> (Value) Int.of(n)).iterator()); }
+
+    @Override public String toString() { return "range(" + from + ", " + to + ")"; }
+    @Override public int hashCode() { return Runtime.combine_hash(Range.class.hashCode(), Runtime.combine_hash(Long.hashCode(from), Long.hashCode(to))); }
+    @Override public boolean equals(Object other) { return other instanceof Range r && r.from == from && r.to == to; }
+
+    @Override public final HashMap<String, Descriptor> attrs() { return ATTRS; }
+    public static final HashMap<String, Descriptor> ATTRS = BuiltinValue.resolve_attrs(Range.class,
+      new String[] {"size"},
+      new String[] {"iter"}
+    );
+
+    public static final Type TYPE = new Type("par.range", null, new HashMap<>(), ATTRS);
+    @Override public Type type() { return TYPE; }
+  }
+}
@@ -84,7 +84,7 @@ public class ParserHelper {
   Node error(Location loc, String error) { Err e = new Err(loc, error); errors.add(e); return e; }
 
   Ident ident(Location loc, String name) { return new Ident(loc, name); }
-  Node atom(Location loc, String n) { return new Atom(loc, n); }
+  Node atom(Location loc, String n) { return new Atom(loc, Builtins.Atom.of(n)); }
   Node integer(Location loc, String value) { return new Int(loc, parse_integer(value)); }
   Node bool(Location loc, boolean value) { return new Bool(loc, value); }
   Node str(Location loc, String value) { return new Str(loc, value); }
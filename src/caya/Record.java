@@ -1,48 +1,134 @@
 package caya;
 
-import scala.collection.immutable.HashMap;
-import scala.collection.Map;
-import scala.collection.JavaConverters;
-
-import java.util.NoSuchElementException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import caya.Runtime.Value;
 
+// Records with the same fields, added in the same order, share a `Shape` that maps field names to slots of `values`.
+// Shapes form a tree rooted at `Shape.EMPTY`; adding a field follows (or creates) a transition to a child shape, so
+// records created by the same literal end up with the same shape, and `Obj.InlineCache` can cache slots by shape.
 public final class Record extends Value {
-  public final HashMap<String, Value> fields;
-  public Record() {
-    this.fields = new HashMap<>();
+  public final Shape shape;
+  final Value[] values;
+
+  private Record(Shape shape, Value[] values) { this.shape = shape; this.values = values; }
+
+  public static final Record empty = new Record(Shape.EMPTY, new Value[0]);
+
+  public static final class Shape {
+    public static final Shape EMPTY = new Shape(new String[0], new HashMap<>());
+
+    final String[] names;                               // in slot order
+    private final HashMap<String, Integer> slots;       // not modified after construction
+    private final ConcurrentHashMap<String, Shape> transitions = new ConcurrentHashMap<>();
+
+    private Shape(String[] names, HashMap<String, Integer> slots) { this.names = names; this.slots = slots; }
+
+    public int size() { return names.length; }
+
+    // the slot of `name`, or -1 if this shape has no such field
+    public int slot(String name) {
+      var slot = slots.get(name);
+      return slot == null ? -1 : slot;
+    }
+
+    // the shape with an additional field `name` in the last slot
+    public Shape with(String name) {
+      return transitions.computeIfAbsent(name, _ -> {
+        var names = Arrays.copyOf(this.names, this.names.length + 1);
+        names[this.names.length] = name;
+        var slots = new HashMap<>(this.slots);
+        slots.put(name, this.names.length);
+        return new Shape(names, slots);
+      });
+    }
   }
-  public Record(HashMap<String, Value> fields) { this.fields = fields; }
-  public Record(Map<String, Value> fields) { this.fields = HashMap.from(fields); }
 
-  @Override public Value get_attr(String attr) {
-    try {
-      return fields.apply(attr);
-    } catch (NoSuchElementException e) {
-      throw new Interpreter.AttrError(getClass(), attr);
+  // Collects the fields of a record literal. A field that is already present (e.g. from a spread) is overwritten in
+  // its slot, while explicit fields can only be given once.
+  public static final class Builder {
+    private Shape shape = Shape.EMPTY;
+    private Value[] values = new Value[4];
+    private HashSet<String> explicit = null;
+
+    public Builder field(String name, Value value) {
+      if(explicit == null) { explicit = new HashSet<>(); }
+      if(!explicit.add(name)) { throw new Interpreter.InterpreterError("duplicated record field `" + name + "`"); }
+      return put(name, value);
+    }
+
+    public Builder spread(Value value) {
+      if(!(value instanceof Record r)) { throw new Interpreter.InterpreterError("expected a record, not `" + value.getClass() + "`"); }
+      if(shape == Shape.EMPTY) {
+        // the common `{...r, x = 1}` starts from the shape of `r`
+        shape = r.shape;
+        values = Arrays.copyOf(r.values, Math.max(r.values.length, 4));
+        return this;
+      }
+      for(var i = 0; i < r.values.length; i++) { put(r.shape.names[i], r.values[i]); }
+      return this;
     }
+
+    private Builder put(String name, Value value) {
+      var slot = shape.slot(name);
+      if(slot < 0) {
+        slot = shape.size();
+        shape = shape.with(name);
+        if(slot == values.length) { values = Arrays.copyOf(values, 2 * slot); }
+      }
+      values[slot] = value;
+      return this;
+    }
+
+    public Record build() { return shape == Shape.EMPTY ? empty : new Record(shape, Arrays.copyOf(values, shape.size())); }
+  }
+
+  // the value in `slot`, for callers that looked it up in `shape`
+  public Value get(int slot) { return values[slot]; }
+
+  @Override public Value get_attr(String attr) {
+    var slot = shape.slot(attr);
+    if(slot < 0) { throw new Interpreter.AttrError(getClass(), attr); }
+    return values[slot];
   }
 
   @Override public String toString() {
     var s = new StringBuilder("{");
-    var first = true;
-    for(var entry : JavaConverters.asJava(fields).entrySet()) {
-      if(first) {
-        first = false;
-      } else {
-        s.append(", ");
-      }
-      s.append(entry.getKey());
+    for(var i = 0; i < values.length; i++) {
+      if(i > 0) { s.append(", "); }
+      s.append(shape.names[i]);
       s.append('=');
-      s.append(entry.getValue());
+      s.append(values[i]);
     }
     s.append('}');
     return s.toString();
   }
 
-  @Override public boolean equals(Object other) { return other instanceof Record r && r.fields.equals(this.fields); }
-  @Override public int hashCode() { return Runtime.combine_hash(Record.class.hashCode(), Runtime.hash_mapping(JavaConverters.asJava(fields).entrySet())); }
+  private int hash = 0;     // computed lazily, 0 if not yet known
+
+  // records are equal if they have the same fields, regardless of their order
+  @Override public boolean equals(Object other) {
+    if(!(other instanceof Record r) || r.values.length != values.length || (hash != 0 && r.hash != 0 && hash != r.hash)) { return false; }
+    if(r.shape == shape) { return Arrays.equals(r.values, values); }
+    for(var i = 0; i < values.length; i++) {
+      var slot = r.shape.slot(shape.names[i]);
+      if(slot < 0 || !r.values[slot].equals(values[i])) { return false; }
+    }
+    return true;
+  }
+
+  @Override public int hashCode() {
+    var h = hash;
+    if(h == 0) {
+      var fields = 0;
+      for(var i = 0; i < values.length; i++) { fields += Runtime.combine_hash(shape.names[i].hashCode(), values[i].hashCode()); }
+      hash = h = Runtime.combine_hash(Record.class.hashCode(), Runtime.combine_hash(fields, values.length));
+    }
+    return h;
+  }
 
   public static final Builtins.Type TYPE = new Builtins.Type("record", null, new java.util.HashMap<>(), new java.util.HashMap<>());
   @Override public Builtins.Type type() { return TYPE; }
@@ -0,0 +1,254 @@
+package caya;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// Assigns each local binding a (depth, index) address, mirroring the scopes that `Interpreter.Scope` creates at runtime:
+// every `Seq` gets a frame, and so does every function call (parameters), `for` iteration (item) and `catch` (exception).
+// All names assigned or declared in a `Seq` are hoisted to its frame; a slot holding `null` is unbound, so reads and
+// assignments fall back to the binding it shadows. Names not bound in any frame are looked up dynamically (globals, REPL).
+public final class Resolver {
+  private static final class Frame {
+    final Frame parent;
+    final HashMap<String, Integer> slots = new HashMap<>();
+    Frame(Frame parent) { this.parent = parent; }
+
+    void add(String name) { slots.putIfAbsent(name, slots.size()); }
+  }
+
+  private Frame frame;
+  private boolean tail_returns = false;     // whether `return` is in tail position, i.e. in a function but not in a `try`
+  private Resolver(Frame frame) { this.frame = frame; }
+
+  public static Node resolve(Node n) { return new Resolver(null).expr(n); }
+
+  private void push(Frame f) { frame = f; }
+  private void pop() { frame = frame.parent; }
+
+  private Node binding(Node.Ident ident) {
+    var candidates = new ArrayList<Node.Local>();
+    var depth = 0;
+    for(var f = frame; f != null; f = f.parent, depth += 1) {
+      var index = f.slots.get(ident.name());
+      if(index != null) {
+        candidates.add(new Node.Local(ident.loc(), ident.name(), depth, index, null));
+      }
+    }
+    Node result = ident;
+    for(var i = candidates.size() - 1; i >= 0; i--) {
+      var c = candidates.get(i);
+      result = new Node.Local(c.loc(), c.name(), c.depth(), c.index(), result);
+    }
+    return result;
+  }
+
+  private Node target(Node pattern) {
+    return pattern instanceof Node.Ident ident ? binding(ident) : pattern;
+  }
+
+  private List<Node> exprs(List<Node> exprs) {
+    var result = new ArrayList<Node>(exprs.size());
+    for(var expr : exprs) { result.add(expr(expr)); }
+    return result;
+  }
+
+  private static void hoist(Frame f, Node statement) {
+    switch(statement) {
+      case Node.Assign(_, Node.Ident(_, var name), _) -> f.add(name);
+      case Node.Assign(_, Node.Call(_, Node.Ident(_, var name), _), _) -> f.add(name);
+      case Node.VarAssign(_, Node.Ident(_, var name), _) -> f.add(name);
+      case Node.Func(_, Node.Call(_, Node.Ident(_, var name), _), _) -> f.add(name);
+      case Node.Class(_, Node.Ident(_, var name), _) -> f.add(name);
+      default -> {}
+    }
+  }
+
+  private Node block(Node n) {
+    return switch(n) {
+      case Node.Seq(var loc, var exprs) -> {
+        var f = new Frame(frame);
+        for(var expr : exprs) { hoist(f, expr); }
+        push(f);
+        var resolved = exprs(exprs);
+        pop();
+        yield new Node.Block(loc, resolved, f.slots.size());
+      }
+      default -> expr(n);
+    };
+  }
+
+  private Node scoped(String name, Node body) {
+    var f = new Frame(frame);
+    f.add(name);
+    push(f);
+    var resolved = block(body);
+    pop();
+    return resolved;
+  }
+
+  private record Function(List<Node> params, Node body) {}
+
+  private Function function(List<Node> params, Node body) {
+    var f = new Frame(frame);
+    for(var param : params) {
+      switch(param) {
+        case Node.Arg(_, Node.Ident(_, var name), _) -> f.add(name);
+        case Node.Ident(_, var name) -> f.add(name);
+        default -> {}
+      }
+    }
+    push(f);
+    var resolved = new ArrayList<Node>(params.size());
+    for(var param : params) {
+      resolved.add(switch(param) {
+        case Node.Arg(var loc, Node.Ident name, var default_value) -> new Node.Arg(loc, name, expr(default_value));
+        default -> param;
+      });
+    }
+    var outer = tail_returns;
+    tail_returns = true;
+    var resolved_body = tail(block(body));
+    tail_returns = outer;
+    pop();
+    return new Function(resolved, new Node.Body(body.loc(), resolved_body, new caya.jit.JIT.Entry()));
+  }
+
+  // marks the calls whose value is the result of the function, see `Interpreter.TailCall`
+  private static Node tail(Node n) {
+    return switch(n) {
+      case Node.Invoke(var loc, var fn, var args, var shape, _) -> new Node.Invoke(loc, fn, args, shape, true);
+      case Node.Block(var loc, var exprs, var size) when !exprs.isEmpty() -> {
+        var marked = new ArrayList<>(exprs);
+        marked.set(marked.size() - 1, tail(marked.get(marked.size() - 1)));
+        yield new Node.Block(loc, marked, size);
+      }
+      case Node.If(var loc, var cond, var then) -> new Node.If(loc, cond, tail(then));
+      case Node.IfElse(var loc, var cond, var then, var else_) -> new Node.IfElse(loc, cond, tail(then), tail(else_));
+      case null, default -> n;
+    };
+  }
+
+  private Node declaration(Node declaration) {
+    return switch(declaration) {
+      case Node.VarAssign(var loc, Node.Ident field, var value) -> {
+        // field initializers run in the constructor, i.e. inside a call frame and its body frame
+        push(new Frame(new Frame(frame)));
+        var resolved = expr(value);
+        pop(); pop();
+        yield new Node.VarAssign(loc, field, resolved);
+      }
+      case Node.Func(var loc, Node.Attr getter, var body) -> new Node.Func(loc, getter, function(List.of(), body).body());
+      case Node.Func(var loc, Node.Arg(var arg_loc, Node.Attr setter, Node.Ident param), var body) ->
+        new Node.Func(loc, new Node.Arg(arg_loc, setter, param), function(List.of(param), body).body());
+      case Node.Func(var loc, Node.Call(var call_loc, Node.Ident name, var params), var body) -> {
+        var fn = function(params, body);
+        yield new Node.Func(loc, new Node.Call(call_loc, name, fn.params()), fn.body());
+      }
+      default -> declaration;
+    };
+  }
+
+  private Node arg(Node arg) {
+    return switch(arg) {
+      case Node.Arg(var loc, Node.Ident name, var value) -> new Node.Arg(loc, name, expr(value));
+      default -> expr(arg);
+    };
+  }
+
+  private Node entry(Node item) {
+    return switch(item) {
+      case Node.Arg(var loc, var key, var value) -> new Node.Arg(loc, expr(key), expr(value));
+      default -> expr(item);
+    };
+  }
+
+  private Node expr(Node n) {
+    if(n == null) { return null; }
+    return switch(n) {
+      case Node.Ident ident -> binding(ident);
+      case Node.Attr(var loc, var expr, var attr) -> new Node.Attr(loc, expr(expr), attr);
+      case Node.Record(var loc, var fields) -> new Node.Record(loc, fields.stream().map(this::arg).toList());
+      case Node.Dict(var loc, var fields) -> new Node.Dict(loc, fields.stream().map(this::entry).toList());
+      case Node.Vector(var loc, var items) -> new Node.Vector(loc, items.stream().map(this::entry).toList());
+      case Node.Spread(var loc, var expr) -> new Node.Spread(loc, expr(expr));
+      case Node.Tuple(var loc, var items) -> new Node.Tuple(loc, exprs(items));
+      case Node.List(var loc, var items) -> new Node.List(loc, exprs(items));
+      case Node.Item(var loc, var expr, var items) -> new Node.Item(loc, expr(expr), exprs(items));
+      case Node.Call(var loc, var fn, var args) when args.stream().allMatch(arg -> !(arg instanceof Node.Arg) || arg instanceof Node.Arg(_, Node.Ident _, _)) -> {
+        var resolved = expr(fn);
+        String[] names = null;
+        var values = new ArrayList<Node>(args.size());
+        for(var i = 0; i < args.size(); i++) {
+          if(args.get(i) instanceof Node.Arg(_, Node.Ident(_, var name), var value)) {
+            if(names == null) { names = new String[args.size()]; }
+            names[i] = name;
+            values.add(expr(value));
+          } else {
+            values.add(expr(args.get(i)));
+          }
+        }
+        yield new Node.Invoke(loc, resolved, values, names == null ? null : new Runtime.CallShape(names), false);
+      }
+      case Node.Call(var loc, var fn, var args) -> new Node.Call(loc, expr(fn), args.stream().map(this::arg).toList());
+      case Node.Seq seq -> block(seq);
+      case Node.Assign(var loc, Node.Call(var call_loc, Node.Ident name, var params), var body) -> {
+        var target = binding(name);
+        var fn = function(params, body);
+        yield new Node.Assign(loc, new Node.Call(call_loc, target, fn.params()), fn.body());
+      }
+      case Node.Assign(var loc, var pattern, var value) -> {
+        var resolved = expr(value);
+        yield new Node.Assign(loc, pattern instanceof Node.Ident ? target(pattern) : expr(pattern), resolved);
+      }
+      case Node.VarAssign(var loc, var pattern, var value) -> {
+        var resolved = expr(value);
+        yield new Node.VarAssign(loc, target(pattern), resolved);
+      }
+      case Node.Unary(var loc, var op, var expr) -> new Node.Unary(loc, op, expr(expr));
+      case Node.Binary(var loc, var op, var left, var right) -> new Node.Binary(loc, op, expr(left), expr(right));
+      case Node.If(var loc, var cond, var then) -> new Node.If(loc, expr(cond), expr(then));
+      case Node.IfElse(var loc, var cond, var then, var else_) -> new Node.IfElse(loc, expr(cond), expr(then), expr(else_));
+      case Node.And(var loc, var exprs) -> new Node.And(loc, exprs(exprs));
+      case Node.Or(var loc, var exprs) -> new Node.Or(loc, exprs(exprs));
+      case Node.Not(var loc, var expr) -> new Node.Not(loc, expr(expr));
+      case Node.Cmp(var loc, var parts) -> {
+        var resolved = new ArrayList<Node>(parts.size());
+        for(var i = 0; i < parts.size(); i++) {
+          resolved.add(i % 2 == 0 ? expr(parts.get(i)) : parts.get(i));    // odd parts are operators
+        }
+        yield new Node.Cmp(loc, resolved);
+      }
+      case Node.Arrow(var loc, var params, var body) -> {
+        var fn = function(params, body);
+        yield new Node.Arrow(loc, fn.params(), fn.body());
+      }
+      case Node.Func(var loc, Node.Call(var call_loc, Node.Ident name, var params), var body) -> {
+        var target = binding(name);
+        var fn = function(params, body);
+        yield new Node.Func(loc, new Node.Call(call_loc, target, fn.params()), fn.body());
+      }
+      case Node.Print(var loc, var value) -> new Node.Print(loc, expr(value));
+      case Node.Return(var loc, var value) -> new Node.Return(loc, tail_returns ? tail(expr(value)) : expr(value));
+      case Node.Throw(var loc, var exception) -> new Node.Throw(loc, expr(exception));
+      case Node.While(var loc, var cond, var body) -> new Node.While(loc, expr(cond), block(body));
+      case Node.For(var loc, Node.Ident item, var items, var body) -> {
+        var resolved = expr(items);
+        yield new Node.For(loc, item, resolved, scoped(item.name(), body));
+      }
+      case Node.Try(var loc, var try_block, Node.Ident exception, var catch_block) -> {
+        // calls returned from `try` must run before leaving it, so that it catches their exceptions
+        var outer = tail_returns;
+        tail_returns = false;
+        var resolved = block(try_block);
+        tail_returns = outer;
+        yield new Node.Try(loc, resolved, exception, scoped(exception.name(), catch_block));
+      }
+      case Node.Class(var loc, Node.Ident name, Node.Seq(var body_loc, var declarations)) -> {
+        var target = binding(name);
+        yield new Node.Class(loc, target, new Node.Seq(body_loc, declarations.stream().map(this::declaration).toList()));
+      }
+      default -> n;
+    };
+  }
+}
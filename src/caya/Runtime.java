@@ -2,7 +2,6 @@ package caya;
 
 import java.util.HashMap;
 import java.util.Map;
-import com.dynatrace.hash4j.hashing.Hashing;
 
 
 public final class Runtime {
@@ -26,47 +25,158 @@ public final class Runtime {
 
   public record Param(String name, Node default_value) {}
 
+  // The layout of the arguments of a call site with named arguments, analyzed once: `names[i]` is the name of the `i`-th
+  // argument, or `null` if it is positional. Calls with only positional arguments have no shape and pass their `Value[]`
+  // straight through.
+  public static final class CallShape {
+    public final String[] names;
+    public final int positional;
+    public final int duplicate;      // index of the first repeated name, -1 if none
+    private Binding binding = null;  // of the last callee
+
+    // `source[j]` is the index of the argument bound to the `j`-th parameter, -1 if none
+    private record Binding(Object params, int[] source) {}
+
+    public CallShape(String[] names) {
+      this.names = names;
+      var positional = 0;
+      var duplicate = -1;
+      var seen = new java.util.HashSet<String>();
+      for(var i = 0; i < names.length; i++) {
+        if(names[i] == null) { positional += 1; }
+        else if(!seen.add(names[i]) && duplicate < 0) { duplicate = i; }
+      }
+      this.positional = positional;
+      this.duplicate = duplicate;
+    }
+
+    public Interpreter.InterpreterError duplicate_error() {
+      return new Interpreter.InterpreterError("duplicated named argument `" + names[duplicate] + "`");
+    }
+
+    public int[] bind(Param[] params) {
+      var binding = this.binding;
+      if(binding != null && binding.params == params) { return binding.source; }
+      var param_names = new String[params.length];
+      for(var j = 0; j < params.length; j++) { param_names[j] = params[j].name(); }
+      return bind(params, param_names);
+    }
+
+    public int[] bind(String[] params) {
+      var binding = this.binding;
+      if(binding != null && binding.params == params) { return binding.source; }
+      return bind(params, params);
+    }
+
+    private int[] bind(Object key, String[] params) {
+      var source = new int[params.length];
+      java.util.Arrays.fill(source, -1);
+      next_arg:
+      for(var i = 0; i < names.length; i++) {
+        if(names[i] == null) { continue; }
+        for(var j = 0; j < params.length; j++) {
+          if(params[j].equals(names[i])) {
+            source[j] = i;
+            continue next_arg;
+          }
+        }
+        throw new Interpreter.InterpreterError("invalid named argument `" + names[i] + "`");
+      }
+      var i = 0;
+      for(var j = 0; j < params.length; j++) {
+        if(source[j] >= 0) { continue; }
+        while(i < names.length && names[i] != null) { i += 1; }
+        if(i < names.length) { source[j] = i++; }
+      }
+      binding = new Binding(key, source);
+      return source;
+    }
+
+    // the arguments in the form expected by `Callable.call`
+    public Value[] positional(Value[] args) {
+      var result = new Value[positional];
+      for(int i = 0, j = 0; i < args.length; i++) {
+        if(names[i] == null) { result[j++] = args[i]; }
+      }
+      return result;
+    }
+
+    public HashMap<String, Value> named(Value[] args) {
+      var result = new HashMap<String, Value>();
+      for(var i = 0; i < args.length; i++) {
+        if(names[i] != null) { result.put(names[i], args[i]); }
+      }
+      return result;
+    }
+
+    // the shape of a call with a map of named arguments; they follow the positional ones
+    public static CallShape of(int positional, Map<String, Value> named_args) {
+      var names = new String[positional + named_args.size()];
+      var i = positional;
+      for(var name : named_args.keySet()) { names[i++] = name; }
+      return new CallShape(names);
+    }
+
+    @Override public String toString() { return java.util.Arrays.toString(names); }
+  }
+
   public static final class Function extends Value {
     public final Param[] params;
     public final Interpreter.Scope closure;
     public final Node body;
-    public Function(Param[] params, Interpreter.Scope closure, Node body) { this.params = params; this.closure = closure; this.body = body; }
-    @Override public Value call(Value[] args, Map<String, Value> named_args) { return Interpreter.eval_function(params, closure, body, args, named_args, null); }
+    public final caya.jit.JIT.Entry jit;
+    public Function(Param[] params, Interpreter.Scope closure, Node body) { this.params = params; this.closure = closure; this.body = body; this.jit = caya.jit.JIT.entry(body); }
+    @Override public Value call(Value[] args, Map<String, Value> named_args) { return Interpreter.eval_function(params, closure, body, jit, args, named_args, null); }
+    public Value invoke(Value[] args, CallShape shape) { return Interpreter.eval_function(params, closure, body, jit, args, shape, null); }
     public static final Builtins.Type TYPE = new Builtins.Type("fn", null, new HashMap<>(), new HashMap<>());
     @Override public Builtins.Type type() { return TYPE; }
   }
 
+  // 32-bit murmur3 (seed 0) of a sequence of ints, computed in place instead of through a hash stream
+  private static int mix(int h, int k) {
+    k *= 0xcc9e2d51;
+    k = Integer.rotateLeft(k, 15);
+    k *= 0x1b873593;
+    h ^= k;
+    h = Integer.rotateLeft(h, 13);
+    return h * 5 + 0xe6546b64;
+  }
+
+  private static int finish(int h, int ints) {
+    h ^= ints * 4;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    return h ^ (h >>> 16);
+  }
+
   public static int combine_hash(int a, int b) {
-    return Hashing.murmur3_32().hashStream().putInt(a).putInt(b).getAsInt();
+    return finish(mix(mix(0, a), b), 2);
   }
 
   public static int combine_hash(Object a, Object b) {
-    return Hashing.murmur3_32().hashStream().putInt(a.hashCode()).putInt(b.hashCode()).getAsInt();
+    return combine_hash(a.hashCode(), b.hashCode());
   }
 
   public static int combine_hash(Object a, Object b, Object c) {
-    return Hashing.murmur3_32().hashStream().putInt(a.hashCode()).putInt(b.hashCode()).putInt(c.hashCode()).getAsInt();
+    return finish(mix(mix(mix(0, a.hashCode()), b.hashCode()), c.hashCode()), 3);
   }
 
   public static int hash_sequence(Iterable<?> items) {
-    var h = Hashing.murmur3_32().hashStream();
+    var h = 0;
     var count = 0;
     for(var item : items) {
       count += 1;
-      h.putInt(item.hashCode());
+      h = mix(h, item.hashCode());
     }
-    h.putInt(count);
-    return h.getAsInt();
+    return finish(mix(h, count), count + 1);
   }
 
-  public static <K, V> int hash_mapping(Iterable<java.util.Map.Entry<K, V>> entries) {
-    int hash = 0;
-    var count = 0;
-    for(var entry : entries) {
-      hash += combine_hash(entry.getKey().hashCode(), entry.getValue().hashCode());
-      count += 1;
-    }
-    return combine_hash(hash, count);
+  public static int hash_mapping(Champ<?, ?> map) {
+    var hash = new int[1];
+    map.for_each((key, value) -> hash[0] += combine_hash(key.hashCode(), value.hashCode()));
+    return combine_hash(hash[0], map.size());
   }
 
   public static java.util.Iterator<Value> iter(Value value) {
@@ -0,0 +1,126 @@
+package caya;
+
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.StructuredTaskScope;
+
+import caya.Builtins.BuiltinValue;
+import caya.Builtins.Descriptor;
+import caya.Runtime.Value;
+import static caya.Builtins.*;
+
+// A function running on a virtual thread of its own, see the `task` module. Tasks can share immutable values (vectors,
+// indexes, records, ...) and read the variables they capture, but they can only assign variables of scopes they
+// created themselves (see `Interpreter.Scope.assign`). Mutable values (lists, dicts, objects) are not synchronized.
+public final class Task extends BuiltinValue {
+  private static final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  // a token of the task (or parallel iteration) running on the current thread, `null` outside of tasks; scopes
+  // remember the token of their creator, as a worker thread can run several tasks, one nested in another
+  private static final ThreadLocal<Object> current = new ThreadLocal<>();
+
+  private final Future<Value> future;
+  private Task(Future<Value> future) { this.future = future; }
+
+  // the token of the running task, `null` if the current thread isn't running one
+  public static Object current() { return current.get(); }
+
+  // runs `body` as a new task on the current thread
+  private static Value run(java.util.function.Supplier<Value> body) {
+    var previous = current.get();
+    current.set(new Object());
+    try {
+      return body.get();
+    } finally {
+      current.set(previous);
+    }
+  }
+
+  // calls `fn` like a task would, on the current thread (see `Parallel`)
+  static Value call_in_task(Value fn, Value[] args) { return run(() -> fn.call(args, null)); }
+
+  public static Task spawn(Value fn) { return start(() -> fn.call(new Value[0], null)); }
+
+  // a task running Java code, e.g. the loop of an `Channel.Actor`
+  static Task start(java.util.function.Supplier<Value> body) { return new Task(executor.submit(() -> run(body))); }
+
+  // the result of the task, after waiting for it to finish; if it failed, its error is raised again
+  public Value join() {
+    try {
+      return future.get();
+    } catch(ExecutionException e) {
+      throw rethrow(e.getCause());
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Interpreter.InterpreterError("interrupted while joining a task");
+    }
+  }
+
+  public Bool done() { return future.isDone() ? TRUE : FALSE; }
+
+  static RuntimeException rethrow(Throwable e) {
+    if(e instanceof RuntimeException r) { return r; }
+    if(e instanceof Error error) { throw error; }
+    return new RuntimeException(e);
+  }
+
+  // Calls `body` with a `Scope`, whose tasks all finish before `scope` returns. If any of them fails, the others are
+  // cancelled and the first error is raised.
+  public static Value scope(Value body) {
+    try(var scope = new StructuredTaskScope.ShutdownOnFailure()) {
+      Value result;
+      try {
+        result = body.call(new Value[] {new Scope(scope)}, null);
+      } catch(RuntimeException | Error e) {
+        scope.shutdown();
+        throw e;
+      }
+      scope.join().throwIfFailed(Task::rethrow);
+      return result;
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new Interpreter.InterpreterError("interrupted while waiting for tasks");
+    }
+  }
+
+  public static final class Scope extends BuiltinValue {
+    private final StructuredTaskScope<Object> scope;
+    private Scope(StructuredTaskScope<Object> scope) { this.scope = scope; }
+
+    public Task spawn(Value fn) {
+      var result = new CompletableFuture<Value>();
+      scope.fork(() -> {
+        try {
+          var value = run(() -> fn.call(new Value[0], null));
+          result.complete(value);
+          return value;
+        } catch(RuntimeException | Error e) {
+          result.completeExceptionally(e);
+          throw e;
+        }
+      });
+      return new Task(result);
+    }
+
+    @Override public final HashMap<String, Descriptor> attrs() { return ATTRS; }
+    public static final HashMap<String, Descriptor> ATTRS = BuiltinValue.resolve_attrs(Scope.class,
+      new String[] {},
+      new String[] {"spawn"}
+    );
+
+    public static final Type TYPE = new Type("task.scope", null, new HashMap<>(), ATTRS);
+    @Override public Type type() { return TYPE; }
+  }
+
+  @Override public final HashMap<String, Descriptor> attrs() { return ATTRS; }
+  public static final HashMap<String, Descriptor> ATTRS = BuiltinValue.resolve_attrs(Task.class,
+    new String[] {"done"},
+    new String[] {"join"}
+  );
+
+  public static final Type TYPE = new Type("task", null, new HashMap<>(), ATTRS);
+  @Override public Type type() { return TYPE; }
+}
@@ -1,10 +1,14 @@
 package caya;
 
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import caya.Builtins.BuiltinValue;
 import caya.Builtins.Descriptor;
@@ -14,19 +18,48 @@ import caya.Runtime.Value;
 public final class Vector<E extends Value> extends BuiltinValue implements Iterable<E> {
   // copied from https://github.com/tomprimozic/vector/blob/master/src/experiment/vector/Vector.java
   private record Pair(Object[] left, Object[] right) {}
+  // a node of a relaxed tree (see `Relaxed`); `sizes[i]` is the number of elements in `children[0..i]`
+  private record Sized(Object[] children, int[] sizes) {}
 
   private static final Object[] EMPTY_ARRAY = new Object[]{};
   private static final int SHIFT = 5;
   private static final int SIZE = 1 << SHIFT;      // size of a trie level
   private static final int MASK = SIZE - 1;
 
+  // A vector is either balanced (two halves indexed by radix) or relaxed (built by `concat` or `slice`, see `Relaxed`).
   private final Left<E> left;
   private final Right<E> right;
+  private final Relaxed relaxed;
 
   private Vector(Left<E> left, Right<E> right) {
     assert Math.abs(left.shift - right.shift) <= SHIFT;   // THE invariant
     this.left = left;
     this.right = right;
+    this.relaxed = null;
+  }
+
+  private Vector(Relaxed relaxed) {
+    this.left = null;
+    this.right = null;
+    this.relaxed = relaxed;
+  }
+
+  // short vectors are kept balanced, as they are cheap to copy and faster to change at the ends
+  private static <E extends Value> Vector<E> of(Relaxed relaxed) {
+    if(relaxed.size > SIZE) { return new Vector<>(relaxed); }
+    return new Builder<E>().add_range(new Vector<E>(relaxed), 0, relaxed.size).build();
+  }
+
+  // the relaxed tree holding the elements of this vector; balanced vectors share all but the left edge of their tries
+  private Relaxed relaxed() {
+    if(relaxed != null) { return relaxed; }
+    var result = Relaxed.leaf(left.extra);
+    if(left.data != null) {
+      var shift = left.shift - SHIFT;
+      result = Relaxed.concat(result, new Relaxed(Relaxed.left_edge(left.data, shift, left.data_size), shift, left.data_size));
+    }
+    if(right.data != null) { result = Relaxed.concat(result, new Relaxed(right.data, right.shift - SHIFT, right.data_size)); }
+    return Relaxed.concat(result, Relaxed.leaf(right.extra));
   }
 
   public static final Vector<? extends Value> empty = new Vector<Value>(Left.empty, Right.empty);
@@ -36,7 +69,7 @@ public final class Vector<E extends Value> extends BuiltinValue implements Itera
   public final HashMap<String, Descriptor> attrs() { return ATTRS; }
   public static final HashMap<String, Descriptor> ATTRS = BuiltinValue.resolve_attrs(Vector.class,
     new String[] {"size", "first", "last"},
-    new String[] {"push", "append", "update", "pop", "shift", "iter"}
+    new String[] {"push", "append", "update", "pop", "shift", "iter", "edit", "concat", "slice", "take", "drop", "map", "filter", "reduce", "sum"}
   );
 
   public static Vector<? extends Value> create(Value[] args, Map<String, Value> named_args) {
@@ -62,20 +95,92 @@ public final class Vector<E extends Value> extends BuiltinValue implements Itera
     }
     return shift;
   }
-  public int size_int32() { return left.extra.length + left.data_size + right.data_size + right.extra.length; }
-  public Int size() { return new Int(size_int32()); }
+  public int size_int32() { return relaxed != null ? relaxed.size : left.extra.length + left.data_size + right.data_size + right.extra.length; }
+  public Int size() { return Int.of(size_int32()); }
 
   @SuppressWarnings("unchecked")
   public E get(int i) {
     if(!(0 <= i && i < size_int32())) { throw new IndexOutOfBoundsException(i); }
+    if(relaxed != null) { return (E) relaxed.get(i); }
     var left_size = left.extra.length + left.data_size;
     return (E) (i < left_size ? left.get(i) : right.get(i - left_size));
   }
 
-  public Vector<E> update(Int i, E element) { return update_int32(i.value.intValueExact(), element); }
+  public Vector<E> update(Int i, E element) { return update_int32(i.int32(), element); }
+
+  // the array (a leaf or one of the `extra` arrays) that holds element `i`
+  Object[] array_at(int i) {
+    if(relaxed != null) { return relaxed.leaf(i); }
+    var left_size = left.extra.length + left.data_size;
+    if(i < left.extra.length) { return left.extra; }
+    if(i < left_size) { return left.get_array(i - left.extra.length); }
+    if(i < left_size + right.data_size) { return right.get_array(i - left_size); }
+    return right.extra;
+  }
+
+  // the index of the first element of `array_at(i)`; leaves of balanced vectors are always full, so they start at
+  // multiples of `SIZE`
+  private int array_start(int i) {
+    if(relaxed != null) { return relaxed.leaf_start(i); }
+    var left_size = left.extra.length + left.data_size;
+    if(i < left.extra.length) { return 0; }
+    if(i < left_size) { return left.extra.length + ((i - left.extra.length) & ~MASK); }
+    if(i < left_size + right.data_size) { return left_size + ((i - left_size) & ~MASK); }
+    return left_size + right.data_size;
+  }
+
+  // Elements `from` (inclusive) to `to` (exclusive), in O(log n). Trimming up to a leaf from the ends of a balanced
+  // vector pops elements, so that it stays balanced; anything else cuts the edges of the relaxed tree.
+  public Vector<E> slice_int32(int from, int to) {
+    var size = size_int32();
+    if(!(0 <= from && from <= to && to <= size)) { throw new Interpreter.InterpreterError("invalid slice " + from + ".." + to + " of a vector of size " + size); }
+    if(relaxed == null && from + (size - to) <= SIZE) {
+      var result = this;
+      for(var i = to; i < size; i++) { result = result.shift(); }
+      for(var i = 0; i < from; i++) { result = result.pop(); }
+      return result;
+    }
+    if(to - from <= SIZE) { return new Builder<E>().add_range(this, from, to).build(); }
+    return new Vector<>(relaxed().slice(from, to));
+  }
+
+  public Vector<E> slice(Int from, Int to) { return slice_int32(from.int32(), to.int32()); }
+
+  // the first `n` elements (or all of them)
+  public Vector<E> take(Int n) {
+    var size = size_int32();
+    return slice_int32(0, n.compareTo(Int.of(size)) > 0 ? size : Math.max(n.int32(), 0));
+  }
+
+  // all but the first `n` elements
+  public Vector<E> drop(Int n) {
+    var size = size_int32();
+    return slice_int32(n.compareTo(Int.of(size)) > 0 ? size : Math.max(n.int32(), 0), size);
+  }
+
+  // O(log n): a short vector is pushed onto a balanced one, anything else merges the edges of both relaxed trees.
+  @SuppressWarnings("unchecked")
+  public Vector<E> concat(Vector<? extends E> other) {
+    var size = size_int32();
+    var other_size = other.size_int32();
+    if(other_size == 0) { return this; }
+    if(size == 0) { return (Vector<E>) other; }
+    if(relaxed == null && other_size <= SIZE) {
+      var result = this;
+      for(var item : other) { result = result.append_one(item); }
+      return result;
+    }
+    if(other.relaxed == null && size <= SIZE) {
+      var result = (Vector<E>) other;
+      for(var i = size - 1; i >= 0; i--) { result = result.push_one(get(i)); }
+      return result;
+    }
+    return new Vector<>(Relaxed.concat(relaxed(), other.relaxed()));
+  }
 
   public Vector<E> update_int32(int i, E element) {
     if(!(0 <= i && i < size_int32())) { throw new IndexOutOfBoundsException(i); }
+    if(relaxed != null) { return new Vector<>(relaxed.update(i, element)); }
     var left_size = left.extra.length + left.data_size;
     if(i < left_size) {
       return new Vector<>(left.update(i, element), right);
@@ -90,12 +195,19 @@ public final class Vector<E extends Value> extends BuiltinValue implements Itera
     return result;
   }
 
-  public int hashCode() { return Runtime.hash_sequence(this); }
+  private int hash = 0;     // computed lazily, 0 if not yet known
+
+  public int hashCode() {
+    var h = hash;
+    if(h == 0) { hash = h = Runtime.hash_sequence(this); }
+    return h;
+  }
 
   @Override public boolean equals(Object other) {
-    if(other instanceof Vector v && size_int32() == v.size_int32()) {
+    if(other == this) { return true; }
+    if(other instanceof Vector v && size_int32() == v.size_int32() && (hash == 0 || v.hash == 0 || hash == v.hash)) {
       var this_it = iterator();
-      var other_it = iterator();
+      var other_it = v.iterator();
       while(this_it.hasNext()) {
         if(!this_it.next().equals(other_it.next())) { return false;}
       }
@@ -107,13 +219,15 @@ public final class Vector<E extends Value> extends BuiltinValue implements Itera
     private Object[] current;
     private Left<E> left;
     private Right<E> right;
+    private final Relaxed relaxed;
     private int n = 0;
     private int i = 0;
 
     VectorIterator(Vector<E> v) {
       left = v.left;
       right = v.right;
-      if(v.left.extra.length > 0) {
+      relaxed = v.relaxed;
+      if(relaxed == null && v.left.extra.length > 0) {
         current = v.left.extra;
       } else {
         advance();
@@ -122,6 +236,11 @@ public final class Vector<E extends Value> extends BuiltinValue implements Itera
 
     private void advance() {
       i = 0;
+      if(relaxed != null) {
+        current = n < relaxed.size ? relaxed.leaf(n) : EMPTY_ARRAY;
+        n += current.length;
+        return;
+      }
       if(left != null) {
         if(n < left.data_size) {
           current = left.get_array(n);
@@ -165,6 +284,97 @@ public final class Vector<E extends Value> extends BuiltinValue implements Itera
   @Override
   public Iterator<E> iterator() { return new VectorIterator<>(this); }
 
+  // splits along array (leaf) boundaries, so that each part iterates whole arrays
+  private static final class VectorSpliterator<E extends Value> implements Spliterator<E> {
+    private final Vector<E> v;
+    private int i;
+    private final int end;
+    private Object[] array = EMPTY_ARRAY;     // the array holding element `i`, if `i - array_start < array.length`
+    private int array_start = 0;
+
+    VectorSpliterator(Vector<E> v, int i, int end) { this.v = v; this.i = i; this.end = end; }
+
+    @SuppressWarnings("unchecked")
+    @Override public boolean tryAdvance(Consumer<? super E> action) {
+      if(i >= end) { return false; }
+      if(i < array_start || i - array_start >= array.length) {
+        array = v.array_at(i);
+        array_start = v.array_start(i);
+      }
+      action.accept((E) array[i - array_start]);
+      i += 1;
+      return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override public void forEachRemaining(Consumer<? super E> action) {
+      while(i < end) {
+        var a = v.array_at(i);
+        var start = v.array_start(i);
+        var stop = Math.min(end - start, a.length);
+        for(var j = i - start; j < stop; j++) { action.accept((E) a[j]); }
+        i = start + stop;
+      }
+    }
+
+    @Override public Spliterator<E> trySplit() {
+      if(end - i <= SIZE) { return null; }
+      var mid = v.array_start(i + (end - i) / 2);
+      if(mid <= i) { return null; }
+      var prefix = new VectorSpliterator<>(v, i, mid);
+      i = mid;
+      return prefix;
+    }
+
+    @Override public long estimateSize() { return end - i; }
+    @Override public int characteristics() { return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL; }
+  }
+
+  @Override
+  public Spliterator<E> spliterator() { return new VectorSpliterator<>(this, 0, size_int32()); }
+
+  // parallel if the vector is large enough to be worth splitting across the common `ForkJoinPool`
+  public Stream<E> stream() { return StreamSupport.stream(spliterator(), size_int32() >= parallel_threshold); }
+
+  public static int parallel_threshold = 1 << 13;
+
+  private interface Bulk<E, R> { R run(Stream<E> items, boolean parallel); }
+
+  // Runs a bulk operation calling Caya functions. On large vectors it runs like a loop of the `par` module (see
+  // `Parallel`), so the functions can't assign the variables they capture; small vectors call them as usual.
+  private <R> R bulk(Bulk<E, R> operation) {
+    if(size_int32() < parallel_threshold) { return operation.run(StreamSupport.stream(spliterator(), false), false); }
+    return Parallel.run(() -> operation.run(StreamSupport.stream(spliterator(), true), true));
+  }
+
+  private static Value call(Value fn, boolean parallel, Value... args) {
+    return parallel ? Task.call_in_task(fn, args) : fn.call(args, null);
+  }
+
+  public Vector<Value> map(Value fn) {
+    var result = new Builder<Value>();
+    var values = bulk((items, parallel) -> items.map(item -> call(fn, parallel, item)).toArray());
+    result.add_array(values, 0, values.length);
+    return result.build();
+  }
+
+  public Vector<Value> filter(Value fn) {
+    var result = new Builder<Value>();
+    var values = bulk((items, parallel) -> items.filter(item -> Interpreter.to_bool(call(fn, parallel, item))).toArray());
+    result.add_array(values, 0, values.length);
+    return result.build();
+  }
+
+  // `fn` must be associative, as the vector may be reduced in parallel parts which are then combined
+  public Value reduce(Value fn, Value initial) {
+    return bulk((items, parallel) -> {
+      var reduced = items.map(item -> (Value) item).reduce((a, b) -> call(fn, parallel, a, b));
+      return reduced.isPresent() ? call(fn, parallel, initial, reduced.get()) : initial;
+    });
+  }
+
+  public Int sum() { return stream().map(Interpreter::to_int).reduce(Int.of(0), Int::add); }
+
   @SuppressWarnings("unchecked")
   public Builtins.Iterator iter() { return new Builtins.Iterator((Iterator<Value>) this.iterator()); }
 
@@ -172,12 +382,222 @@ public final class Vector<E extends Value> extends BuiltinValue implements Itera
   public static <E extends Value> Vector<E> make(Stream<E> items) { return make(items.iterator()); }
   public static <E extends Value> Vector<E> make(Iterable<E> items) { return make(items.iterator()); }
 
-  @SuppressWarnings("unchecked")
   public static <E extends Value> Vector<E> make(Iterator<E> items) {
-    // TODO: this can probably be optimised
-    Vector<E> result = (Vector<E>) Vector.empty;
-    while(items.hasNext()) { result = result.append(items.next()); }
-    return result;
+    var builder = new Builder<E>();
+    while(items.hasNext()) { builder.add(items.next()); }
+    return builder.build();
+  }
+
+  // Builds a vector from left to right in O(n): elements are collected into full leaves, and when the vector is built,
+  // the leaves are split between both halves, whose tries are assembled bottom-up. The builder can be reused.
+  public static final class Builder<E extends Value> {
+    private ArrayList<Object[]> leaves = new ArrayList<>();
+    private Object[] leaf = new Object[SIZE];
+    private int leaf_size = 0;
+
+    public Builder<E> add(E e) {
+      if(leaf_size == SIZE) {
+        leaves.add(leaf);
+        leaf = new Object[SIZE];
+        leaf_size = 0;
+      }
+      leaf[leaf_size++] = e;
+      return this;
+    }
+
+    public Builder<E> add_all(Iterable<? extends E> items) {
+      for(var item : items) { add(item); }
+      return this;
+    }
+
+    // adds elements `from` (inclusive) to `to` (exclusive) of `v`, copying whole arrays at a time; full leaves are
+    // shared instead of copied whenever the builder is at a leaf boundary
+    public Builder<E> add_range(Vector<? extends E> v, int from, int to) {
+      for(var i = from; i < to;) {
+        var array = v.array_at(i);
+        var start = v.array_start(i);
+        var end = Math.min(to - start, array.length);
+        add_array(array, i - start, end);
+        i = start + end;
+      }
+      return this;
+    }
+
+    private void add_array(Object[] array, int from, int to) {
+      if(leaf_size == 0 && from == 0 && to == SIZE && array.length == SIZE) {
+        leaves.add(array);
+        return;
+      }
+      while(from < to) {
+        if(leaf_size == SIZE) {
+          leaves.add(leaf);
+          leaf = new Object[SIZE];
+          leaf_size = 0;
+        }
+        var n = Math.min(to - from, SIZE - leaf_size);
+        System.arraycopy(array, from, leaf, leaf_size, n);
+        leaf_size += n;
+        from += n;
+      }
+    }
+
+    public int size() { return leaves.size() * SIZE + leaf_size; }
+
+    @SuppressWarnings("unchecked")
+    public Vector<E> build() {
+      if(leaf_size == 0) {
+        if(leaves.isEmpty()) { return (Vector<E>) empty; }
+        leaf = leaves.remove(leaves.size() - 1);
+        leaf_size = SIZE;
+      }
+      // like `push`, the last (possibly full) leaf stays in `right.extra`
+      var extra = leaf_size == SIZE ? leaf : java.util.Arrays.copyOf(leaf, leaf_size);
+      var l = leaves.size() / 2;
+      var r = leaves.size() - l;
+      var left = l == 0 ? (Left<E>) Left.empty : new Left<E>(l * SIZE, left_trie(leaves.subList(0, l)), EMPTY_ARRAY);
+      var right = new Right<E>(r * SIZE, r == 0 ? null : right_trie(leaves.subList(l, leaves.size())), extra);
+      leaves = new ArrayList<>();
+      leaf = new Object[SIZE];
+      leaf_size = 0;
+      return new Vector<>(left, right);
+    }
+
+    // nodes of the right half are filled from the start, so only the last node of each level can be partial
+    private static Object[] right_trie(java.util.List<Object[]> nodes) {
+      while(nodes.size() > 1) {
+        var parents = new ArrayList<Object[]>((nodes.size() + SIZE - 1) / SIZE);
+        for(var i = 0; i < nodes.size(); i += SIZE) {
+          parents.add(nodes.subList(i, Math.min(i + SIZE, nodes.size())).toArray());
+        }
+        nodes = parents;
+      }
+      return nodes.get(0);
+    }
+
+    // nodes of the left half are filled from the end, so only the first node of each level can be partial
+    private static Object[] left_trie(java.util.List<Object[]> nodes) {
+      while(nodes.size() > 1) {
+        var parents = new ArrayList<Object[]>((nodes.size() + SIZE - 1) / SIZE);
+        var end = nodes.size() % SIZE == 0 ? SIZE : nodes.size() % SIZE;
+        for(var i = 0; i < nodes.size(); i = end, end += SIZE) {
+          parents.add(nodes.subList(i, end).toArray());
+        }
+        nodes = parents;
+      }
+      return nodes.get(0);
+    }
+  }
+
+  // calls `fn` with a `Transient` copy of this vector and returns its final contents
+  public Vector<Value> edit(Value fn) {
+    @SuppressWarnings("unchecked")
+    var t = new Transient((Vector<Value>) this);
+    try {
+      fn.call(new Value[] {t}, null);
+      return t.persistent();
+    } finally {
+      t.owner = null;
+    }
+  }
+
+  // A vector that is changed in place by the thread that created it, for a batch of changes (see `edit`). The
+  // original vector is shared until one of its elements is changed or removed; appended elements are collected in an
+  // array and added in bulk when the transient is made persistent.
+  public static final class Transient extends BuiltinValue {
+    private Vector<Value> base;                 // unchanged prefix
+    private Object[] items = new Object[SIZE];  // elements after `base`
+    private int count = 0;
+    private Thread owner = Thread.currentThread();
+
+    public Transient(Vector<Value> base) { this.base = base; }
+
+    private void check() {
+      if(owner != Thread.currentThread()) { throw new Interpreter.InterpreterError("transient vector used outside of its `edit`"); }
+    }
+
+    private void check_index(int i) {
+      if(!(0 <= i && i < base.size_int32() + count)) { throw new IndexOutOfBoundsException(i); }
+    }
+
+    // moves the elements of `base` into `items`, so that they can be changed
+    @SuppressWarnings("unchecked")
+    private void thaw() {
+      var size = base.size_int32();
+      if(size == 0) { return; }
+      var thawed = new Object[Math.max(SIZE, size + count + count / 2)];
+      var i = 0;
+      for(var item : base) { thawed[i++] = item; }
+      System.arraycopy(items, 0, thawed, size, count);
+      items = thawed;
+      count += size;
+      base = (Vector<Value>) empty;
+    }
+
+    public Int size() { check(); return Int.of(base.size_int32() + count); }
+
+    public Value get(Int index) {
+      check();
+      var i = index.int32();
+      check_index(i);
+      var size = base.size_int32();
+      return i < size ? base.get(i) : (Value) items[i - size];
+    }
+
+    public void append(Value... values) {
+      check();
+      if(count + values.length > items.length) { items = java.util.Arrays.copyOf(items, Math.max(count + values.length, items.length * 2)); }
+      System.arraycopy(values, 0, items, count, values.length);
+      count += values.length;
+    }
+
+    public void update(Int index, Value value) {
+      check();
+      var i = index.int32();
+      check_index(i);
+      if(i < base.size_int32()) { thaw(); }
+      items[i - base.size_int32()] = value;
+    }
+
+    public Value shift() {
+      check();
+      if(count == 0) { thaw(); }
+      if(count == 0) { throw new Interpreter.InterpreterError("empty vector"); }
+      var last = (Value) items[--count];
+      items[count] = null;
+      return last;
+    }
+
+    @Override public Value get_item(Value item) { return get(Interpreter.to_int(item)); }
+    @Override public void set_item(Value item, Value value) { update(Interpreter.to_int(item), value); }
+
+    Vector<Value> persistent() {
+      check();
+      owner = null;
+      if(count == 0) { return base; }
+      var added = new Builder<Value>();
+      added.add_array(items, 0, count);
+      return base.concat(added.build());
+    }
+
+    @Override public String toString() {
+      var s = new StringBuilder("transient[");
+      for(var i = 0; i < base.size_int32() + count; i++) {
+        if(i > 0) { s.append(", "); }
+        s.append(i < base.size_int32() ? base.get(i) : items[i - base.size_int32()]);
+      }
+      return s.append(']').toString();
+    }
+
+    @Override public int hashCode() { throw new Interpreter.InterpreterError("mutable vector is not hashable"); }
+    @Override public boolean equals(Object other) { return other == this; }
+
+    @Override public final HashMap<String, Descriptor> attrs() { return ATTRS; }
+    public static final HashMap<String, Descriptor> ATTRS = BuiltinValue.resolve_attrs(Transient.class,
+      new String[] {"size"},
+      new String[] {"get", "append", "update", "shift"}
+    );
+    public static final Builtins.Type TYPE = new Builtins.Type("vector.transient", null, new HashMap<>(), ATTRS);
+    @Override public Builtins.Type type() { return TYPE; }
   }
 
   public String toString() {
@@ -220,8 +640,12 @@ public final class Vector<E extends Value> extends BuiltinValue implements Itera
     }
   }
 
-  public Vector<E> append_one(E e) { return push_internal(e, left, right); }
-  public Vector<E> push_one(E e) { return push_internal(e, right, left); }
+  public Vector<E> append_one(E e) {
+    return relaxed != null ? new Vector<>(Relaxed.concat(relaxed, Relaxed.leaf(new Object[] {e}))) : push_internal(e, left, right);
+  }
+  public Vector<E> push_one(E e) {
+    return relaxed != null ? new Vector<>(Relaxed.concat(Relaxed.leaf(new Object[] {e}), relaxed)) : push_internal(e, right, left);
+  }
 
   @SafeVarargs
   final public Vector<E> append(E... items) { /* push_right */
@@ -299,8 +723,8 @@ public final class Vector<E extends Value> extends BuiltinValue implements Itera
     return from.vector(other, from.pop());
   }
 
-  public Vector<E> shift() { /* pop_right or removeLast */ return pop(left, right); }
-  public Vector<E> pop() { /* pop_left or removeHead */ return pop(right, left); }
+  public Vector<E> shift() { /* pop_right or removeLast */ return relaxed != null ? of(relaxed.slice(0, relaxed.size - 1)) : pop(left, right); }
+  public Vector<E> pop() { /* pop_left or removeHead */ return relaxed != null ? of(relaxed.slice(1, relaxed.size)) : pop(right, left); }
 
   private static Object[] single(int shift, Object[] array) {
     for(; shift > SHIFT; shift -= SHIFT) {
@@ -538,6 +962,7 @@ public final class Vector<E extends Value> extends BuiltinValue implements Itera
         new_extra[i] = element;
         return new Left<>(data_size, this.data, new_extra);
       } else {
+        i -= extra.length;
         i += ((1 << this.shift) - data_size);    // adjust because of right bias
         return new Left<>(data_size, update_array(this.data, this.shift, i, element), this.extra);
       }
@@ -555,4 +980,293 @@ public final class Vector<E extends Value> extends BuiltinValue implements Itera
       return a;
     }
   }
-}
\ No newline at end of file
+  // A relaxed radix-balanced (RRB) tree. A node at `shift` has children holding up to `1 << shift` elements each, and
+  // leaves (at shift 0) are arrays of at most `SIZE` elements. A node whose children are all full, except maybe the last
+  // one, is a plain array and is indexed by radix like the tries of balanced vectors (so their full subtrees are shared
+  // as they are); any other node is `Sized`, and finds the child holding an element in its table of sizes. Concatenation
+  // merges the right edge of one tree with the left edge of the other, redistributing the children along the seam so that
+  // finding a child takes at most `EXTRA` steps more than radix indexing, and slicing cuts the edges; both are O(log n).
+  private static final class Relaxed {
+    private static final int EXTRA = 2;
+
+    final Object root;
+    final int shift;
+    final int size;
+
+    Relaxed(Object root, int shift, int size) {
+      // a root with a single child is replaced by the child
+      while(shift > 0 && children(root).length == 1) {
+        root = children(root)[0];
+        shift -= SHIFT;
+      }
+      this.root = root;
+      this.shift = shift;
+      this.size = size;
+    }
+
+    static Relaxed leaf(Object[] elements) { return new Relaxed(elements, 0, elements.length); }
+
+    // the left edge of a trie of a left half (whose nodes are filled from the end) converted to `Sized` nodes
+    static Object left_edge(Object[] node, int shift, int size) {
+      var first = size - ((node.length - 1) << shift);
+      if(shift == 0 || first == 1 << shift) { return node; }
+      var children = node.clone();
+      children[0] = left_edge((Object[]) node[0], shift - SHIFT, first);
+      var sizes = new int[children.length];
+      for(var i = 0; i < sizes.length; i++) { sizes[i] = first + (i << shift); }
+      return new Sized(children, sizes);
+    }
+
+    static Object[] children(Object node) { return node instanceof Sized s ? s.children : (Object[]) node; }
+
+    // the number of elements held by `node`
+    static int size(Object node, int shift) {
+      if(shift == 0) { return ((Object[]) node).length; }
+      if(node instanceof Sized s) { return s.sizes[s.sizes.length - 1]; }
+      var a = (Object[]) node;
+      return ((a.length - 1) << shift) + size(a[a.length - 1], shift - SHIFT);
+    }
+
+    // the child holding element `i`; no child holds more than `1 << shift` elements, so it can't be before `i >> shift`
+    private static int index(Sized node, int shift, int i) {
+      var j = i >> shift;
+      while(node.sizes[j] <= i) { j += 1; }
+      return j;
+    }
+
+    private static int start(Sized node, int j) { return j == 0 ? 0 : node.sizes[j - 1]; }
+
+    Object get(int i) {
+      var node = root;
+      for(var shift = this.shift; shift > 0; shift -= SHIFT) {
+        if(node instanceof Sized s) {
+          var j = index(s, shift, i);
+          i -= start(s, j);
+          node = s.children[j];
+        } else {
+          node = ((Object[]) node)[i >> shift];
+          i &= (1 << shift) - 1;
+        }
+      }
+      return ((Object[]) node)[i];
+    }
+
+    // the leaf holding element `i`
+    Object[] leaf(int i) {
+      var node = root;
+      for(var shift = this.shift; shift > 0; shift -= SHIFT) {
+        if(node instanceof Sized s) {
+          var j = index(s, shift, i);
+          i -= start(s, j);
+          node = s.children[j];
+        } else {
+          node = ((Object[]) node)[i >> shift];
+          i &= (1 << shift) - 1;
+        }
+      }
+      return (Object[]) node;
+    }
+
+    // the index of the first element of `leaf(i)`
+    int leaf_start(int i) {
+      var node = root;
+      var start = 0;
+      for(var shift = this.shift; shift > 0; shift -= SHIFT) {
+        if(node instanceof Sized s) {
+          var j = index(s, shift, i - start);
+          start += start(s, j);
+          node = s.children[j];
+        } else {
+          var j = (i - start) >> shift;
+          start += j << shift;
+          node = ((Object[]) node)[j];
+        }
+      }
+      return start;
+    }
+
+    Relaxed update(int i, Object element) { return new Relaxed(update(root, shift, i, element), shift, size); }
+
+    private static Object update(Object node, int shift, int i, Object element) {
+      if(shift == 0) {
+        var leaf = ((Object[]) node).clone();
+        leaf[i] = element;
+        return leaf;
+      }
+      if(node instanceof Sized s) {
+        var j = index(s, shift, i);
+        var children = s.children.clone();
+        children[j] = update(children[j], shift - SHIFT, i - start(s, j), element);
+        return new Sized(children, s.sizes);
+      }
+      var children = ((Object[]) node).clone();
+      var j = i >> shift;
+      children[j] = update(children[j], shift - SHIFT, i & ((1 << shift) - 1), element);
+      return children;
+    }
+
+    // elements `from` (inclusive) to `to` (exclusive), `from < to`
+    Relaxed slice(int from, int to) {
+      var node = to == size ? root : take(root, shift, to);
+      return new Relaxed(from == 0 ? node : drop(node, shift, from), shift, to - from);
+    }
+
+    // the first `n` elements of `node`, `0 < n`
+    private static Object take(Object node, int shift, int n) {
+      if(shift == 0) {
+        var leaf = (Object[]) node;
+        return n == leaf.length ? leaf : java.util.Arrays.copyOf(leaf, n);
+      }
+      if(node instanceof Sized s) {
+        var j = index(s, shift, n - 1);
+        var children = java.util.Arrays.copyOf(s.children, j + 1);
+        var sizes = java.util.Arrays.copyOf(s.sizes, j + 1);
+        children[j] = take(children[j], shift - SHIFT, n - start(s, j));
+        sizes[j] = n;
+        return new Sized(children, sizes);
+      }
+      var j = (n - 1) >> shift;
+      var children = java.util.Arrays.copyOf((Object[]) node, j + 1);
+      children[j] = take(children[j], shift - SHIFT, n - (j << shift));
+      return children;
+    }
+
+    // all but the first `n` elements of `node`, `0 < n < size(node, shift)`
+    private static Object drop(Object node, int shift, int n) {
+      if(shift == 0) {
+        var leaf = (Object[]) node;
+        return java.util.Arrays.copyOfRange(leaf, n, leaf.length);
+      }
+      int j, start;
+      int[] sizes;
+      if(node instanceof Sized s) {
+        j = index(s, shift, n);
+        start = start(s, j);
+        sizes = s.sizes;
+      } else {
+        j = n >> shift;
+        start = j << shift;
+        sizes = null;
+      }
+      var all = children(node);
+      var total = size(node, shift);
+      var children = java.util.Arrays.copyOfRange(all, j, all.length);
+      var new_sizes = new int[children.length];
+      for(var k = 0; k < children.length; k++) {
+        new_sizes[k] = (sizes != null ? sizes[j + k] : Math.min((j + k + 1) << shift, total)) - n;
+      }
+      if(n > start) { children[0] = drop(children[0], shift - SHIFT, n - start); }
+      return new Sized(children, new_sizes);
+    }
+
+    static Relaxed concat(Relaxed left, Relaxed right) {
+      if(left.size == 0) { return right; }
+      if(right.size == 0) { return left; }
+      var shift = Math.max(left.shift, right.shift) + SHIFT;
+      return new Relaxed(concat(left.root, left.shift, right.root, right.shift), shift, left.size + right.size);
+    }
+
+    // a node at `max(left_shift, right_shift) + SHIFT`, with one or two children, holding the elements of both nodes
+    private static Object concat(Object left, int left_shift, Object right, int right_shift) {
+      if(left_shift > right_shift) {
+        var l = children(left);
+        return rebalance(left, concat(l[l.length - 1], left_shift - SHIFT, right, right_shift), null, left_shift);
+      }
+      if(left_shift < right_shift) {
+        return rebalance(null, concat(left, left_shift, children(right)[0], right_shift - SHIFT), right, right_shift);
+      }
+      if(left_shift == 0) {
+        var l = (Object[]) left;
+        var r = (Object[]) right;
+        if(l.length + r.length > SIZE) { return node(new Object[] {l, r}, SHIFT); }
+        var leaf = java.util.Arrays.copyOf(l, l.length + r.length);
+        System.arraycopy(r, 0, leaf, l.length, r.length);
+        return new Object[] {leaf};
+      }
+      var l = children(left);
+      return rebalance(left, concat(l[l.length - 1], left_shift - SHIFT, children(right)[0], right_shift - SHIFT), right, left_shift);
+    }
+
+    // Joins the children of `left` (except the last one), `center` and `right` (except the first one), which are all
+    // nodes at `shift`, into a node at `shift + SHIFT` with one or two children.
+    private static Object rebalance(Object left, Object center, Object right, int shift) {
+      var l = left == null ? EMPTY_ARRAY : children(left);
+      var c = children(center);
+      var r = right == null ? EMPTY_ARRAY : children(right);
+      var l_size = Math.max(l.length - 1, 0);
+      var r_start = Math.min(r.length, 1);
+      var all = new Object[l_size + c.length + r.length - r_start];
+      System.arraycopy(l, 0, all, 0, l_size);
+      System.arraycopy(c, 0, all, l_size, c.length);
+      System.arraycopy(r, r_start, all, l_size + c.length, r.length - r_start);
+      var nodes = redistribute(all, shift - SHIFT);
+      if(nodes.length <= SIZE) { return new Object[] {node(nodes, shift)}; }
+      return node(new Object[] {
+        node(java.util.Arrays.copyOf(nodes, SIZE), shift),
+        node(java.util.Arrays.copyOfRange(nodes, SIZE, nodes.length), shift)
+      }, shift + SHIFT);
+    }
+
+    // Nodes at `shift` holding the same slots (children or elements) as `nodes`, in order. If there are more nodes than
+    // the fewest that could hold all slots plus `EXTRA`, the slots of nodes that aren't nearly full are moved into the
+    // following nodes, until there are few enough; nodes that keep their slots are reused.
+    private static Object[] redistribute(Object[] nodes, int shift) {
+      var slots = new int[nodes.length];
+      var total = 0;
+      for(var i = 0; i < nodes.length; i++) {
+        slots[i] = children(nodes[i]).length;
+        total += slots[i];
+      }
+      var count = nodes.length;
+      var optimal = (total + SIZE - 1) / SIZE;
+      if(count <= optimal + EXTRA) { return nodes; }
+      for(var i = 0; count > optimal + EXTRA; i--, count--) {
+        while(slots[i] >= SIZE - EXTRA / 2) { i += 1; }
+        // spread the slots of node `i` over the following nodes, until one of them is merged into the previous one
+        for(var remaining = slots[i]; remaining > 0; i++) {
+          var merged = Math.min(remaining + slots[i + 1], SIZE);
+          remaining += slots[i + 1] - merged;
+          slots[i] = merged;
+        }
+        System.arraycopy(slots, i + 1, slots, i, count - i - 1);
+      }
+      var result = new Object[count];
+      var k = 0;          // the node whose slots are copied next, from `offset`
+      var offset = 0;
+      for(var i = 0; i < count; i++) {
+        if(offset == 0 && children(nodes[k]).length == slots[i]) {
+          result[i] = nodes[k++];
+          continue;
+        }
+        var content = new Object[slots[i]];
+        for(var filled = 0; filled < content.length;) {
+          var source = children(nodes[k]);
+          var n = Math.min(content.length - filled, source.length - offset);
+          System.arraycopy(source, offset, content, filled, n);
+          filled += n;
+          offset += n;
+          if(offset == source.length) {
+            k += 1;
+            offset = 0;
+          }
+        }
+        result[i] = shift == 0 ? content : node(content, shift);
+      }
+      return result;
+    }
+
+    // a node at `shift` with the given children, `Sized` unless all of them but the last one are full
+    private static Object node(Object[] children, int shift) {
+      var sizes = new int[children.length];
+      var relaxed = false;
+      var total = 0;
+      for(var i = 0; i < children.length; i++) {
+        var size = size(children[i], shift - SHIFT);
+        total += size;
+        sizes[i] = total;
+        if(i < children.length - 1 && size != 1 << shift) { relaxed = true; }
+      }
+      return relaxed ? new Sized(children, sizes) : children;
+    }
+  }
+}
@@ -0,0 +1,562 @@
+package caya.ast;
+
+import java.util.HashMap;
+
+import caya.Builtins;
+import caya.Interpreter;
+import caya.Interpreter.Control;
+import caya.Interpreter.InterpreterError;
+import caya.Interpreter.Scope;
+import caya.Node;
+import caya.Obj;
+import caya.Runtime;
+import caya.Runtime.Value;
+import caya.Vector;
+import caya.Builtins.Int;
+import static caya.Builtins.*;
+import static caya.Interpreter.to_bool;
+import static caya.Interpreter.to_int;
+
+// Executable tree, built once from a resolved `Node` (see `Tree`). Nodes that depend on the types of their operands
+// start out specialized to the common case and, on a miss, replace themselves in their parent by a more general node
+// (see `replace`), so that the specialized node doesn't check which case it is in on every execution.
+public abstract class Exec {
+  public abstract Value execute(Scope scope);
+
+  Exec parent = null;     // the node holding this one in a child slot, if any
+
+  final <T extends Exec> T adopt(T child) {
+    if(child != null) { child.parent = this; }
+    return child;
+  }
+
+  final Exec[] adopt(Exec[] children) {
+    for(var child : children) { adopt(child); }
+    return children;
+  }
+
+  // Puts `replacement` into this node's slot in its parent. Nodes are only replaced after a miss, so the slot (a field
+  // of type `Exec` or an element of an `Exec[]`) is found reflectively. A replaced node can still be executed (e.g. as
+  // the body of a function created before, or as the root of a tree), so it should delegate to its replacement.
+  final <T extends Exec> T replace(T replacement) {
+    replacement.parent = parent;
+    if(parent == null) { return replacement; }
+    try {
+      for(java.lang.Class<?> cls = parent.getClass(); cls != Exec.class; cls = cls.getSuperclass()) {
+        for(var field : cls.getDeclaredFields()) {
+          if(field.getType() == Exec.class && field.get(parent) == this) {
+            field.set(parent, replacement);
+            return replacement;
+          }
+          if(field.getType() == Exec[].class && field.get(parent) instanceof Exec[] children) {
+            for(var i = 0; i < children.length; i++) {
+              if(children[i] == this) { children[i] = replacement; return replacement; }
+            }
+          }
+        }
+      }
+    } catch(IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+    return replacement;
+  }
+
+  static Value[] execute_all(Exec[] exprs, Scope scope) {
+    var values = new Value[exprs.length];
+    for(var i = 0; i < exprs.length; i++) { values[i] = exprs[i].execute(scope); }
+    return values;
+  }
+
+  // not (yet) handled by the executable tree, evaluated by the tree-walking interpreter
+  static final class Fallback extends Exec {
+    final Node node;
+    Fallback(Node node) { this.node = node; }
+    @Override public Value execute(Scope scope) {
+      // ast functions don't run tail calls in a loop, so an interpreted tail call is made right away
+      var value = scope.eval(node);
+      return value instanceof Interpreter.TailCall call ? call.run() : value;
+    }
+  }
+
+  static final class Error extends Exec {
+    final String message;
+    Error(String message) { this.message = message; }
+    @Override public Value execute(Scope scope) { throw new InterpreterError(message); }
+  }
+
+  static final class Unsupported extends Exec {
+    final String message;
+    Unsupported(String message) { this.message = message; }
+    @Override public Value execute(Scope scope) { throw new caya.Interpreter.NotImplemented(message); }
+  }
+
+  static final class Const extends Exec {
+    final Value value;
+    Const(Value value) { this.value = value; }
+    @Override public Value execute(Scope scope) { return value; }
+  }
+
+  static final class Global extends Exec {
+    final String name;
+    Global(String name) { this.name = name; }
+    @Override public Value execute(Scope scope) { return scope.lookup(name); }
+  }
+
+  static final class Local extends Exec {
+    final Node.Local local;
+    final int depth, index;
+    Local(Node.Local local) { this.local = local; this.depth = local.depth(); this.index = local.index(); }
+    @Override public Value execute(Scope scope) {
+      var value = scope.frame(depth).slots[index];
+      return value != null ? value : scope.load(local);
+    }
+  }
+
+  static final class Assign extends Exec {
+    final Node target;
+    Exec value;
+    Assign(Node target, Exec value) { this.target = target; this.value = adopt(value); }
+    @Override public Value execute(Scope scope) { scope.assign(target, value.execute(scope)); return NONE; }
+  }
+
+  static final class Declare extends Exec {
+    final Node target;
+    Exec value;
+    Declare(Node target, Exec value) { this.target = target; this.value = adopt(value); }
+    @Override public Value execute(Scope scope) { scope.declare(target, value.execute(scope)); return NONE; }
+  }
+
+  static final class Block extends Exec {
+    final int size;
+    final Exec[] exprs;
+    final boolean loop_body;
+    Block(int size, Exec[] exprs, boolean loop_body) { this.size = size; this.exprs = adopt(exprs); this.loop_body = loop_body; }
+    @Override public Value execute(Scope scope) {
+      var block = new Scope(scope, scope.this_obj(), loop_body || scope.in_loop(), scope.in_fn(), size);
+      Value result = NONE;
+      for(var expr : exprs) { result = expr.execute(block); }
+      return result;
+    }
+  }
+
+  static final class ListLiteral extends Exec {
+    final Exec[] items;
+    ListLiteral(Exec[] items) { this.items = adopt(items); }
+    @Override public Value execute(Scope scope) { return new Builtins.List(execute_all(items, scope)); }
+  }
+
+  static final class VectorLiteral extends Exec {
+    final Exec[] items;
+    VectorLiteral(Exec[] items) { this.items = adopt(items); }
+    @Override public Value execute(Scope scope) { return Vector.make(execute_all(items, scope)); }
+  }
+
+  // `-x` and `x op y` start out computing with the `long`s of small ints (see `Int`); an operand of any other kind, or
+  // an overflow, replaces the node by its generic version, which works with any `Int`
+
+  abstract static class Unary extends Exec {
+    Exec expr;
+    Unary(Exec expr) { this.expr = adopt(expr); }
+    abstract Value apply(Value value);
+    @Override public final Value execute(Scope scope) { return apply(expr.execute(scope)); }
+  }
+
+  static final class NegInt extends Unary {
+    Neg generic = null;
+    NegInt(Exec expr) { super(expr); }
+    @Override Value apply(Value value) {
+      if(generic == null && value instanceof Int i && i.big == null && i.small != Long.MIN_VALUE) { return Int.of(-i.small); }
+      if(generic == null) { generic = replace(new Neg(expr)); }
+      return generic.apply(value);
+    }
+  }
+
+  static final class Neg extends Unary {
+    Neg(Exec expr) { super(expr); }
+    @Override Value apply(Value value) { return to_int(value).negate(); }
+  }
+
+  abstract static class Binary extends Exec {
+    Exec left, right;
+    Binary(Exec left, Exec right) { this.left = adopt(left); this.right = adopt(right); }
+    abstract Value apply(Value l, Value r);
+    @Override public final Value execute(Scope scope) {
+      var l = left.execute(scope);
+      return apply(l, right.execute(scope));
+    }
+  }
+
+  static Exec arith(char op, Exec left, Exec right) {
+    return switch(op) {
+      case '+' -> new AddInt(left, right);
+      case '-' -> new SubInt(left, right);
+      case '*' -> new MulInt(left, right);
+      default -> throw new IllegalArgumentException("arithmetic operator " + op);
+    };
+  }
+
+  // `+`, `-` or `*` of small ints
+  abstract static class BinaryInt extends Binary {
+    Binary generic = null;
+    BinaryInt(Exec left, Exec right) { super(left, right); }
+    abstract long exact(long a, long b);     // throws `ArithmeticException` on overflow
+    abstract Binary generic();
+
+    @Override final Value apply(Value l, Value r) {
+      if(generic == null && l instanceof Int a && r instanceof Int b && a.big == null && b.big == null) {
+        try { return Int.of(exact(a.small, b.small)); } catch(ArithmeticException e) {}
+      }
+      if(generic == null) { generic = replace(generic()); }
+      return generic.apply(l, r);
+    }
+  }
+
+  static final class AddInt extends BinaryInt {
+    AddInt(Exec left, Exec right) { super(left, right); }
+    @Override long exact(long a, long b) { return Math.addExact(a, b); }
+    @Override Binary generic() { return new Add(left, right); }
+  }
+
+  static final class SubInt extends BinaryInt {
+    SubInt(Exec left, Exec right) { super(left, right); }
+    @Override long exact(long a, long b) { return Math.subtractExact(a, b); }
+    @Override Binary generic() { return new Sub(left, right); }
+  }
+
+  static final class MulInt extends BinaryInt {
+    MulInt(Exec left, Exec right) { super(left, right); }
+    @Override long exact(long a, long b) { return Math.multiplyExact(a, b); }
+    @Override Binary generic() { return new Mul(left, right); }
+  }
+
+  static final class Add extends Binary {
+    Add(Exec left, Exec right) { super(left, right); }
+    @Override Value apply(Value l, Value r) { return to_int(l).add(to_int(r)); }
+  }
+
+  static final class Sub extends Binary {
+    Sub(Exec left, Exec right) { super(left, right); }
+    @Override Value apply(Value l, Value r) { return to_int(l).subtract(to_int(r)); }
+  }
+
+  static final class Mul extends Binary {
+    Mul(Exec left, Exec right) { super(left, right); }
+    @Override Value apply(Value l, Value r) { return to_int(l).multiply(to_int(r)); }
+  }
+
+  static final class Not extends Exec {
+    Exec expr;
+    Not(Exec expr) { this.expr = adopt(expr); }
+    @Override public Value execute(Scope scope) { return to_bool(expr.execute(scope)) ? FALSE : TRUE; }
+  }
+
+  static final class And extends Exec {
+    final Exec[] exprs;
+    And(Exec[] exprs) { this.exprs = adopt(exprs); }
+    @Override public Value execute(Scope scope) {
+      for(var expr : exprs) {
+        if(!to_bool(expr.execute(scope))) { return FALSE; }
+      }
+      return TRUE;
+    }
+  }
+
+  static final class Or extends Exec {
+    final Exec[] exprs;
+    Or(Exec[] exprs) { this.exprs = adopt(exprs); }
+    @Override public Value execute(Scope scope) {
+      for(var expr : exprs) {
+        if(to_bool(expr.execute(scope))) { return TRUE; }
+      }
+      return FALSE;
+    }
+  }
+
+  static final class Cmp extends Exec {
+    final Exec[] operands;
+    final String[] ops;
+    Cmp(Exec[] operands, String[] ops) { this.operands = adopt(operands); this.ops = ops; }
+    @Override public Value execute(Scope scope) {
+      var left = to_int(operands[0].execute(scope));
+      for(var i = 0; i < ops.length; i++) {
+        var right = to_int(operands[i + 1].execute(scope));
+        var cmp = left.compareTo(right);
+        var result = switch(ops[i]) {
+          case "<" -> cmp < 0;
+          case ">" -> cmp > 0;
+          case "<=" -> cmp <= 0;
+          case ">=" -> cmp >= 0;
+          case "!=" -> cmp != 0;
+          case "==" -> cmp == 0;
+          default -> throw new InterpreterError("unexpected comparison operator: " + ops[i]);
+        };
+        if(!result) { return FALSE; }
+        left = right;
+      }
+      return TRUE;
+    }
+  }
+
+  static final class If extends Exec {
+    Exec cond, then, else_;
+    If(Exec cond, Exec then, Exec else_) { this.cond = adopt(cond); this.then = adopt(then); this.else_ = adopt(else_); }
+    @Override public Value execute(Scope scope) {
+      if(to_bool(cond.execute(scope))) { return then.execute(scope); }
+      return else_ == null ? NONE : else_.execute(scope);
+    }
+  }
+
+  static final class GetAttr extends Exec {
+    Exec obj;
+    final Obj.InlineCache cache;
+    GetAttr(Exec obj, String attr) { this.obj = adopt(obj); this.cache = new Obj.InlineCache(attr); }
+    @Override public Value execute(Scope scope) { return cache.get(obj.execute(scope)); }
+  }
+
+  static final class SetAttr extends Exec {
+    Exec obj, value;
+    final Obj.InlineCache cache;
+    SetAttr(Exec obj, String attr, Exec value) { this.obj = adopt(obj); this.cache = new Obj.InlineCache(attr); this.value = adopt(value); }
+    @Override public Value execute(Scope scope) {
+      var target = obj.execute(scope);
+      cache.set(target, value.execute(scope));
+      return NONE;
+    }
+  }
+
+  static final class GetItem extends Exec {
+    Exec obj, item;
+    GetItem(Exec obj, Exec item) { this.obj = adopt(obj); this.item = adopt(item); }
+    @Override public Value execute(Scope scope) { return obj.execute(scope).get_item(item.execute(scope)); }
+  }
+
+  static final class SetItem extends Exec {
+    Exec obj, item, value;
+    SetItem(Exec obj, Exec item, Exec value) { this.obj = adopt(obj); this.item = adopt(item); this.value = adopt(value); }
+    @Override public Value execute(Scope scope) {
+      obj.execute(scope).set_item(item.execute(scope), value.execute(scope));
+      return NONE;
+    }
+  }
+
+  static Call call(Exec fn, Exec[] args, Runtime.CallShape shape) { return new CallUninitialized(fn, args, shape); }
+
+  // `fn(args)`; on its first execution, the call replaces itself by one specialized to the kind of callee: a Caya
+  // function, a builtin function (called with positional arguments only), or anything else
+  abstract static class Call extends Exec {
+    Exec fn;
+    final Exec[] args;
+    final Runtime.CallShape shape;     // `null` if all arguments are positional
+    Call next = null;                  // the replacement of this node, once it has been replaced
+    Call(Exec fn, Exec[] args, Runtime.CallShape shape) { this.fn = adopt(fn); this.args = adopt(args); this.shape = shape; }
+    abstract Value apply(Value callee, Value[] values);
+
+    @Override public final Value execute(Scope scope) {
+      var callee = fn.execute(scope);
+      var values = new Value[args.length];
+      for(var i = 0; i < values.length; i++) {
+        if(shape != null && i == shape.duplicate) { throw shape.duplicate_error(); }
+        values[i] = args[i].execute(scope);
+      }
+      return apply(callee, values);
+    }
+
+    final Value respecialize(Call replacement, Value callee, Value[] values) {
+      if(next == null) { next = replace(replacement); }
+      return next.apply(callee, values);
+    }
+  }
+
+  static final class CallUninitialized extends Call {
+    CallUninitialized(Exec fn, Exec[] args, Runtime.CallShape shape) { super(fn, args, shape); }
+    @Override Value apply(Value callee, Value[] values) {
+      if(next != null) { return next.apply(callee, values); }
+      Call specialized;
+      if(callee instanceof Function) {
+        specialized = new CallFunction(fn, args, shape);
+      } else if(callee instanceof Builtins.Function && shape == null) {
+        specialized = new CallBuiltin(fn, args, shape);
+      } else {
+        specialized = new CallGeneric(fn, args, shape);
+      }
+      return respecialize(specialized, callee, values);
+    }
+  }
+
+  static final class CallFunction extends Call {
+    CallFunction(Exec fn, Exec[] args, Runtime.CallShape shape) { super(fn, args, shape); }
+    @Override Value apply(Value callee, Value[] values) {
+      if(next == null && callee instanceof Function f) { return f.invoke(values, shape); }
+      return respecialize(new CallGeneric(fn, args, shape), callee, values);
+    }
+  }
+
+  static final class CallBuiltin extends Call {
+    CallBuiltin(Exec fn, Exec[] args, Runtime.CallShape shape) { super(fn, args, shape); }
+    @Override Value apply(Value callee, Value[] values) {
+      if(next == null && callee instanceof Builtins.Function f) { return f.call(values, null); }
+      return respecialize(new CallGeneric(fn, args, shape), callee, values);
+    }
+  }
+
+  static final class CallGeneric extends Call {
+    CallGeneric(Exec fn, Exec[] args, Runtime.CallShape shape) { super(fn, args, shape); }
+    @Override Value apply(Value callee, Value[] values) { return Interpreter.call(callee, values, shape); }
+  }
+
+  // `obj.attr(args)`; methods are called without creating a bound method, other attributes are read before the
+  // arguments are evaluated
+  static final class CallMethod extends Exec {
+    Exec obj;
+    final Obj.InlineCache cache;
+    final Exec[] args;
+    final Runtime.CallShape shape;     // `null` if all arguments are positional
+    CallMethod(Exec obj, String attr, Exec[] args, Runtime.CallShape shape) { this.obj = adopt(obj); this.cache = new Obj.InlineCache(attr); this.args = adopt(args); this.shape = shape; }
+
+    @Override public Value execute(Scope scope) {
+      var target = obj.execute(scope);
+      Obj.MethodDescriptor method = null;
+      Value callee = null;
+      if(target instanceof Obj o) {
+        var descriptor = cache.lookup(o.cls);
+        if(descriptor instanceof Obj.MethodDescriptor m) { method = m; } else { callee = descriptor.get(o); }
+      } else {
+        callee = cache.get(target);
+      }
+      var values = new Value[args.length];
+      for(var i = 0; i < values.length; i++) {
+        if(shape != null && i == shape.duplicate) { throw shape.duplicate_error(); }
+        values[i] = args[i].execute(scope);
+      }
+      return method != null ? method.invoke((Obj) target, values, shape) : Interpreter.call(callee, values, shape);
+    }
+  }
+
+  static final class MakeFunction extends Exec {
+    final String name;
+    final String[] params;
+    final Exec[] defaults;
+    Exec body;
+    MakeFunction(String name, String[] params, Exec[] defaults, Exec body) { this.name = name; this.params = params; this.defaults = adopt(defaults); this.body = adopt(body); }
+    @Override public Value execute(Scope scope) { return new Function(name, params, defaults, body, scope, null); }
+  }
+
+  static final class While extends Exec {
+    Exec cond, body;
+    While(Exec cond, Exec body) { this.cond = adopt(cond); this.body = adopt(body); }
+    @Override public Value execute(Scope scope) {
+      while(to_bool(cond.execute(scope))) {
+        try { body.execute(scope); }
+        catch(Control.Break e) { break; }
+        catch(Control.Continue e) { continue; }
+      }
+      return NONE;
+    }
+  }
+
+  static final class For extends Exec {
+    Exec items, body;
+    For(Exec items, Exec body) { this.items = adopt(items); this.body = adopt(body); }
+    @Override public Value execute(Scope scope) {
+      var it = Runtime.iter(items.execute(scope));
+      while(it.hasNext()) {
+        var iteration = new Scope(scope, scope.this_obj(), true, scope.in_fn(), 1);
+        iteration.slots[0] = it.next();
+        try { body.execute(iteration); }
+        catch(Control.Break e) { break; }
+        catch(Control.Continue e) { continue; }
+      }
+      return NONE;
+    }
+  }
+
+  static final class Break extends Exec {
+    @Override public Value execute(Scope scope) {
+      if(!scope.in_loop()) { throw new InterpreterError("`break` not in loop"); }
+      throw Control.BREAK;
+    }
+  }
+
+  static final class Continue extends Exec {
+    @Override public Value execute(Scope scope) {
+      if(!scope.in_loop()) { throw new InterpreterError("`continue` not in loop"); }
+      throw Control.CONTINUE;
+    }
+  }
+
+  static final class Return extends Exec {
+    Exec value;
+    Return(Exec value) { this.value = adopt(value); }
+    @Override public Value execute(Scope scope) {
+      if(!scope.in_fn()) { throw new InterpreterError("`return` not in function"); }
+      throw new Control.Return(value != null ? value.execute(scope) : NONE);
+    }
+  }
+
+  static final class Throw extends Exec {
+    Exec exception;
+    Throw(Exec exception) { this.exception = adopt(exception); }
+    @Override public Value execute(Scope scope) { throw new Control.Exception(exception.execute(scope)); }
+  }
+
+  static final class Try extends Exec {
+    Exec try_block, catch_block;
+    Try(Exec try_block, Exec catch_block) { this.try_block = adopt(try_block); this.catch_block = adopt(catch_block); }
+    @Override public Value execute(Scope scope) {
+      try { return try_block.execute(scope); }
+      catch(Control.Exception e) {
+        var handler = new Scope(scope, scope.this_obj(), scope.in_loop(), scope.in_fn(), 1);
+        handler.slots[0] = e.value;
+        return catch_block.execute(handler);
+      }
+    }
+  }
+
+  static final class This extends Exec {
+    @Override public Value execute(Scope scope) {
+      if(scope.this_obj() == null) { throw new InterpreterError("invalid `this` outside of class"); }
+      return scope.this_obj();
+    }
+  }
+
+  static final class Print extends Exec {
+    Exec value;
+    Print(Exec value) { this.value = adopt(value); }
+    @Override public Value execute(Scope scope) { scope.interpreter().out.println(value.execute(scope)); return NONE; }
+  }
+
+  record Method(MakeFunction fn, Scope closure) implements Obj.MethodDescriptor {
+    public Value get(Obj obj) { return new Function(fn.name, fn.params, fn.defaults, fn.body, closure, obj); }
+    public Value invoke(Obj obj, Value[] args, Runtime.CallShape shape) { return Function.invoke(fn.params, fn.defaults, fn.body, closure, obj, args, shape); }
+  }
+
+  record Property(Method getter, Method setter) implements Obj.Descriptor {
+    public Value get(Obj obj) { return getter.get(obj).call(new Value[0], null); }
+    public void set(Obj obj, Value value) { setter.get(obj).call(new Value[] {value}, null); }
+  }
+
+  // `attrs` in declaration order; for each, exactly one of a field index, a method or property accessors
+  static final class Class extends Exec {
+    final String name;
+    final String[] attrs;
+    final int[] fields;
+    final MakeFunction[] methods, getters, setters;
+    final MakeFunction constructor;
+    Class(String name, String[] attrs, int[] fields, MakeFunction[] methods, MakeFunction[] getters, MakeFunction[] setters, MakeFunction constructor) {
+      this.name = name; this.attrs = attrs; this.fields = fields;
+      this.methods = methods; this.getters = getters; this.setters = setters; this.constructor = constructor;
+    }
+    @Override public Value execute(Scope scope) {
+      var descriptors = new HashMap<String, Obj.Descriptor>();
+      var num_fields = 0;
+      for(var i = 0; i < attrs.length; i++) {
+        if(fields[i] >= 0) { num_fields += 1; }
+        descriptors.put(attrs[i],
+          methods[i] != null ? new Method(methods[i], scope) :
+          fields[i] >= 0 ? new Obj.Field(fields[i]) :
+          new Property(getters[i] == null ? null : new Method(getters[i], scope), setters[i] == null ? null : new Method(setters[i], scope)));
+      }
+      return new Obj.Cls(name, num_fields, new Method(constructor, scope), descriptors);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package caya.ast;
+
+import java.util.Map;
+
+import caya.Interpreter.Control;
+import caya.Interpreter.InterpreterError;
+import caya.Interpreter.Scope;
+import caya.Obj;
+import caya.Runtime;
+import caya.Runtime.Value;
+
+public final class Function extends Value {
+  public final String name;
+  public final String[] params;
+  final Exec[] defaults;       // `null` for parameters without a default value
+  final Exec body;
+  public final Scope closure;
+  public final Obj this_obj;   // bound methods only
+  Function(String name, String[] params, Exec[] defaults, Exec body, Scope closure, Obj this_obj) {
+    this.name = name; this.params = params; this.defaults = defaults; this.body = body; this.closure = closure; this.this_obj = this_obj;
+  }
+
+  @Override public Value call(Value[] args, Map<String, Value> named_args) {
+    if(named_args == null) { return invoke(args, null); }
+    var all_args = java.util.Arrays.copyOf(args, args.length + named_args.size());
+    var i = args.length;
+    for(var value : named_args.values()) { all_args[i++] = value; }
+    return invoke(all_args, Runtime.CallShape.of(args.length, named_args));
+  }
+  @Override public String toString() { return "fn " + name; }
+  @Override public caya.Builtins.Type type() { return this_obj == null ? Runtime.Function.TYPE : Obj.BoundMethod.TYPE; }
+
+  Value invoke(Value[] args, Runtime.CallShape shape) { return invoke(params, defaults, body, closure, this_obj, args, shape); }
+
+  // binds arguments like `Interpreter.eval_function`
+  static Value invoke(String[] params, Exec[] defaults, Exec body, Scope closure, Obj this_obj, Value[] args, Runtime.CallShape shape) {
+    var scope = new Scope(closure, this_obj, false, true, params.length);
+    var source = shape == null ? null : shape.bind(params);
+    if(source != null) {
+      for(var j = 0; j < params.length; j++) {
+        if(source[j] >= 0 && shape.names[source[j]] != null) { scope.slots[j] = args[source[j]]; }
+      }
+    }
+    for(var j = 0; j < params.length; j++) {
+      var i = source == null ? (j < args.length ? j : -1) : source[j];
+      if(i >= 0) {
+        scope.slots[j] = args[i];
+      } else if(defaults[j] != null) {
+        scope.slots[j] = defaults[j].execute(scope);
+      } else {
+        throw new InterpreterError("missing parameter ` " + params[j] + "`");
+      }
+    }
+    try {
+      return body.execute(scope);
+    } catch (Control.Return e) {
+      return e.value;
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package caya.ast;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import caya.Interpreter;
+import caya.Interpreter.Scope;
+import caya.Node;
+import caya.Optimizer;
+import caya.Resolver;
+import caya.Runtime.Value;
+import caya.Vector;
+import caya.Builtins.*;
+import static caya.Builtins.*;
+
+// Builds the executable tree (`Exec`) from a resolved `Node`.
+public final class Tree {
+  private Tree() {}
+
+  public static Value eval(Node n) { return eval_toplevel(Interpreter.shared.scope(), n); }
+
+  public static Value eval_toplevel(Scope scope, Node n) { return build(Optimizer.optimize(Resolver.resolve(n))).execute(scope); }
+
+  private static Exec[] build_all(List<Node> exprs) {
+    var result = new Exec[exprs.size()];
+    for(var i = 0; i < result.length; i++) { result[i] = build(exprs.get(i)); }
+    return result;
+  }
+
+  private static String name(Node target) {
+    return target instanceof Node.Local local ? local.name() : ((Node.Ident) target).name();
+  }
+
+  // a `Block` body of `while` is a loop body, see `Interpreter.Scope.eval_loop_body`
+  private static Exec loop_body(Node body) {
+    return body instanceof Node.Block block ? new Exec.Block(block.size(), build_all(block.exprs()), true) : build(body);
+  }
+
+  public static Exec build(Node n) {
+    return switch(n) {
+      case Node.Int(_, var value) -> new Exec.Const(Int.of(value));
+      case Node.Str(_, var value) -> new Exec.Const(new Str(value));
+      case Node.None(_) -> new Exec.Const(NONE);
+      case Node.Bool(_, var value) -> new Exec.Const(value ? TRUE : FALSE);
+      case Node.Atom(_, var value) -> new Exec.Const(value);
+      case Node.Const(_, var value) -> new Exec.Const(value);
+      case Node.Ident(_, var name) -> new Exec.Global(name);
+      case Node.Local local -> new Exec.Local(local);
+      case Node.List(_, var items) -> new Exec.ListLiteral(build_all(items));
+      case Node.Vector(_, var items) when items.isEmpty() -> new Exec.Const(Vector.empty);
+      case Node.Vector(_, var items) when !(items.get(0) instanceof Node.Arg) -> new Exec.VectorLiteral(build_all(items));
+      case Node.Tuple(_, var items) -> new Exec.VectorLiteral(build_all(items));
+      case Node.Attr(_, var expr, var attr) -> new Exec.GetAttr(build(expr), attr);
+      case Node.Invoke(_, Node.Attr(_, var obj, var attr), var args, var shape, _) -> new Exec.CallMethod(build(obj), attr, build_all(args), shape);
+      case Node.Invoke(_, var fn, var args, var shape, _) -> Exec.call(build(fn), build_all(args), shape);
+      case Node.Block block -> new Exec.Block(block.size(), build_all(block.exprs()), false);
+      case Node.Body(_, var body, _) -> build(body);
+      case Node.Assign(_, Node.Call(_, var target, var params), var body) when target instanceof Node.Ident || target instanceof Node.Local ->
+        new Exec.Assign(target, function(name(target), params, body));
+      case Node.Assign(_, var target, var expr) when target instanceof Node.Ident || target instanceof Node.Local -> new Exec.Assign(target, build(expr));
+      case Node.Assign(_, Node.Attr(_, var obj, var attr), var expr) -> new Exec.SetAttr(build(obj), attr, build(expr));
+      case Node.Assign(_, Node.Item(_, var obj, var items), var expr) when items.size() == 1 ->
+        new Exec.SetItem(build(obj), build(items.get(0)), build(expr));
+      case Node.VarAssign(_, var target, var expr) when target instanceof Node.Ident || target instanceof Node.Local -> new Exec.Declare(target, build(expr));
+      case Node.Unary(_, Node.Ident(_, var op), var expr) when op.equals("-") -> new Exec.NegInt(build(expr));
+      case Node.Binary(_, Node.Ident(_, var op), var left, var right) when op.equals("+") || op.equals("-") || op.equals("*") ->
+        Exec.arith(op.charAt(0), build(left), build(right));
+      case Node.Not(_, var expr) -> new Exec.Not(build(expr));
+      case Node.And(_, var exprs) -> new Exec.And(build_all(exprs));
+      case Node.Or(_, var exprs) -> new Exec.Or(build_all(exprs));
+      case Node.If(_, var cond, var then) -> new Exec.If(build(cond), build(then), null);
+      case Node.IfElse(_, var cond, var then, var else_) -> new Exec.If(build(cond), build(then), build(else_));
+      case Node.Arrow(_, var params, var body) -> function("<lambda>", params, body);
+      case Node.Func(_, Node.Call(_, var target, var params), var body) when target instanceof Node.Ident || target instanceof Node.Local ->
+        new Exec.Assign(target, function(name(target), params, body));
+      case Node.Item(_, var value, var items) when items.size() == 1 -> new Exec.GetItem(build(value), build(items.get(0)));
+      case Node.Cmp(_, var items) when items.size() >= 3 && items.size() % 2 == 1 -> {
+        var operands = new ArrayList<Node>();
+        var ops = new String[items.size() / 2];
+        for(var i = 0; i < items.size(); i++) {
+          if(i % 2 == 0) {
+            operands.add(items.get(i));
+          } else if(items.get(i) instanceof Node.Ident(_, var op)) {
+            ops[i / 2] = op;
+          } else {
+            yield new Exec.Fallback(n);
+          }
+        }
+        yield new Exec.Cmp(build_all(operands), ops);
+      }
+      case Node.While(_, var cond, var body) -> new Exec.While(build(cond), loop_body(body));
+      case Node.For(_, Node.Ident _, var items, var body) -> new Exec.For(build(items), build(body));
+      case Node.Continue(_) -> new Exec.Continue();
+      case Node.Break(_) -> new Exec.Break();
+      case Node.Throw(_, var exception) -> new Exec.Throw(build(exception));
+      case Node.Try(_, var try_block, Node.Ident _, var catch_block) -> new Exec.Try(build(try_block), build(catch_block));
+      case Node.This(_) -> new Exec.This();
+      case Node.Class(_, var target, Node.Seq(_, var declarations)) when target instanceof Node.Ident || target instanceof Node.Local ->
+        new Exec.Declare(target, class_declaration(name(target), declarations));
+      case Node.Return(_, var expr) -> new Exec.Return(expr == null ? null : build(expr));
+      case Node.Print(_, var expr) -> new Exec.Print(build(expr));
+      default -> new Exec.Fallback(n);
+    };
+  }
+
+  // validates parameters like `Interpreter.Scope.get_params`; errors are raised when the definition is executed
+  private static Exec function(String name, List<Node> params, Node body) {
+    var names = new String[params.size()];
+    var defaults = new Exec[params.size()];
+    var seen = new HashSet<String>();
+    for(var i = 0; i < names.length; i++) {
+      switch(params.get(i)) {
+        case Node.Arg(_, Node.Ident(_, var param), var default_value) -> { names[i] = param; defaults[i] = build(default_value); }
+        case Node.Ident(_, var param) -> names[i] = param;
+        default -> { return new Exec.Error("invalid parameter: " + Node.show(params.get(i))); }
+      }
+      if(!seen.add(names[i])) { return new Exec.Error("duplicated parameter name `" + names[i] + "`"); }
+    }
+    return new Exec.MakeFunction(name, names, defaults, build(body));
+  }
+
+  // mirrors `Interpreter.Scope.class_declaration`
+  private static Exec class_declaration(String name, List<Node> declarations) {
+    var attrs = new LinkedHashMap<String, Integer>();
+    var fields = new ArrayList<Integer>();
+    var methods = new ArrayList<Exec.MakeFunction>();
+    var getters = new ArrayList<Exec.MakeFunction>();
+    var setters = new ArrayList<Exec.MakeFunction>();
+    var constructor = new ArrayList<Exec>();
+    var num_fields = 0;
+    for(var declaration : declarations) {
+      switch(declaration) {
+        case Node.VarAssign(_, Node.Ident(_, var field), var value) -> {
+          if(attrs.containsKey(field)) { return new Exec.Error("duplicated attribute: " + field); }
+          attrs.put(field, fields.size());
+          fields.add(num_fields++); methods.add(null); getters.add(null); setters.add(null);
+          constructor.add(new Exec.SetAttr(new Exec.This(), field, build(value)));
+        }
+        case Node.Func(_, Node.Attr(_, Node.This(_), var attr), var body) -> {
+          int index = attrs.getOrDefault(attr, -1);
+          if(index >= 0 && (fields.get(index) >= 0 || methods.get(index) != null)) { return new Exec.Error("duplicated attribute: " + attr); }
+          if(index >= 0 && getters.get(index) != null) { return new Exec.Error("duplicated property getter: " + attr); }
+          if(index < 0) { index = attrs.size(); attrs.put(attr, index); fields.add(-1); methods.add(null); getters.add(null); setters.add(null); }
+          getters.set(index, new Exec.MakeFunction(attr, new String[0], new Exec[0], build(body)));
+        }
+        case Node.Func(_, Node.Arg(_, Node.Attr(_, Node.This(_), var attr), Node.Ident(_, var param)), var body) -> {
+          int index = attrs.getOrDefault(attr, -1);
+          if(index >= 0 && (fields.get(index) >= 0 || methods.get(index) != null)) { return new Exec.Error("duplicated attribute: " + attr); }
+          if(index >= 0 && setters.get(index) != null) { return new Exec.Error("duplicated property setter: " + attr); }
+          if(index < 0) { index = attrs.size(); attrs.put(attr, index); fields.add(-1); methods.add(null); getters.add(null); setters.add(null); }
+          setters.set(index, new Exec.MakeFunction(attr, new String[] {param}, new Exec[1], build(body)));
+        }
+        case Node.Func(_, Node.Call(_, Node.Ident(_, var method), var params), var body) -> {
+          var fn = function(method, params, body);
+          if(!(fn instanceof Exec.MakeFunction make)) { return fn; }
+          // a method replaces any previous attribute with the same name, but a replaced field keeps its slot
+          int index = attrs.getOrDefault(method, -1);
+          if(index < 0) { index = attrs.size(); attrs.put(method, index); fields.add(-1); methods.add(null); getters.add(null); setters.add(null); }
+          methods.set(index, make); getters.set(index, null); setters.set(index, null);
+        }
+        default -> { return new Exec.Unsupported(Node.show(declaration)); }
+      }
+    }
+    return new Exec.Class(
+      name,
+      attrs.keySet().toArray(new String[0]),
+      fields.stream().mapToInt(i -> i).toArray(),
+      methods.toArray(new Exec.MakeFunction[0]),
+      getters.toArray(new Exec.MakeFunction[0]),
+      setters.toArray(new Exec.MakeFunction[0]),
+      new Exec.MakeFunction(name, new String[0], new Exec[0], new Exec.Block(0, constructor.toArray(new Exec[0]), false))
+    );
+  }
+}
@@ -0,0 +1,19 @@
+package caya.bytecode;
+
+import java.util.Map;
+
+import caya.Interpreter.Scope;
+import caya.Obj;
+import caya.Runtime;
+import caya.Runtime.Value;
+
+public final class Closure extends Value {
+  public final Code code;
+  public final Scope env;
+  public final Obj this_obj;      // bound methods only
+  public Closure(Code code, Scope env, Obj this_obj) { this.code = code; this.env = env; this.this_obj = this_obj; }
+
+  @Override public Value call(Value[] args, Map<String, Value> named_args) { return VM.call(this, args, named_args); }
+  @Override public String toString() { return "fn " + code.name; }
+  @Override public caya.Builtins.Type type() { return this_obj == null ? Runtime.Function.TYPE : Obj.BoundMethod.TYPE; }
+}
@@ -0,0 +1,45 @@
+package caya.bytecode;
+
+// A compiled function body (or toplevel program).
+public final class Code {
+  public final String name;
+  public final String[] params;
+  public final boolean[] defaults;      // whether each parameter has a default value
+  public final int[] code;
+  public final Object[] constants;
+  public final int registers;
+
+  public Code(String name, String[] params, boolean[] defaults, int[] code, Object[] constants, int registers) {
+    this.name = name; this.params = params; this.defaults = defaults; this.code = code; this.constants = constants; this.registers = registers;
+  }
+
+  public String disassemble() {
+    var s = new StringBuilder("code " + name + "(" + String.join(", ", params) + ") registers=" + registers + "\n");
+    for(var pc = 0; pc < code.length; pc += Op.OPERANDS[code[pc]] + 1) {
+      var op = code[pc];
+      s.append(String.format("%5d  %-16s", pc, Op.NAMES[op]));
+      for(var i = 1; i <= Op.OPERANDS[op]; i++) { s.append(' ').append(code[pc + i]); }
+      if(op == Op.CMP) { s.append("  ; ").append(Op.COMPARISONS[code[pc + 4]]); }
+      s.append('\n');
+    }
+    for(var i = 0; i < constants.length; i++) {
+      var constant = constants[i] instanceof caya.Node n ? caya.Node.show(n) : String.valueOf(constants[i]);
+      s.append(String.format("  k%-4d %s\n", i, constant));
+    }
+    for(var constant : constants) {
+      if(constant instanceof Code c) { s.append(c.disassemble()); }
+      if(constant instanceof ClassCode c) {
+        s.append(c.constructor.disassemble());
+        for(var method : c.methods) { if(method != null) { s.append(method.disassemble()); } }
+      }
+    }
+    return s.toString();
+  }
+
+  @Override public String toString() { return "code " + name; }
+
+  // `attrs` are the class attributes in declaration order, with the field index, method or property accessors for each
+  public record ClassCode(String name, String[] attrs, int[] fields, Code[] methods, Code[] getters, Code[] setters, Code constructor) {
+    @Override public String toString() { return "class " + name; }
+  }
+}
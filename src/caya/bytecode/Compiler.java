@@ -0,0 +1,534 @@
+package caya.bytecode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import caya.Builtins;
+import caya.Node;
+import caya.Obj;
+import caya.Vector;
+import caya.Builtins.*;
+
+// Compiles a resolved `Node` tree (see `Resolver`) to `Code`. Locals live in the same frames as in the tree-walking
+// interpreter (`Interpreter.Scope`), registers only hold temporary values.
+public final class Compiler {
+  private record Loop(int start, ArrayList<Integer> breaks, int frames, int handlers) {}
+
+  private final String name;
+  private final boolean in_fn;
+  private int[] code = new int[64];
+  private int size = 0;
+  private final ArrayList<Object> constants = new ArrayList<>();
+  private final IdentityHashMap<Object, Integer> constant_index = new IdentityHashMap<>();
+  private int next_register = 0;
+  private int registers = 0;
+  private int frames = 0;       // frames entered so far in this function
+  private int handlers = 0;     // `try` handlers active in this function
+  private final ArrayDeque<Loop> loops = new ArrayDeque<>();
+
+  private Compiler(String name, boolean in_fn) { this.name = name; this.in_fn = in_fn; }
+
+  public static Code compile(Node n) {
+    var c = new Compiler("<toplevel>", false);
+    var r = c.register();
+    c.expr(n, r);
+    c.emit(Op.RETURN, r);
+    return c.finish(new String[0], new boolean[0]);
+  }
+
+  private Code finish(String[] params, boolean[] defaults) {
+    return new Code(name, params, defaults, Arrays.copyOf(code, size), constants.toArray(), registers);
+  }
+
+  private int register() {
+    var r = next_register++;
+    registers = Math.max(registers, next_register);
+    return r;
+  }
+
+  private int constant(Object value) {
+    var index = constant_index.get(value);
+    if(index == null) {
+      index = constants.size();
+      constants.add(value);
+      constant_index.put(value, index);
+    }
+    return index;
+  }
+
+  private void emit(int op, int... operands) {
+    assert Op.OPERANDS[op] == operands.length;
+    if(size + operands.length + 1 > code.length) { code = Arrays.copyOf(code, code.length * 2 + operands.length); }
+    code[size++] = op;
+    for(var operand : operands) { code[size++] = operand; }
+  }
+
+  // emits an instruction whose last operand is a jump target, returns the position of that operand
+  private int emit_jump(int op, int... operands) {
+    var all = Arrays.copyOf(operands, operands.length + 1);
+    emit(op, all);
+    return size - 1;
+  }
+
+  private void patch(int position) { code[position] = size; }
+
+  private void error(String message) { emit(Op.ERROR, constant(message)); }
+  private void not_implemented(Node n) { emit(Op.NOT_IMPLEMENTED, constant(Node.show(n))); }
+  private void none(int dst) { emit(Op.CONST, dst, constant(Builtins.NONE)); }
+
+  // compiles `exprs` into consecutive fresh registers, returns the first one
+  private int exprs(List<Node> exprs) {
+    var first = next_register;
+    for(var expr : exprs) { expr(expr, register()); }
+    return first;
+  }
+
+  // like `exprs`, but a repeated named argument raises its error before it is evaluated, like in the other engines
+  private int arguments(List<Node> args, caya.Runtime.CallShape shape) {
+    var first = next_register;
+    for(var i = 0; i < args.size(); i++) {
+      if(shape != null && i == shape.duplicate) { error(shape.duplicate_error().getMessage()); }
+      expr(args.get(i), register());
+    }
+    return first;
+  }
+
+  private void block(Node.Block block, int dst) {
+    emit(Op.ENTER, block.size());
+    frames += 1;
+    if(block.exprs().isEmpty()) { none(dst); }
+    for(var expr : block.exprs()) { expr(expr, dst); }
+    frames -= 1;
+    emit(Op.LEAVE);
+  }
+
+  private void entries(List<Node> items, int op, int dst) {
+    var saved = next_register;
+    var first = next_register;
+    for(var item : items) {
+      switch(item) {
+        case Node.Arg(_, var key, var value) -> { expr(key, register()); expr(value, register()); }
+        default -> error("expected a `key = value` entry, not " + Node.show(item));
+      }
+    }
+    emit(op, dst, first, items.size());
+    next_register = saved;
+  }
+
+  private void expr(Node n, int dst) {
+    var saved = next_register;
+    switch(n) {
+      case Node.Int(_, var value) -> emit(Op.CONST, dst, constant(Int.of(value)));
+      case Node.Str(_, var value) -> emit(Op.CONST, dst, constant(new Str(value)));
+      case Node.None(_) -> none(dst);
+      case Node.Bool(_, var value) -> emit(Op.CONST, dst, constant(value ? Builtins.TRUE : Builtins.FALSE));
+      case Node.Atom(_, var value) -> emit(Op.CONST, dst, constant(value));
+      case Node.Const(_, var value) -> emit(Op.CONST, dst, constant(value));
+      case Node.Ident(_, var name) -> emit(Op.GLOBAL, dst, constant(name));
+      case Node.Local local -> emit(Op.LOCAL, dst, local.depth(), local.index(), constant(local));
+      case Node.List(_, var items) -> emit(Op.LIST, dst, exprs(items), items.size());
+      case Node.Vector(_, var items) -> {
+        if(items.isEmpty()) {
+          emit(Op.CONST, dst, constant(Vector.empty));
+        } else if(items.get(0) instanceof Node.Arg) {
+          entries(items, Op.INDEX, dst);
+        } else {
+          emit(Op.VECTOR, dst, exprs(items), items.size());
+        }
+      }
+      case Node.Tuple(_, var items) -> emit(Op.VECTOR, dst, exprs(items), items.size());
+      case Node.Dict(_, var fields) -> entries(fields, Op.DICT, dst);
+      case Node.Record(_, var fields) -> {
+        var names = new String[fields.size()];
+        var first = next_register;
+        for(var i = 0; i < fields.size(); i++) {
+          var field = fields.get(i);
+          switch(field) {
+            case Node.Arg(_, Node.Ident(_, var name), var expr) -> { names[i] = name; expr(expr, register()); }
+            case Node.Ident(_, var name) -> { names[i] = name; expr(field, register()); }
+            case Node.Local(_, var name, _, _, _) -> { names[i] = name; expr(field, register()); }
+            case Node.Spread(_, var expr) -> expr(expr, register());
+            default -> { not_implemented(field); register(); }
+          }
+        }
+        emit(Op.RECORD, dst, first, fields.size(), constant(names));
+      }
+      case Node.Attr(_, var expr, var attr) -> {
+        expr(expr, dst);
+        emit(Op.GET_ATTR, dst, dst, constant(new Obj.InlineCache(attr)));
+      }
+      case Node.Invoke(_, Node.Attr(_, var obj, var attr), var args, var shape, _) -> {
+        var fn_register = register();
+        var obj_register = register();
+        expr(obj, obj_register);
+        var cache = constant(new Obj.InlineCache(attr));
+        emit(Op.LOAD_METHOD, fn_register, obj_register, cache);
+        var first = arguments(args, shape);
+        emit(Op.CALL_METHOD, dst, fn_register, obj_register, cache, first, args.size(), shape == null ? -1 : constant(shape));
+      }
+      case Node.Invoke(_, var fn, var args, var shape, _) -> {
+        var fn_register = register();
+        expr(fn, fn_register);
+        var first = arguments(args, shape);
+        emit(Op.CALL, dst, fn_register, first, args.size(), shape == null ? -1 : constant(shape));
+      }
+      case Node.Block block -> block(block, dst);
+      case Node.Body(_, var body, _) -> expr(body, dst);
+      case Node.Assign(_, Node.Call(_, var target, var params), var body) when target instanceof Node.Ident || target instanceof Node.Local -> {
+        function(target instanceof Node.Ident i ? i.name() : ((Node.Local) target).name(), params, body, dst);
+        emit(Op.ASSIGN, dst, constant(target));
+        none(dst);
+      }
+      case Node.Assign(_, var target, var expr) when target instanceof Node.Ident || target instanceof Node.Local -> {
+        expr(expr, dst);
+        emit(Op.ASSIGN, dst, constant(target));
+        none(dst);
+      }
+      case Node.Assign(_, Node.Attr(_, var obj, var attr), var expr) -> {
+        var value = register();
+        expr(obj, dst);
+        expr(expr, value);
+        emit(Op.SET_ATTR, dst, constant(new Obj.InlineCache(attr)), value);
+        none(dst);
+      }
+      case Node.Assign(_, Node.Item(_, var obj, var items), var expr) when items.size() == 1 -> {
+        var item = register();
+        var value = register();
+        expr(obj, dst);
+        expr(items.get(0), item);
+        expr(expr, value);
+        emit(Op.SET_ITEM, dst, item, value);
+        none(dst);
+      }
+      case Node.VarAssign(_, var target, var expr) when target instanceof Node.Ident || target instanceof Node.Local -> {
+        expr(expr, dst);
+        emit(Op.DECLARE, dst, constant(target));
+        none(dst);
+      }
+      case Node.Unary(_, Node.Ident(_, var op), var expr) when op.equals("-") -> {
+        expr(expr, dst);
+        emit(Op.NEG, dst, dst);
+      }
+      case Node.Binary(_, Node.Ident(_, var op), var left, var right) when op.equals("+") || op.equals("-") || op.equals("*") -> {
+        var r = register();
+        expr(left, dst);
+        expr(right, r);
+        emit(op.equals("+") ? Op.ADD : op.equals("-") ? Op.SUB : Op.MUL, dst, dst, r);
+      }
+      case Node.Not(_, var expr) -> {
+        expr(expr, dst);
+        emit(Op.NOT, dst, dst);
+      }
+      case Node.And(_, var exprs) -> {
+        var jumps = new ArrayList<Integer>();
+        for(var expr : exprs) {
+          expr(expr, dst);
+          jumps.add(emit_jump(Op.JUMP_IF_FALSE, dst));
+        }
+        emit(Op.CONST, dst, constant(Builtins.TRUE));
+        var end = emit_jump(Op.JUMP);
+        for(var jump : jumps) { patch(jump); }
+        emit(Op.CONST, dst, constant(Builtins.FALSE));
+        patch(end);
+      }
+      case Node.Or(_, var exprs) -> {
+        var jumps = new ArrayList<Integer>();
+        for(var expr : exprs) {
+          expr(expr, dst);
+          var next = emit_jump(Op.JUMP_IF_FALSE, dst);
+          jumps.add(emit_jump(Op.JUMP));
+          patch(next);
+        }
+        emit(Op.CONST, dst, constant(Builtins.FALSE));
+        var end = emit_jump(Op.JUMP);
+        for(var jump : jumps) { patch(jump); }
+        emit(Op.CONST, dst, constant(Builtins.TRUE));
+        patch(end);
+      }
+      case Node.If(_, var cond, var then) -> {
+        expr(cond, dst);
+        var else_ = emit_jump(Op.JUMP_IF_FALSE, dst);
+        expr(then, dst);
+        var end = emit_jump(Op.JUMP);
+        patch(else_);
+        none(dst);
+        patch(end);
+      }
+      case Node.IfElse(_, var cond, var then, var else_branch) -> {
+        expr(cond, dst);
+        var else_ = emit_jump(Op.JUMP_IF_FALSE, dst);
+        expr(then, dst);
+        var end = emit_jump(Op.JUMP);
+        patch(else_);
+        expr(else_branch, dst);
+        patch(end);
+      }
+      case Node.Arrow(_, var params, var body) -> function("<lambda>", params, body, dst);
+      case Node.Func(_, Node.Call(_, var target, var params), var body) when target instanceof Node.Ident || target instanceof Node.Local -> {
+        function(target instanceof Node.Ident i ? i.name() : ((Node.Local) target).name(), params, body, dst);
+        emit(Op.ASSIGN, dst, constant(target));
+        none(dst);
+      }
+      case Node.Item(_, var value, var items) when items.size() == 1 -> {
+        var item = register();
+        expr(value, dst);
+        expr(items.get(0), item);
+        emit(Op.GET_ITEM, dst, dst, item);
+      }
+      case Node.Cmp(_, var items) -> {
+        var left = register();
+        var right = register();
+        var jumps = new ArrayList<Integer>();
+        expr(items.get(0), left);
+        for(var i = 1; i < items.size(); i += 2) {
+          var op = switch(items.get(i)) {
+            case Node.Ident(_, var name) -> Arrays.asList(Op.COMPARISONS).indexOf(name);
+            default -> -1;
+          };
+          expr(items.get(i + 1), right);
+          if(op < 0) {
+            error("unexpected comparison operator: " + Node.show(items.get(i)));
+          } else {
+            emit(Op.CMP, dst, left, right, op);
+          }
+          jumps.add(emit_jump(Op.JUMP_IF_FALSE, dst));
+          emit(Op.MOVE, left, right);
+        }
+        for(var jump : jumps) { patch(jump); }
+      }
+      case Node.While(_, var cond, var body) -> {
+        var loop = new Loop(size, new ArrayList<>(), frames, handlers);
+        expr(cond, dst);
+        var exit = emit_jump(Op.JUMP_IF_FALSE, dst);
+        loops.push(loop);
+        expr(body, dst);
+        loops.pop();
+        emit(Op.JUMP, loop.start());
+        patch(exit);
+        for(var jump : loop.breaks()) { patch(jump); }
+        none(dst);
+      }
+      case Node.For(_, Node.Ident _, var items, var body) -> {
+        var iterator = register();
+        expr(items, iterator);
+        emit(Op.ITER, iterator, iterator);
+        var loop = new Loop(size, new ArrayList<>(), frames, handlers);
+        var exit = emit_jump(Op.NEXT, iterator, dst);
+        emit(Op.ENTER, 1);
+        emit(Op.STORE, dst, 0);
+        frames += 1;
+        loops.push(loop);
+        expr(body, dst);
+        loops.pop();
+        frames -= 1;
+        emit(Op.LEAVE);
+        emit(Op.JUMP, loop.start());
+        patch(exit);
+        for(var jump : loop.breaks()) { patch(jump); }
+        none(dst);
+      }
+      case Node.Continue(_) -> {
+        var loop = loops.peek();
+        if(loop == null) {
+          error("`continue` not in loop");
+        } else {
+          unwind(loop);
+          emit(Op.JUMP, loop.start());
+        }
+      }
+      case Node.Break(_) -> {
+        var loop = loops.peek();
+        if(loop == null) {
+          error("`break` not in loop");
+        } else {
+          unwind(loop);
+          loop.breaks().add(emit_jump(Op.JUMP));
+        }
+      }
+      case Node.Throw(_, var exception) -> {
+        expr(exception, dst);
+        emit(Op.THROW, dst);
+      }
+      case Node.Try(_, var try_block, Node.Ident _, var catch_block) -> {
+        var exception = register();
+        var handler = size + 1;
+        emit(Op.TRY, 0, exception);
+        handlers += 1;
+        expr(try_block, dst);
+        handlers -= 1;
+        emit(Op.END_TRY);
+        var end = emit_jump(Op.JUMP);
+        patch(handler);
+        emit(Op.ENTER, 1);
+        emit(Op.STORE, exception, 0);
+        frames += 1;
+        expr(catch_block, dst);
+        frames -= 1;
+        emit(Op.LEAVE);
+        patch(end);
+      }
+      case Node.This(_) -> emit(Op.THIS, dst);
+      case Node.Class(_, var target, Node.Seq(_, var declarations)) when target instanceof Node.Ident || target instanceof Node.Local -> {
+        class_declaration(target instanceof Node.Ident i ? i.name() : ((Node.Local) target).name(), declarations, dst);
+        emit(Op.DECLARE, dst, constant(target));
+        none(dst);
+      }
+      case Node.Return(_, var expr) -> {
+        if(!in_fn) {
+          error("`return` not in function");
+        } else {
+          if(expr != null) { expr(expr, dst); } else { none(dst); }
+          emit(Op.RETURN, dst);
+        }
+      }
+      case Node.Print(_, var expr) -> {
+        expr(expr, dst);
+        emit(Op.PRINT, dst);
+        none(dst);
+      }
+      default -> not_implemented(n);
+    }
+    next_register = saved;
+  }
+
+  private void unwind(Loop loop) {
+    for(var i = loop.handlers(); i < handlers; i++) { emit(Op.END_TRY); }
+    for(var i = loop.frames(); i < frames; i++) { emit(Op.LEAVE); }
+  }
+
+  // validates parameters like `Interpreter.Scope.get_params`, returns `null` (after emitting an error) if invalid
+  private String[] params(List<Node> params) {
+    var names = new String[params.size()];
+    var seen = new HashSet<String>();
+    for(var i = 0; i < params.size(); i++) {
+      var name = switch(params.get(i)) {
+        case Node.Arg(_, Node.Ident(_, var n), _) -> n;
+        case Node.Ident(_, var n) -> n;
+        default -> {
+          error("invalid parameter: " + Node.show(params.get(i)));
+          yield null;
+        }
+      };
+      if(name == null) { return null; }
+      if(!seen.add(name)) {
+        error("duplicated parameter name `" + name + "`");
+        return null;
+      }
+      names[i] = name;
+    }
+    return names;
+  }
+
+  private Code function_code(String name, String[] names, List<Node> params, Node body) {
+    var c = new Compiler(name, true);
+    var defaults = new boolean[names.length];
+    for(var i = 0; i < names.length; i++) {
+      if(params.get(i) instanceof Node.Arg(_, _, var default_value)) {
+        defaults[i] = true;
+        var r = c.register();
+        var bound = c.emit_jump(Op.BOUND, i);
+        c.expr(default_value, r);
+        c.emit(Op.STORE, r, i);
+        c.patch(bound);
+        c.next_register = 0;
+      }
+    }
+    var r = c.register();
+    c.expr(body, r);
+    c.emit(Op.RETURN, r);
+    return c.finish(names, defaults);
+  }
+
+  private void function(String name, List<Node> params, Node body, int dst) {
+    var names = params(params);
+    if(names != null) {
+      emit(Op.FUNCTION, dst, constant(function_code(name, names, params, body)));
+    }
+  }
+
+  // mirrors `Interpreter.Scope.class_declaration`
+  private void class_declaration(String name, List<Node> declarations, int dst) {
+    var attrs = new LinkedHashMap<String, Integer>();
+    var fields = new ArrayList<Integer>();
+    var methods = new ArrayList<Code>();
+    var getters = new ArrayList<Code>();
+    var setters = new ArrayList<Code>();
+    var constructor = new Compiler(name, true);
+    var this_register = constructor.register();
+    var value_register = constructor.register();
+    constructor.emit(Op.ENTER, 0);
+    constructor.frames += 1;
+    constructor.emit(Op.THIS, this_register);
+    var field_count = 0;
+    for(var declaration : declarations) {
+      String attr;
+      var index = -1;
+      switch(declaration) {
+        case Node.VarAssign(_, Node.Ident(_, var field_name), var value) -> {
+          if(attrs.containsKey(field_name)) {
+            error("duplicated attribute: " + field_name);
+            return;
+          }
+          attr = field_name;
+          constructor.expr(value, value_register);
+          constructor.emit(Op.SET_ATTR, this_register, constructor.constant(new Obj.InlineCache(field_name)), value_register);
+          attrs.put(attr, fields.size());
+          fields.add(field_count++); methods.add(null); getters.add(null); setters.add(null);
+          continue;
+        }
+        case Node.Func(_, Node.Attr(_, Node.This(_), var property), var body) -> {
+          attr = property;
+          index = attrs.getOrDefault(attr, -1);
+          if(index >= 0 && (fields.get(index) >= 0 || methods.get(index) != null || getters.get(index) != null)) {
+            error((fields.get(index) < 0 && methods.get(index) == null ? "duplicated property getter: " : "duplicated attribute: ") + attr);
+            return;
+          }
+          if(index < 0) { index = attrs.size(); attrs.put(attr, index); fields.add(-1); methods.add(null); getters.add(null); setters.add(null); }
+          getters.set(index, function_code(attr, new String[0], List.of(), body));
+        }
+        case Node.Func(_, Node.Arg(_, Node.Attr(_, Node.This(_), var property), Node.Ident(_, var param)), var body) -> {
+          attr = property;
+          index = attrs.getOrDefault(attr, -1);
+          if(index >= 0 && (fields.get(index) >= 0 || methods.get(index) != null || setters.get(index) != null)) {
+            error((fields.get(index) < 0 && methods.get(index) == null ? "duplicated property setter: " : "duplicated attribute: ") + attr);
+            return;
+          }
+          if(index < 0) { index = attrs.size(); attrs.put(attr, index); fields.add(-1); methods.add(null); getters.add(null); setters.add(null); }
+          setters.set(index, function_code(attr, new String[] {param}, List.of(new Node.Ident(null, param)), body));
+        }
+        case Node.Func(_, Node.Call(_, Node.Ident(_, var method_name), var params), var body) -> {
+          var names = params(params);
+          if(names == null) { return; }
+          // a method replaces any previous attribute with the same name, but a replaced field keeps its slot
+          index = attrs.getOrDefault(method_name, -1);
+          if(index < 0) { index = attrs.size(); attrs.put(method_name, index); fields.add(-1); methods.add(null); getters.add(null); setters.add(null); }
+          methods.set(index, function_code(method_name, names, params, body));
+          getters.set(index, null); setters.set(index, null);
+        }
+        default -> {
+          not_implemented(declaration);
+          return;
+        }
+      }
+    }
+    constructor.frames -= 1;
+    constructor.emit(Op.LEAVE);
+    constructor.emit(Op.CONST, value_register, constructor.constant(Builtins.NONE));
+    constructor.emit(Op.RETURN, value_register);
+    var cls = new Code.ClassCode(
+      name,
+      attrs.keySet().toArray(new String[0]),
+      fields.stream().mapToInt(i -> i).toArray(),
+      methods.toArray(new Code[0]),
+      getters.toArray(new Code[0]),
+      setters.toArray(new Code[0]),
+      constructor.finish(new String[0], new boolean[0])
+    );
+    emit(Op.CLASS, dst, constant(cls));
+  }
+}
@@ -0,0 +1,67 @@
+package caya.bytecode;
+
+// Instructions are stored inline in an `int[]`: the opcode followed by its operands. `r` operands are registers,
+// `k` operands index the constant pool, `pc` operands are absolute jump targets.
+public final class Op {
+  public static final int CONST = 0;            // r(dst), k(value)
+  public static final int MOVE = 1;             // r(dst), r(src)
+  public static final int LOCAL = 2;            // r(dst), depth, index, k(Node.Local)
+  public static final int GLOBAL = 3;           // r(dst), k(name)
+  public static final int ASSIGN = 4;           // r(src), k(target)
+  public static final int DECLARE = 5;          // r(src), k(target)
+  public static final int STORE = 6;            // r(src), index - store into a slot of the current frame
+  public static final int BOUND = 7;            // index, pc - jump if the slot of the current frame is bound
+  public static final int THIS = 8;             // r(dst)
+  public static final int NEG = 9;              // r(dst), r(value)
+  public static final int ADD = 10;             // r(dst), r(left), r(right)
+  public static final int SUB = 11;             // r(dst), r(left), r(right)
+  public static final int MUL = 12;             // r(dst), r(left), r(right)
+  public static final int NOT = 13;             // r(dst), r(value)
+  public static final int CMP = 14;             // r(dst), r(left), r(right), comparison
+  public static final int JUMP = 15;            // pc
+  public static final int JUMP_IF_FALSE = 16;   // r(cond), pc
+  public static final int GET_ATTR = 17;        // r(dst), r(obj), k(Obj.InlineCache)
+  public static final int SET_ATTR = 18;        // r(obj), k(Obj.InlineCache), r(value)
+  public static final int GET_ITEM = 19;        // r(dst), r(obj), r(item)
+  public static final int SET_ITEM = 20;        // r(obj), r(item), r(value)
+  public static final int CALL = 21;            // r(dst), r(fn), r(first arg), count, k(Runtime.CallShape) or -1
+  public static final int LIST = 22;            // r(dst), r(first), count
+  public static final int VECTOR = 23;          // r(dst), r(first), count
+  public static final int INDEX = 24;           // r(dst), r(first), count - keys and values interleaved
+  public static final int DICT = 25;            // r(dst), r(first), count - keys and values interleaved
+  public static final int RECORD = 26;          // r(dst), r(first), count, k(names) - `null` name is a spread
+  public static final int FUNCTION = 27;        // r(dst), k(Code)
+  public static final int CLASS = 28;           // r(dst), k(ClassCode)
+  public static final int ENTER = 29;           // size - push a new frame
+  public static final int LEAVE = 30;           //        pop the current frame
+  public static final int RETURN = 31;          // r(value)
+  public static final int THROW = 32;           // r(value)
+  public static final int TRY = 33;             // pc(handler), r(exception)
+  public static final int END_TRY = 34;
+  public static final int ITER = 35;            // r(dst), r(iterable)
+  public static final int NEXT = 36;            // r(iterator), r(dst), pc - jump if exhausted
+  public static final int PRINT = 37;           // r(value)
+  public static final int ERROR = 38;           // k(message)
+  public static final int NOT_IMPLEMENTED = 39; // k(message)
+  public static final int LOAD_METHOD = 40;     // r(dst), r(obj), k(Obj.InlineCache) - the attribute, or `obj` itself if it's a method
+  public static final int CALL_METHOD = 41;     // r(dst), r(LOAD_METHOD dst), r(obj), k(Obj.InlineCache), r(first arg), count, k(Runtime.CallShape) or -1
+
+  static final String[] NAMES = {
+    "CONST", "MOVE", "LOCAL", "GLOBAL", "ASSIGN", "DECLARE", "STORE", "BOUND", "THIS", "NEG", "ADD", "SUB", "MUL", "NOT",
+    "CMP", "JUMP", "JUMP_IF_FALSE", "GET_ATTR", "SET_ATTR", "GET_ITEM", "SET_ITEM", "CALL", "LIST", "VECTOR", "INDEX",
+    "DICT", "RECORD", "FUNCTION", "CLASS", "ENTER", "LEAVE", "RETURN", "THROW", "TRY", "END_TRY", "ITER", "NEXT",
+    "PRINT", "ERROR", "NOT_IMPLEMENTED", "LOAD_METHOD", "CALL_METHOD",
+  };
+  static final int[] OPERANDS = {
+    2, 2, 4, 2, 2, 2, 2, 2, 1, 2, 3, 3, 3, 2,
+    4, 1, 2, 3, 3, 3, 3, 5, 3, 3, 3,
+    3, 4, 2, 2, 1, 0, 1, 1, 2, 0, 2, 3,
+    1, 1, 1, 3, 7,
+  };
+
+  // comparison operands of `CMP`
+  public static final int LT = 0, GT = 1, LE = 2, GE = 3, NE = 4, EQ = 5;
+  static final String[] COMPARISONS = {"<", ">", "<=", ">=", "!=", "=="};
+
+  private Op() {}
+}
@@ -0,0 +1,283 @@
+package caya.bytecode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import caya.Champ;
+import caya.Interpreter;
+import caya.Interpreter.Control;
+import caya.Interpreter.InterpreterError;
+import caya.Interpreter.Scope;
+import caya.Node;
+import caya.Obj;
+import caya.Optimizer;
+import caya.Record;
+import caya.Resolver;
+import caya.Runtime;
+import caya.Runtime.Value;
+import caya.Vector;
+import caya.Builtins.*;
+import static caya.Builtins.*;
+import static caya.Interpreter.to_bool;
+import static caya.Interpreter.to_int;
+
+// Register-based interpreter for `Code`. Calls between compiled functions push a `Frame` instead of recursing on the
+// JVM stack; only calls through builtins (e.g. `list.map`) re-enter `run`.
+public final class VM {
+  private record Handler(int pc, int exception, Scope env, Handler next) {}
+
+  private static final class Frame {
+    final Code code;
+    final Value[] registers;
+    final Obj this_obj;
+    final Frame caller;
+    final int result;       // caller's register that receives the return value
+    Scope env;
+    int pc = 0;
+    Handler handlers = null;
+
+    Frame(Code code, Scope env, Obj this_obj, Frame caller, int result) {
+      this.code = code; this.registers = new Value[code.registers]; this.env = env;
+      this.this_obj = this_obj; this.caller = caller; this.result = result;
+    }
+  }
+
+  // iterator state of a `for` loop, only ever stored in a register
+  private static final class Iter extends Value {
+    final Iterator<Value> it;
+    Iter(Iterator<Value> it) { this.it = it; }
+    @Override public Type type() { throw new IllegalStateException(); }
+  }
+
+  record Method(Code code, Scope env) implements Obj.MethodDescriptor {
+    public Value get(Obj obj) { return new Closure(code, env, obj); }
+    public Value invoke(Obj obj, Value[] args, Runtime.CallShape shape) { return run(enter(code, env, obj, args, 0, args.length, shape, null, 0)); }
+  }
+
+  record Property(Method getter, Method setter) implements Obj.Descriptor {
+    public Value get(Obj obj) { return getter.get(obj).call(new Value[0], null); }
+    public void set(Obj obj, Value value) { setter.get(obj).call(new Value[] {value}, null); }
+  }
+
+  public static Value eval(Node n) { return eval_toplevel(Interpreter.shared.scope(), n); }
+
+  public static Value eval_toplevel(Scope scope, Node n) {
+    return run(new Frame(Compiler.compile(Optimizer.optimize(Resolver.resolve(n))), scope, null, null, 0));
+  }
+
+  public static Value call(Closure closure, Value[] args, Map<String, Value> named_args) {
+    if(named_args == null) { return run(enter(closure.code, closure.env, closure.this_obj, args, 0, args.length, null, null, 0)); }
+    var all_args = java.util.Arrays.copyOf(args, args.length + named_args.size());
+    var i = args.length;
+    for(var value : named_args.values()) { all_args[i++] = value; }
+    return run(enter(closure.code, closure.env, closure.this_obj, all_args, 0, all_args.length, Runtime.CallShape.of(args.length, named_args), null, 0));
+  }
+
+  // binds the arguments `args[first:first + count]` like `Interpreter.eval_function`; default values are evaluated by
+  // the function prologue
+  private static Frame enter(Code code, Scope closure, Obj this_obj, Value[] args, int first, int count, Runtime.CallShape shape, Frame caller, int result) {
+    var params = code.params;
+    var env = new Scope(closure, this_obj, false, true, params.length);
+    var source = shape == null ? null : shape.bind(params);
+    for(var j = 0; j < params.length; j++) {
+      var i = source == null ? (j < count ? j : -1) : source[j];
+      if(i >= 0) {
+        env.slots[j] = args[first + i];
+      } else if(!code.defaults[j]) {
+        throw new InterpreterError("missing parameter ` " + params[j] + "`");
+      }
+    }
+    return new Frame(code, env, this_obj, caller, result);
+  }
+
+  private static Value[] values(Value[] registers, int first, int count) {
+    var values = new Value[count];
+    System.arraycopy(registers, first, values, 0, count);
+    return values;
+  }
+
+  private static Dict dict(Value[] registers, int first, int count) {
+    var dict = new Dict();
+    for(var i = 0; i < count; i++) { dict.set_item(registers[first + 2 * i], registers[first + 2 * i + 1]); }
+    return dict;
+  }
+
+  private static Index index(Value[] registers, int first, int count) {
+    var index = new Champ.Builder<Value, Value>();
+    for(var i = 0; i < count; i++) { index.put(registers[first + 2 * i], registers[first + 2 * i + 1]); }
+    return new Index(index.build());
+  }
+
+  private static Record record(Value[] registers, int first, String[] names) {
+    var record = new Record.Builder();
+    for(var i = 0; i < names.length; i++) {
+      if(names[i] == null) { record.spread(registers[first + i]); } else { record.field(names[i], registers[first + i]); }
+    }
+    return record.build();
+  }
+
+  private static Obj.Cls cls(Code.ClassCode c, Scope env) {
+    var attrs = new HashMap<String, Obj.Descriptor>();
+    var num_fields = 0;
+    for(var i = 0; i < c.attrs().length; i++) {
+      if(c.fields()[i] >= 0) { num_fields += 1; }
+      attrs.put(c.attrs()[i],
+        c.methods()[i] != null ? new Method(c.methods()[i], env) :
+        c.fields()[i] >= 0 ? new Obj.Field(c.fields()[i]) :
+        new Property(c.getters()[i] == null ? null : new Method(c.getters()[i], env), c.setters()[i] == null ? null : new Method(c.setters()[i], env)));
+    }
+    return new Obj.Cls(c.name(), num_fields, new Method(c.constructor(), env), attrs);
+  }
+
+  private static boolean compare(Value left, Value right, int comparison) {
+    var cmp = to_int(left).compareTo(to_int(right));
+    return switch(comparison) {
+      case Op.LT -> cmp < 0;
+      case Op.GT -> cmp > 0;
+      case Op.LE -> cmp <= 0;
+      case Op.GE -> cmp >= 0;
+      case Op.NE -> cmp != 0;
+      case Op.EQ -> cmp == 0;
+      default -> throw new IllegalStateException();
+    };
+  }
+
+  private static Value run(Frame entry) {
+    var frame = entry;
+    var code = frame.code.code;
+    var k = frame.code.constants;
+    var r = frame.registers;
+    var pc = frame.pc;
+    while(true) {
+      try {
+        while(true) {
+          var op = code[pc];
+          switch(op) {
+            case Op.CONST -> r[code[pc + 1]] = (Value) k[code[pc + 2]];
+            case Op.MOVE -> r[code[pc + 1]] = r[code[pc + 2]];
+            case Op.LOCAL -> {
+              var value = frame.env.frame(code[pc + 2]).slots[code[pc + 3]];
+              r[code[pc + 1]] = value != null ? value : frame.env.load((Node.Local) k[code[pc + 4]]);
+            }
+            case Op.GLOBAL -> r[code[pc + 1]] = frame.env.lookup((String) k[code[pc + 2]]);
+            case Op.ASSIGN -> frame.env.assign((Node) k[code[pc + 2]], r[code[pc + 1]]);
+            case Op.DECLARE -> frame.env.declare((Node) k[code[pc + 2]], r[code[pc + 1]]);
+            case Op.STORE -> frame.env.slots[code[pc + 2]] = r[code[pc + 1]];
+            case Op.BOUND -> {
+              if(frame.env.slots[code[pc + 1]] != null) { pc = code[pc + 2]; continue; }
+            }
+            case Op.THIS -> {
+              if(frame.this_obj == null) { throw new InterpreterError("invalid `this` outside of class"); }
+              r[code[pc + 1]] = frame.this_obj;
+            }
+            case Op.NEG -> r[code[pc + 1]] = to_int(r[code[pc + 2]]).negate();
+            case Op.ADD -> r[code[pc + 1]] = to_int(r[code[pc + 2]]).add(to_int(r[code[pc + 3]]));
+            case Op.SUB -> r[code[pc + 1]] = to_int(r[code[pc + 2]]).subtract(to_int(r[code[pc + 3]]));
+            case Op.MUL -> r[code[pc + 1]] = to_int(r[code[pc + 2]]).multiply(to_int(r[code[pc + 3]]));
+            case Op.NOT -> r[code[pc + 1]] = to_bool(r[code[pc + 2]]) ? FALSE : TRUE;
+            case Op.CMP -> r[code[pc + 1]] = compare(r[code[pc + 2]], r[code[pc + 3]], code[pc + 4]) ? TRUE : FALSE;
+            case Op.JUMP -> { pc = code[pc + 1]; continue; }
+            case Op.JUMP_IF_FALSE -> {
+              if(!to_bool(r[code[pc + 1]])) { pc = code[pc + 2]; continue; }
+            }
+            case Op.GET_ATTR -> r[code[pc + 1]] = ((Obj.InlineCache) k[code[pc + 3]]).get(r[code[pc + 2]]);
+            case Op.SET_ATTR -> ((Obj.InlineCache) k[code[pc + 2]]).set(r[code[pc + 1]], r[code[pc + 3]]);
+            case Op.LOAD_METHOD -> {
+              var target = r[code[pc + 2]];
+              var cache = (Obj.InlineCache) k[code[pc + 3]];
+              if(target instanceof Obj o) {
+                var descriptor = cache.lookup(o.cls);
+                r[code[pc + 1]] = descriptor instanceof Obj.MethodDescriptor ? o : descriptor.get(o);
+              } else {
+                r[code[pc + 1]] = cache.get(target);
+              }
+            }
+            case Op.CALL_METHOD -> {
+              var fn = r[code[pc + 2]];
+              var target = r[code[pc + 3]];
+              var first = code[pc + 5];
+              var count = code[pc + 6];
+              var shape = code[pc + 7] < 0 ? null : (Runtime.CallShape) k[code[pc + 7]];
+              // objects aren't callable, so `LOAD_METHOD` leaves the receiver itself in place of a method
+              if(fn == target && target instanceof Obj o && ((Obj.InlineCache) k[code[pc + 4]]).peek(o.cls) instanceof Obj.MethodDescriptor method) {
+                if(method instanceof Method m) {
+                  frame.pc = pc + 8;
+                  frame = enter(m.code, m.env, o, r, first, count, shape, frame, code[pc + 1]);
+                  code = frame.code.code; k = frame.code.constants; r = frame.registers; pc = 0;
+                  continue;
+                }
+                r[code[pc + 1]] = method.invoke(o, values(r, first, count), shape);
+              } else if(fn instanceof Closure closure) {
+                frame.pc = pc + 8;
+                frame = enter(closure.code, closure.env, closure.this_obj, r, first, count, shape, frame, code[pc + 1]);
+                code = frame.code.code; k = frame.code.constants; r = frame.registers; pc = 0;
+                continue;
+              } else {
+                r[code[pc + 1]] = Interpreter.call(fn, values(r, first, count), shape);
+              }
+            }
+            case Op.GET_ITEM -> r[code[pc + 1]] = r[code[pc + 2]].get_item(r[code[pc + 3]]);
+            case Op.SET_ITEM -> r[code[pc + 1]].set_item(r[code[pc + 2]], r[code[pc + 3]]);
+            case Op.CALL -> {
+              var fn = r[code[pc + 2]];
+              var first = code[pc + 3];
+              var count = code[pc + 4];
+              var shape = code[pc + 5] < 0 ? null : (Runtime.CallShape) k[code[pc + 5]];
+              if(fn instanceof Closure closure) {
+                frame.pc = pc + 6;
+                frame = enter(closure.code, closure.env, closure.this_obj, r, first, count, shape, frame, code[pc + 1]);
+                code = frame.code.code; k = frame.code.constants; r = frame.registers; pc = 0;
+                continue;
+              }
+              r[code[pc + 1]] = Interpreter.call(fn, values(r, first, count), shape);
+            }
+            case Op.LIST -> r[code[pc + 1]] = new List(values(r, code[pc + 2], code[pc + 3]));
+            case Op.VECTOR -> r[code[pc + 1]] = Vector.make(values(r, code[pc + 2], code[pc + 3]));
+            case Op.INDEX -> r[code[pc + 1]] = index(r, code[pc + 2], code[pc + 3]);
+            case Op.DICT -> r[code[pc + 1]] = dict(r, code[pc + 2], code[pc + 3]);
+            case Op.RECORD -> r[code[pc + 1]] = record(r, code[pc + 2], (String[]) k[code[pc + 4]]);
+            case Op.FUNCTION -> r[code[pc + 1]] = new Closure((Code) k[code[pc + 2]], frame.env, null);
+            case Op.CLASS -> r[code[pc + 1]] = cls((Code.ClassCode) k[code[pc + 2]], frame.env);
+            case Op.ENTER -> frame.env = new Scope(frame.env, frame.this_obj, false, true, code[pc + 1]);
+            case Op.LEAVE -> frame.env = frame.env.parent();
+            case Op.RETURN -> {
+              var value = r[code[pc + 1]];
+              if(frame == entry) { return value; }
+              var result = frame.result;
+              frame = frame.caller;
+              code = frame.code.code; k = frame.code.constants; r = frame.registers; pc = frame.pc;
+              r[result] = value;
+              continue;
+            }
+            case Op.THROW -> throw new Control.Exception(r[code[pc + 1]]);
+            case Op.TRY -> frame.handlers = new Handler(code[pc + 1], code[pc + 2], frame.env, frame.handlers);
+            case Op.END_TRY -> frame.handlers = frame.handlers.next();
+            case Op.ITER -> r[code[pc + 1]] = new Iter(Runtime.iter(r[code[pc + 2]]));
+            case Op.NEXT -> {
+              var it = ((Iter) r[code[pc + 1]]).it;
+              if(!it.hasNext()) { pc = code[pc + 3]; continue; }
+              r[code[pc + 2]] = it.next();
+            }
+            case Op.PRINT -> frame.env.interpreter().out.println(r[code[pc + 1]]);
+            case Op.ERROR -> throw new InterpreterError((String) k[code[pc + 1]]);
+            case Op.NOT_IMPLEMENTED -> throw new Interpreter.NotImplemented((String) k[code[pc + 1]]);
+            default -> throw new IllegalStateException("invalid opcode " + op);
+          }
+          pc += Op.OPERANDS[op] + 1;
+        }
+      } catch(Control.Exception e) {
+        // unwind to the innermost `try`, but not past the frame this `run` was entered with
+        while(frame.handlers == null) {
+          if(frame == entry) { throw e; }
+          frame = frame.caller;
+        }
+        var handler = frame.handlers;
+        frame.handlers = handler.next();
+        frame.env = handler.env();
+        code = frame.code.code; k = frame.code.constants; r = frame.registers; pc = handler.pc();
+        r[handler.exception()] = e.value;
+      }
+    }
+  }
+}
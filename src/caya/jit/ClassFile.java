@@ -0,0 +1,160 @@
+package caya.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// Just enough of the JVM class file format for `Codegen`. Classes are emitted as version 49 (Java 5) so that the
+// verifier infers stack maps itself and we don't have to compute `StackMapTable` frames.
+final class ClassFile {
+  static final int ACC_PUBLIC = 0x0001, ACC_PRIVATE = 0x0002, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+  // opcodes
+  static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, ALOAD = 0x19, AALOAD = 0x32,
+    ASTORE = 0x3a, AASTORE = 0x53, POP = 0x57, DUP = 0x59, IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c,
+    IFGT = 0x9d, IFLE = 0x9e, GOTO = 0xa7, ARETURN = 0xb0, RETURN = 0xb1, GETSTATIC = 0xb2, GETFIELD = 0xb4,
+    PUTFIELD = 0xb5, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, INVOKEINTERFACE = 0xb9,
+    ANEWARRAY = 0xbd, CHECKCAST = 0xc0;
+
+  private final ByteArrayOutputStream pool_bytes = new ByteArrayOutputStream();
+  private final DataOutputStream pool = new DataOutputStream(pool_bytes);
+  private final HashMap<String, Integer> entries = new HashMap<>();
+  private int pool_size = 1;
+  private final ArrayList<byte[]> fields = new ArrayList<>();
+  private final ArrayList<byte[]> methods = new ArrayList<>();
+
+  private int entry(String key, int tag, IOWriter writer) {
+    var index = entries.get(key);
+    if(index != null) { return index; }
+    try {
+      pool.writeByte(tag);
+      writer.write(pool);
+    } catch(IOException e) { throw new IllegalStateException(e); }
+    entries.put(key, pool_size);
+    return pool_size++;
+  }
+
+  private interface IOWriter { void write(DataOutputStream out) throws IOException; }
+
+  int utf8(String s) { return entry("U" + s, 1, out -> out.writeUTF(s)); }
+  int cls(String name) { var n = utf8(name); return entry("C" + name, 7, out -> out.writeShort(n)); }
+  int name_and_type(String name, String desc) {
+    var n = utf8(name); var d = utf8(desc);
+    return entry("N" + name + ":" + desc, 12, out -> { out.writeShort(n); out.writeShort(d); });
+  }
+  private int member(int tag, String owner, String name, String desc) {
+    var c = cls(owner); var nt = name_and_type(name, desc);
+    return entry(tag + owner + "." + name + ":" + desc, tag, out -> { out.writeShort(c); out.writeShort(nt); });
+  }
+  int field(String owner, String name, String desc) { return member(9, owner, name, desc); }
+  int method(String owner, String name, String desc) { return member(10, owner, name, desc); }
+  int interface_method(String owner, String name, String desc) { return member(11, owner, name, desc); }
+
+  void add_field(int access, String name, String desc) {
+    var out = new ByteArrayOutputStream();
+    var data = new DataOutputStream(out);
+    try {
+      data.writeShort(access); data.writeShort(utf8(name)); data.writeShort(utf8(desc)); data.writeShort(0);
+    } catch(IOException e) { throw new IllegalStateException(e); }
+    fields.add(out.toByteArray());
+  }
+
+  void add_method(int access, String name, String desc, Code code) {
+    var out = new ByteArrayOutputStream();
+    var data = new DataOutputStream(out);
+    try {
+      var bytes = code.bytes();
+      data.writeShort(access); data.writeShort(utf8(name)); data.writeShort(utf8(desc));
+      data.writeShort(1);
+      data.writeShort(utf8("Code"));
+      data.writeInt(2 + 2 + 4 + bytes.length + 2 + 2);
+      data.writeShort(code.max_stack); data.writeShort(code.max_locals);
+      data.writeInt(bytes.length); data.write(bytes);
+      data.writeShort(0); data.writeShort(0);
+    } catch(IOException e) { throw new IllegalStateException(e); }
+    methods.add(out.toByteArray());
+  }
+
+  byte[] build(String name, String super_name, String... interfaces) {
+    var this_index = cls(name);
+    var super_index = cls(super_name);
+    var interface_indices = new int[interfaces.length];
+    for(var i = 0; i < interfaces.length; i++) { interface_indices[i] = cls(interfaces[i]); }
+    var out = new ByteArrayOutputStream();
+    var data = new DataOutputStream(out);
+    try {
+      data.writeInt(0xCAFEBABE); data.writeShort(0); data.writeShort(49);
+      data.writeShort(pool_size); data.write(pool_bytes.toByteArray());
+      data.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+      data.writeShort(this_index); data.writeShort(super_index);
+      data.writeShort(interfaces.length);
+      for(var i : interface_indices) { data.writeShort(i); }
+      data.writeShort(fields.size());
+      for(var f : fields) { data.write(f); }
+      data.writeShort(methods.size());
+      for(var m : methods) { data.write(m); }
+      data.writeShort(0);
+    } catch(IOException e) { throw new IllegalStateException(e); }
+    return out.toByteArray();
+  }
+
+  // bytecode of a single method; tracks the operand stack depth as instructions are emitted
+  static final class Code {
+    private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+    private final ArrayList<int[]> fixups = new ArrayList<>();     // [position of the branch, label]
+    private final ArrayList<Integer> labels = new ArrayList<>();
+    int stack = 0, max_stack = 0, max_locals;
+
+    Code(int locals) { this.max_locals = locals; }
+
+    int position() { return code.size(); }
+
+    void adjust(int delta) {
+      stack += delta;
+      assert stack >= 0;
+      max_stack = Math.max(max_stack, stack);
+    }
+
+    void op(int opcode, int delta) { code.write(opcode); adjust(delta); }
+    void op_u1(int opcode, int operand, int delta) { code.write(opcode); code.write(operand); adjust(delta); }
+    void op_u2(int opcode, int operand, int delta) { code.write(opcode); code.write(operand >> 8); code.write(operand); adjust(delta); }
+
+    void aload(int local) { op_u1(ALOAD, local, 1); }
+    void astore(int local) { op_u1(ASTORE, local, -1); }
+    int local() { return max_locals++; }
+
+    void push_int(int value) {
+      if(value >= -1 && value <= 5) { op(ICONST_0 + value, 1); }
+      else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) { op_u1(BIPUSH, value & 0xff, 1); }
+      else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) { op_u2(SIPUSH, value & 0xffff, 1); }
+      else { throw new Codegen.Unsupported("constant " + value); }
+    }
+
+    void invokeinterface(int index, int args, int delta) {
+      code.write(INVOKEINTERFACE); code.write(index >> 8); code.write(index); code.write(args + 1); code.write(0);
+      adjust(delta);
+    }
+
+    int label() { labels.add(-1); return labels.size() - 1; }
+    void mark(int label) { labels.set(label, code.size()); }
+
+    void jump(int opcode, int label) {
+      fixups.add(new int[] {code.size(), label});
+      code.write(opcode); code.write(0); code.write(0);
+      adjust(opcode == GOTO ? 0 : -1);
+    }
+
+    byte[] bytes() {
+      var bytes = code.toByteArray();
+      if(bytes.length > Short.MAX_VALUE) { throw new Codegen.Unsupported("method too large"); }
+      for(var fixup : fixups) {
+        var offset = labels.get(fixup[1]) - fixup[0];
+        bytes[fixup[0] + 1] = (byte) (offset >> 8);
+        bytes[fixup[0] + 2] = (byte) offset;
+      }
+      return bytes;
+    }
+  }
+}
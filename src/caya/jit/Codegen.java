@@ -0,0 +1,352 @@
+package caya.jit;
+
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import caya.Node;
+import caya.Obj;
+import caya.Builtins.*;
+import static caya.jit.ClassFile.*;
+
+// Generates a class implementing `JIT.Compiled` for a (resolved) function body. The supported subset is int
+// arithmetic, comparisons, conditionals, loops, local variables and positional calls; any other expression is handed
+// back to the tree-walking interpreter (`Scope.eval`) unless it could `break` out of a compiled loop.
+final class Codegen {
+  static final class Unsupported extends RuntimeException {
+    Unsupported(String reason) { super(reason, null, false, false); }
+  }
+
+  private static final String VALUE = "caya/Runtime$Value", SCOPE = "caya/Interpreter$Scope", JIT_CLASS = "caya/jit/JIT";
+  private static final String V = "L" + VALUE + ";", S = "L" + SCOPE + ";";
+  private static final int THIS = 0, SCOPE_LOCAL = 1, CONSTANTS = 2;
+
+  private record Loop(int start, int end, int scopes, int stack) {}
+
+  private final ClassFile cf = new ClassFile();
+  private final ArrayList<Object> constants = new ArrayList<>();
+  private final ArrayDeque<Loop> loops = new ArrayDeque<>();
+  private ClassFile.Code c;
+  private int scopes = 0;     // scopes entered (and not yet left) by the generated code
+
+  Object[] constants() { return constants.toArray(); }
+
+  byte[] compile(String name, Node body) {
+    var init = new ClassFile.Code(2);
+    init.aload(0);
+    init.op_u2(INVOKESPECIAL, cf.method("java/lang/Object", "<init>", "()V"), -1);
+    init.aload(0);
+    init.aload(1);
+    init.op_u2(PUTFIELD, cf.field(name, "k", "[Ljava/lang/Object;"), -2);
+    init.op(RETURN, 0);
+
+    c = new ClassFile.Code(3);
+    c.aload(THIS);
+    c.op_u2(GETFIELD, cf.field(name, "k", "[Ljava/lang/Object;"), 0);
+    c.astore(CONSTANTS);
+    expr(body);
+    c.op(ARETURN, -1);
+
+    cf.add_field(ACC_PRIVATE | ACC_FINAL, "k", "[Ljava/lang/Object;");
+    cf.add_method(ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V", init);
+    cf.add_method(ACC_PUBLIC, "run", "(" + S + ")" + V, c);
+    return cf.build(name, "java/lang/Object", "caya/jit/JIT$Compiled");
+  }
+
+  private void constant(Object value, String type) {
+    constants.add(value);
+    c.aload(CONSTANTS);
+    c.push_int(constants.size() - 1);
+    c.op(AALOAD, -1);
+    c.op_u2(CHECKCAST, cf.cls(type), 0);
+  }
+
+  private void builtin(String name) { c.op_u2(GETSTATIC, cf.field("caya/Builtins", name, name.equals("NONE") ? "Lcaya/Builtins$None;" : "Lcaya/Builtins$Bool;"), 1); }
+  private void helper(String name, String desc, int delta) { c.op_u2(INVOKESTATIC, cf.method(JIT_CLASS, name, desc), delta); }
+  private void scope(String name, String desc, int delta) { c.op_u2(INVOKEVIRTUAL, cf.method(SCOPE, name, desc), delta); }
+
+  private void enter(boolean loop, int size) {
+    c.aload(SCOPE_LOCAL);
+    c.push_int(loop ? 1 : 0);
+    c.push_int(size);
+    helper("enter", "(" + S + "ZI)" + S, -2);
+    c.astore(SCOPE_LOCAL);
+    scopes += 1;
+  }
+
+  private void leave() {
+    c.aload(SCOPE_LOCAL);
+    scope("parent", "()" + S, 0);
+    c.astore(SCOPE_LOCAL);
+    scopes -= 1;
+  }
+
+  private void leave_to(int depth) {
+    for(var i = depth; i < scopes; i++) {
+      c.aload(SCOPE_LOCAL);
+      scope("parent", "()" + S, 0);
+      c.astore(SCOPE_LOCAL);
+    }
+  }
+
+  private void truthy() { helper("truthy", "(" + V + ")Z", 0); }
+
+  private void block(Node.Block block, boolean loop) {
+    enter(loop, block.size());
+    if(block.exprs().isEmpty()) { builtin("NONE"); }
+    for(var i = 0; i < block.exprs().size(); i++) {
+      if(i > 0) { c.op(POP, -1); }
+      expr(block.exprs().get(i));
+    }
+    leave();
+  }
+
+  private void condition(Node cond, int else_label) {
+    expr(cond);
+    truthy();
+    c.jump(IFEQ, else_label);
+  }
+
+  private void expr(Node n) {
+    switch(n) {
+      case Node.Int(_, var value) -> constant(Int.of(value), "caya/Builtins$Int");
+      case Node.Str(_, var value) -> constant(new Str(value), "caya/Builtins$Str");
+      case Node.Atom(_, var value) -> constant(value, "caya/Builtins$Atom");
+      case Node.None(_) -> builtin("NONE");
+      case Node.Bool(_, var value) -> builtin(value ? "TRUE" : "FALSE");
+      case Node.Const(_, var value) -> constant(value, VALUE);
+      case Node.Ident(_, var name) -> {
+        c.aload(SCOPE_LOCAL);
+        constant(name, "java/lang/String");
+        scope("lookup", "(Ljava/lang/String;)" + V, -1);
+      }
+      case Node.Local local -> {
+        c.aload(SCOPE_LOCAL);
+        c.push_int(local.depth());
+        c.push_int(local.index());
+        constant(local, "caya/Node$Local");
+        helper("local", "(" + S + "IILcaya/Node$Local;)" + V, -3);
+      }
+      case Node.Block block -> block(block, false);
+      case Node.Body(_, var body, _) -> expr(body);
+      case Node.Assign(_, var target, var value) when target instanceof Node.Local || target instanceof Node.Ident -> {
+        c.aload(SCOPE_LOCAL);
+        constant(target, "caya/Node");
+        expr(value);
+        scope("assign", "(Lcaya/Node;" + V + ")V", -3);
+        builtin("NONE");
+      }
+      case Node.VarAssign(_, var target, var value) when target instanceof Node.Local || target instanceof Node.Ident -> {
+        c.aload(SCOPE_LOCAL);
+        constant(target, "caya/Node");
+        expr(value);
+        scope("declare", "(Lcaya/Node;" + V + ")V", -3);
+        builtin("NONE");
+      }
+      case Node.Unary(_, Node.Ident(_, var op), var expr) when op.equals("-") -> {
+        expr(expr);
+        helper("neg", "(" + V + ")" + V, 0);
+      }
+      case Node.Binary(_, Node.Ident(_, var op), var left, var right) when op.equals("+") || op.equals("-") || op.equals("*") -> {
+        expr(left);
+        expr(right);
+        helper(op.equals("+") ? "add" : op.equals("-") ? "sub" : "mul", "(" + V + V + ")" + V, -1);
+      }
+      case Node.Not(_, var expr) -> {
+        expr(expr);
+        helper("not", "(" + V + ")" + V, 0);
+      }
+      case Node.And(_, var exprs) -> {
+        var false_label = c.label();
+        var end = c.label();
+        for(var expr : exprs) { condition(expr, false_label); }
+        builtin("TRUE");
+        c.jump(GOTO, end);
+        c.adjust(-1);
+        c.mark(false_label);
+        builtin("FALSE");
+        c.mark(end);
+      }
+      case Node.Or(_, var exprs) -> {
+        var true_label = c.label();
+        var end = c.label();
+        for(var expr : exprs) {
+          expr(expr);
+          truthy();
+          c.jump(IFNE, true_label);
+        }
+        builtin("FALSE");
+        c.jump(GOTO, end);
+        c.adjust(-1);
+        c.mark(true_label);
+        builtin("TRUE");
+        c.mark(end);
+      }
+      case Node.Cmp(_, var items) when items.size() >= 3 && items.size() % 2 == 1 -> {
+        var left = c.local();
+        var right = c.local();
+        var false_label = c.label();
+        var end = c.label();
+        expr(items.get(0));
+        helper("integer", "(" + V + ")" + V, 0);
+        c.astore(left);
+        for(var i = 1; i < items.size(); i += 2) {
+          var jump = switch(items.get(i)) {
+            case Node.Ident(_, var op) -> switch(op) {
+              case "<" -> IFGE;
+              case ">" -> IFLE;
+              case "<=" -> IFGT;
+              case ">=" -> IFLT;
+              case "!=" -> IFEQ;
+              case "==" -> IFNE;
+              default -> throw new Unsupported("comparison " + op);
+            };
+            default -> throw new Unsupported(Node.show(items.get(i)));
+          };
+          expr(items.get(i + 1));
+          helper("integer", "(" + V + ")" + V, 0);
+          c.astore(right);
+          c.aload(left);
+          c.aload(right);
+          helper("compare", "(" + V + V + ")I", -1);
+          c.jump(jump, false_label);
+          c.aload(right);
+          c.astore(left);
+        }
+        builtin("TRUE");
+        c.jump(GOTO, end);
+        c.adjust(-1);
+        c.mark(false_label);
+        builtin("FALSE");
+        c.mark(end);
+      }
+      case Node.If(_, var cond, var then) -> if_else(cond, then, null);
+      case Node.IfElse(_, var cond, var then, var else_) -> if_else(cond, then, else_);
+      case Node.While(_, var cond, var body) -> {
+        if(!(body instanceof Node.Block block)) { throw new Unsupported("loop body " + Node.show(body)); }
+        var loop = new Loop(c.label(), c.label(), scopes, c.stack);
+        c.mark(loop.start());
+        condition(cond, loop.end());
+        loops.push(loop);
+        block(block, true);
+        loops.pop();
+        c.op(POP, -1);
+        c.jump(GOTO, loop.start());
+        c.mark(loop.end());
+        builtin("NONE");
+      }
+      case Node.For(_, Node.Ident _, var items, var body) -> {
+        var iterator = c.local();
+        expr(items);
+        helper("iter", "(" + V + ")Ljava/util/Iterator;", 0);
+        c.astore(iterator);
+        var loop = new Loop(c.label(), c.label(), scopes, c.stack);
+        c.mark(loop.start());
+        c.aload(iterator);
+        c.invokeinterface(cf.interface_method("java/util/Iterator", "hasNext", "()Z"), 0, 0);
+        c.jump(IFEQ, loop.end());
+        enter(true, 1);
+        c.aload(SCOPE_LOCAL);
+        c.op_u2(GETFIELD, cf.field(SCOPE, "slots", "[" + V), 0);
+        c.push_int(0);
+        c.aload(iterator);
+        c.invokeinterface(cf.interface_method("java/util/Iterator", "next", "()Ljava/lang/Object;"), 0, 0);
+        c.op_u2(CHECKCAST, cf.cls(VALUE), 0);
+        c.op(AASTORE, -3);
+        loops.push(loop);
+        expr(body);
+        loops.pop();
+        c.op(POP, -1);
+        leave();
+        c.jump(GOTO, loop.start());
+        c.mark(loop.end());
+        builtin("NONE");
+      }
+      case Node.Break(_) -> jump_out(true);
+      case Node.Continue(_) -> jump_out(false);
+      case Node.Return(_, var value) -> {
+        if(value == null) { builtin("NONE"); } else { expr(value); }
+        c.op(ARETURN, -1);
+        c.adjust(1);    // unreachable, but the enclosing expression expects a value
+      }
+      case Node.Attr(_, var obj, var attr) -> {
+        constant(new Obj.InlineCache(attr), "caya/Obj$InlineCache");
+        expr(obj);
+        c.op_u2(INVOKEVIRTUAL, cf.method("caya/Obj$InlineCache", "get", "(" + V + ")" + V), -1);
+      }
+      case Node.Item(_, var obj, var items) when items.size() == 1 -> {
+        expr(obj);
+        expr(items.get(0));
+        c.op_u2(INVOKEVIRTUAL, cf.method(VALUE, "get_item", "(" + V + ")" + V), -1);
+      }
+      case Node.Invoke(_, var fn, var args, var shape, var tail) when shape == null -> {
+        expr(fn);
+        c.push_int(args.size());
+        c.op_u2(ANEWARRAY, cf.cls(VALUE), 0);
+        for(var i = 0; i < args.size(); i++) {
+          c.op(DUP, 1);
+          c.push_int(i);
+          expr(args.get(i));
+          c.op(AASTORE, -3);
+        }
+        if(tail) {
+          helper("tail_call", "(" + V + "[" + V + ")" + V, -1);
+        } else {
+          c.op(ACONST_NULL, 1);
+          c.op_u2(INVOKEVIRTUAL, cf.method(VALUE, "call", "([" + V + "Ljava/util/Map;)" + V), -2);
+        }
+      }
+      default -> fallback(n);
+    }
+  }
+
+  private void if_else(Node cond, Node then, Node else_) {
+    var else_label = c.label();
+    var end = c.label();
+    condition(cond, else_label);
+    expr(then);
+    c.jump(GOTO, end);
+    c.adjust(-1);
+    c.mark(else_label);
+    if(else_ == null) { builtin("NONE"); } else { expr(else_); }
+    c.mark(end);
+  }
+
+  private void jump_out(boolean is_break) {
+    var loop = loops.peek();
+    if(loop == null) {
+      constant(is_break ? "`break` not in loop" : "`continue` not in loop", "java/lang/String");
+      helper("error", "(Ljava/lang/String;)" + V, 0);
+      return;
+    }
+    if(c.stack != loop.stack()) { throw new Unsupported("jump out of an expression"); }
+    leave_to(loop.scopes());
+    c.jump(GOTO, is_break ? loop.end() : loop.start());
+    c.adjust(1);    // unreachable, but the enclosing expression expects a value
+  }
+
+  private void fallback(Node n) {
+    if(!loops.isEmpty() && jumps(n)) { throw new Unsupported("`break` or `continue` in " + Node.show(n)); }
+    c.aload(SCOPE_LOCAL);
+    constant(n, "caya/Node");
+    scope("eval", "(Lcaya/Node;)" + V, -1);
+  }
+
+  // whether `n` contains a `break` or `continue`
+  private static boolean jumps(Object n) {
+    return switch(n) {
+      case Node.Break _, Node.Continue _ -> true;
+      case Node node -> {
+        for(RecordComponent component : node.getClass().getRecordComponents()) {
+          try {
+            if(jumps(component.getAccessor().invoke(node))) { yield true; }
+          } catch(ReflectiveOperationException e) { throw new IllegalStateException(e); }
+        }
+        yield false;
+      }
+      case List<?> list -> list.stream().anyMatch(Codegen::jumps);
+      case null, default -> false;
+    };
+  }
+}
@@ -0,0 +1,109 @@
+package caya.jit;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import caya.Interpreter.InterpreterError;
+import caya.Interpreter.Scope;
+import caya.Node;
+import caya.Runtime.Value;
+import static caya.Builtins.*;
+import static caya.Interpreter.to_bool;
+import static caya.Interpreter.to_int;
+
+// Compiles the bodies of hot functions (see `Interpreter.eval_function`) to hidden JVM classes, so that HotSpot can
+// optimize them like any other Java code. Bodies that can't be compiled keep being interpreted.
+public final class JIT {
+  // number of calls before a body is compiled; 0 compiles on the first call, negative disables the JIT
+  public static int threshold = 1000;
+  public static Path dump = null;     // directory to write the generated class files to
+
+  public interface Compiled {
+    Value run(Scope scope);
+  }
+
+  // profile of a function body, created by `Resolver` and shared by all closures created from the body (see `Node.Body`)
+  public static final class Entry {
+    int calls = 0;
+    boolean failed = false;
+    Compiled compiled = null;
+  }
+
+  private static final AtomicInteger classes = new AtomicInteger();     // numbers the dumped class files
+
+  // the profile of `body`; bodies that weren't resolved (e.g. constructors of classes) get one of their own
+  public static Entry entry(Node body) { return body instanceof Node.Body b ? b.jit() : new Entry(); }
+
+  // the compiled `body`, or `null` if it should be interpreted
+  public static Compiled compiled(Entry entry, Node body) {
+    if(entry.compiled != null || entry.failed || threshold < 0) { return entry.compiled; }
+    if(entry.calls++ < threshold) { return null; }
+    try {
+      entry.compiled = compile(body);
+    } catch(Codegen.Unsupported e) {
+      entry.failed = true;
+    }
+    return entry.compiled;
+  }
+
+  private static Compiled compile(Node body) {
+    var name = "caya/jit/Compiled";
+    var codegen = new Codegen();
+    var bytes = codegen.compile(name, body);
+    if(dump != null) {
+      var file = dump.resolve("Compiled" + classes.getAndIncrement() + ".class");
+      try {
+        Files.createDirectories(dump);
+        Files.write(file, bytes);
+      } catch(IOException e) {
+        System.err.println("cannot dump JIT class " + file + ": " + e);
+      }
+    }
+    MethodHandle constructor;
+    try {
+      var lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+      constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class, Object[].class));
+    } catch(VerifyError | ClassFormatError e) {
+      // generated code that the JVM rejects is interpreted instead
+      throw new Codegen.Unsupported(e.toString());
+    } catch(ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+    try {
+      return (Compiled) constructor.invoke(codegen.constants());
+    } catch(RuntimeException | Error e) {
+      throw e;
+    } catch(Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // runtime support, called from generated code
+
+  public static Value local(Scope scope, int depth, int index, Node.Local local) {
+    var value = scope.frame(depth).slots[index];
+    return value != null ? value : scope.load(local);
+  }
+
+  public static Scope enter(Scope scope, boolean loop, int size) {
+    return new Scope(scope, scope.this_obj(), loop || scope.in_loop(), scope.in_fn(), size);
+  }
+
+  public static Value add(Value a, Value b) { return to_int(a).add(to_int(b)); }
+  public static Value sub(Value a, Value b) { return to_int(a).subtract(to_int(b)); }
+  public static Value mul(Value a, Value b) { return to_int(a).multiply(to_int(b)); }
+  public static Value neg(Value a) { return to_int(a).negate(); }
+  public static Value not(Value a) { return to_bool(a) ? FALSE : TRUE; }
+  public static boolean truthy(Value a) { return to_bool(a); }
+  public static Value integer(Value a) { to_int(a); return a; }
+  public static int compare(Value a, Value b) { return to_int(a).compareTo(to_int(b)); }
+  public static Iterator<Value> iter(Value items) { return caya.Runtime.iter(items); }
+  public static Value tail_call(Value fn, Value[] args) { return caya.Interpreter.tail_call(fn, args, null); }
+  public static Value error(String message) { throw new InterpreterError(message); }
+}
@@ -0,0 +1,111 @@
+package caya;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class ChampTest {
+  // keys with few distinct hashes, to exercise collision nodes
+  private record Key(int id, int hash) {
+    @Override public int hashCode() { return hash; }
+    @Override public boolean equals(Object other) { return other instanceof Key k && k.id == id; }
+  }
+
+  private static Stream<Integer> sizes() { return Stream.of(0, 1, 2, 31, 33, 100, 1000, 20000); }
+
+  private static ArrayList<Key> keys(int size, Random random) {
+    var keys = new ArrayList<Key>();
+    for(var i = 0; i < size; i++) { keys.add(new Key(i, i % 7 == 0 ? i % 3 : random.nextInt())); }
+    return keys;
+  }
+
+  private static <K, V> HashMap<K, V> contents(Champ<K, V> map) {
+    var result = new HashMap<K, V>();
+    map.for_each(result::put);
+    return result;
+  }
+
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_updated(int size) {
+    var random = new Random(size);
+    var keys = keys(size, random);
+    var expected = new HashMap<Key, Integer>();
+    var map = Champ.<Key, Integer>empty();
+    for(var i = 0; i < 3 * size; i++) {
+      var key = keys.get(random.nextInt(size));
+      map = map.updated(key, i);
+      expected.put(key, i);
+    }
+    assertEquals(expected.size(), map.size());
+    assertEquals(expected, contents(map));
+    for(var key : keys) { assertEquals(expected.get(key), map.get(key)); }
+    assertNull(map.get(new Key(-1, 0)));
+  }
+
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_builder(int size) {
+    var random = new Random(size);
+    var keys = keys(size, random);
+    var builder = new Champ.Builder<Key, Integer>();
+    var persistent = Champ.<Key, Integer>empty();
+    for(var key : keys) { builder.put(key, key.id()); persistent = persistent.updated(key, key.id()); }
+    var built = builder.build();
+    assertEquals(persistent, built);
+    assertEquals(persistent.hashCode(), built.hashCode());
+    // a built map is not changed by the builder or by building from it
+    builder.put(new Key(-1, 1), 0);
+    var extended = new Champ.Builder<>(built).put(new Key(-2, 2), 0).build();
+    assertEquals(contents(persistent), contents(built));
+    assertEquals(size + 1, extended.size());
+    assertEquals(size + 1, builder.build().size());
+  }
+
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_equals(int size) {
+    var random = new Random(size);
+    var keys = keys(size, random);
+    var a = Champ.<Key, Integer>empty();
+    for(var key : keys) { a = a.updated(key, key.id()); }
+    Collections.shuffle(keys, random);
+    var b = Champ.<Key, Integer>empty();
+    for(var key : keys) { b = b.updated(key, key.id()); }
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    if(size > 0) {
+      assertNotEquals(a, b.updated(keys.get(0), -1));
+      assertNotEquals(a, b.updated(new Key(-1, keys.get(0).hash()), 0));
+    }
+  }
+
+  // splitting covers every entry exactly once, both when split recursively by a parallel stream and when advancing
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_spliterator(int size) {
+    var random = new Random(size);
+    var map = Champ.<Key, Integer>empty();
+    for(var key : keys(size, random)) { map = map.updated(key, key.id()); }
+    var parallel = java.util.stream.StreamSupport.stream(map.spliterator((key, value) -> key), true).toList();
+    assertEquals(size, parallel.size());
+    assertEquals(contents(map).keySet(), new java.util.HashSet<>(parallel));
+    var parts = new ArrayList<java.util.Spliterator<Key>>(java.util.List.of(map.spliterator((key, value) -> key)));
+    for(var i = 0; i < 10; i++) {
+      var prefix = parts.get(i % parts.size()).trySplit();
+      if(prefix != null) { parts.add(prefix); }
+    }
+    var advanced = new ArrayList<Key>();
+    for(var part : parts) { while(part.tryAdvance(advanced::add)) {} }
+    assertEquals(size, advanced.size());
+    assertEquals(contents(map).keySet(), new java.util.HashSet<>(advanced));
+  }
+}
@@ -0,0 +1,58 @@
+package caya;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import caya.Builtins.Int;
+import caya.Runtime.Value;
+
+// Throughput of `Channel` between virtual threads, for one producer and one consumer (1:1), many producers and one
+// consumer (N:1) and one producer and many consumers (1:N), with a bounded and an unbounded channel.
+//
+//   java --enable-preview -cp <classpath> caya.ChannelBenchmark [messages] [tasks] [rounds]
+public class ChannelBenchmark {
+  static double measure(int capacity, int producers, int consumers, int messages, int rounds) throws Exception {
+    var best = Double.MAX_VALUE;
+    for(var round = 0; round < rounds; round++) {
+      var channel = new Channel(capacity);
+      var start = System.nanoTime();
+      try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        var sent = new ArrayList<Future<?>>();
+        for(var p = 0; p < producers; p++) {
+          var count = messages / producers + (p < messages % producers ? 1 : 0);
+          sent.add(executor.submit(() -> {
+            for(var i = 0; i < count; i++) { channel.send(Int.of(i)); }
+          }));
+        }
+        var received = new ArrayList<Future<Integer>>();
+        for(var c = 0; c < consumers; c++) {
+          received.add(executor.submit(() -> {
+            var count = 0;
+            for(Value message = channel.receive(); message != Builtins.STOP; message = channel.receive()) { count += 1; }
+            return count;
+          }));
+        }
+        for(var future : sent) { future.get(); }
+        channel.close();
+        var total = 0;
+        for(var future : received) { total += future.get(); }
+        if(total != messages) { throw new AssertionError("received " + total + " of " + messages + " messages"); }
+      }
+      best = Math.min(best, (System.nanoTime() - start) / 1e9);
+    }
+    return messages / best;
+  }
+
+  public static void main(String[] args) throws Exception {
+    var messages = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    var tasks = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    var rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+    for(var capacity : new int[] {1024, -1}) {
+      var name = capacity < 0 ? "unbounded" : "bounded(" + capacity + ")";
+      System.out.printf("%-14s 1:1  %8.2f M msgs/s%n", name, measure(capacity, 1, 1, messages, rounds) / 1e6);
+      System.out.printf("%-14s N:1  %8.2f M msgs/s%n", name, measure(capacity, tasks, 1, messages, rounds) / 1e6);
+      System.out.printf("%-14s 1:N  %8.2f M msgs/s%n", name, measure(capacity, 1, tasks, messages, rounds) / 1e6);
+    }
+  }
+}
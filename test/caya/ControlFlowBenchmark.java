@@ -0,0 +1,39 @@
+package caya;
+
+// Microbenchmark for non-local control flow: a recursive function that leaves through `return` from inside nested
+// blocks and loops, compared with an equivalent function whose body simply evaluates to the result.
+//
+//   java --enable-preview -cp <classpath> caya.ControlFlowBenchmark [rounds]
+public class ControlFlowBenchmark {
+  static final String RETURNING = """
+    fn f(n) { while true { for i in [0] { if n < 1 { return 0 } return f(n - 1) + 1 } } }
+    fn run() { var i = 0; while i < 1000 { f(50); i = i + 1 } }
+    run
+    """;
+  static final String FALLING = """
+    fn f(n) { if n < 1 then 0 else f(n - 1) + 1 }
+    fn run() { var i = 0; while i < 1000 { f(50); i = i + 1 } }
+    run
+    """;
+
+  static double measure(String code, int rounds) {
+    var run = Interpreter.eval(ParserHelper.parse(code));
+    var best = Double.MAX_VALUE;
+    for(var i = 0; i < rounds; i++) {
+      var start = System.nanoTime();
+      run.call(new Runtime.Value[0], null);
+      best = Math.min(best, (System.nanoTime() - start) / 1e6);
+    }
+    return best;
+  }
+
+  public static void main(String[] args) {
+    var rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    caya.jit.JIT.threshold = -1;
+    var returning = measure(RETURNING, rounds);
+    var falling = measure(FALLING, rounds);
+    System.out.printf("return:      %8.2f ms%n", returning);
+    System.out.printf("fall-through: %7.2f ms%n", falling);
+    System.out.printf("ratio:       %8.2fx%n", returning / falling);
+  }
+}
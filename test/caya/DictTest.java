@@ -0,0 +1,72 @@
+package caya;
+
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import caya.Builtins.Dict;
+import caya.Builtins.Int;
+import caya.Builtins.Str;
+import caya.Runtime.Value;
+import static caya.Builtins.NONE;
+
+public class DictTest {
+  private static Stream<Integer> sizes() { return Stream.of(1, 5, 6, 100, 200, 30000, 100000); }
+
+  private static String show(LinkedHashMap<Value, Value> expected) {
+    var s = new StringBuilder("!{");
+    expected.forEach((key, value) -> s.append(s.length() > 2 ? ", " : "").append(key).append('=').append(value));
+    return s.append('}').toString();
+  }
+
+  // random updates and removals of keys in `0 .. size`, compared to a `LinkedHashMap`
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_operations(int size) {
+    var random = new Random(size);
+    var dict = new Dict();
+    var expected = new LinkedHashMap<Value, Value>();
+    for(var i = 0; i < 4 * size; i++) {
+      Value key = random.nextBoolean() ? Int.of(random.nextInt(size)) : new Str("k" + random.nextInt(size));
+      if(random.nextInt(3) == 0) {
+        var removed = expected.remove(key);
+        assertEquals(removed == null ? NONE : removed, dict.remove(key));
+      } else {
+        Value value = Int.of(i);
+        // a `LinkedHashMap` keeps the position of existing keys, like `Dict`
+        expected.put(key, value);
+        dict.set_item(key, value);
+      }
+    }
+    assertEquals(expected.size(), dict.size().int32());
+    assertEquals(show(expected), dict.toString());
+    for(var i = 0; i < size; i++) {
+      assertEquals(expected.get(Int.of(i)), dict.get_item(Int.of(i)));
+    }
+    assertNull(dict.get(Int.of(-1)));
+  }
+
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_equals(int size) {
+    var a = new Dict();
+    var b = new Dict();
+    for(var i = 0; i < size; i++) { a.set_item(Int.of(i), Int.of(i)); }
+    for(var i = size - 1; i >= 0; i--) { b.set_item(Int.of(i), Int.of(i)); }
+    b.set_item(new Str("x"), NONE);
+    assertNotEquals(a, b);
+    b.remove(new Str("x"));
+    assertEquals(a, b);
+    b.set_item(Int.of(0), NONE);
+    assertNotEquals(a, b);
+    a.clear();
+    assertEquals(0, a.size().int32());
+    assertEquals("!{}", a.toString());
+  }
+}
@@ -1,14 +1,21 @@
 package caya;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 import org.junit.jupiter.params.provider.MethodSource;
-import org.junit.jupiter.params.provider.ValueSource;
 
 public class InterpreterTest {
   @ParameterizedTest
@@ -17,6 +24,153 @@ public class InterpreterTest {
     assertEquals(expected, Interpreter.eval(Parser.parse(code)).toString());
   }
 
+  @ParameterizedTest
+  @MethodSource("ok")
+  void test_ok_jit(String code, String expected) {
+    var threshold = caya.jit.JIT.threshold;
+    caya.jit.JIT.threshold = 0;
+    try {
+      assertEquals(expected, Interpreter.eval(Parser.parse(code)).toString());
+    } finally {
+      caya.jit.JIT.threshold = threshold;
+    }
+  }
+
+  // deeper than the JVM stack allows without tail calls, which only the tree interpreter (and its JIT) implement
+  @ParameterizedTest
+  @MethodSource("tail_calls")
+  void test_tail_calls(String code, String expected) {
+    assertEquals(expected, Interpreter.eval(Parser.parse(code)).toString());
+    var threshold = caya.jit.JIT.threshold;
+    caya.jit.JIT.threshold = 0;
+    try {
+      assertEquals(expected, Interpreter.eval(Parser.parse(code)).toString());
+    } finally {
+      caya.jit.JIT.threshold = threshold;
+    }
+  }
+
+  private static Stream<Arguments> tail_calls() {
+    return Stream.of(
+      arguments("fn count(n, acc) { if n == 0 then acc else count(n - 1, acc + 1) }; count(1000000, 0)", "1000000"),
+      arguments("fn even(n) { if n == 0 { return true } return odd(n - 1) }; fn odd(n) { if n == 0 then false else even(n - 1) }; [even(300001), odd(300001)]", "[false, true]"),
+      arguments("fn f(n) { while true { for i in [1] { return if n == 0 then i else f(n - 1) } } }; f(300000)", "1"),
+      arguments("class C { fn down(n) { if n == 0 then 'done' else this.down(n - 1) } }; c = C(); c.down(300000)", "done")
+    );
+  }
+
+  @ParameterizedTest
+  @MethodSource("ok")
+  void test_ok_ast(String code, String expected) {
+    assertEquals(expected, caya.ast.Tree.eval(Parser.parse(code)).toString());
+  }
+
+  @ParameterizedTest
+  @MethodSource("ok")
+  void test_ok_vm(String code, String expected) {
+    assertEquals(expected, caya.bytecode.VM.eval(Parser.parse(code)).toString());
+  }
+
+  @ParameterizedTest
+  @MethodSource("ok")
+  void test_ok_unoptimized(String code, String expected) {
+    var level = Optimizer.level;
+    Optimizer.level = 0;
+    try {
+      assertEquals(expected, Interpreter.eval(Parser.parse(code)).toString());
+    } finally {
+      Optimizer.level = level;
+    }
+  }
+
+  // every `ok` program on every engine, a few times over, each in an isolate of its own on a virtual thread
+  @Test
+  void test_isolates() throws Exception {
+    var programs = ok().map(Arguments::get).toList();
+    var results = new ArrayList<Future<?>>();
+    try(var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for(var round = 0; round < 4; round++) {
+        for(var program : programs) {
+          for(var engine : Main.Engine.values()) {
+            results.add(executor.submit(() -> {
+              var isolate = new Interpreter(new PrintStream(OutputStream.nullOutputStream()));
+              var code = (String) program[0];
+              assertEquals(program[1], engine.eval(isolate.scope(), Parser.parse(code)).toString(), engine + ": " + code);
+              return null;
+            }));
+          }
+        }
+      }
+    }
+    for(var result : results) { result.get(); }
+  }
+
+  @Test
+  void test_isolation() {
+    var out = new ByteArrayOutputStream();
+    var a = new Interpreter(new PrintStream(out, true));
+    var b = new Interpreter(new PrintStream(OutputStream.nullOutputStream()));
+    a.run("list = 5; print(list + 1)");
+    assertEquals("6" + System.lineSeparator(), out.toString());
+    assertEquals("5", a.run("list").toString());
+    assertEquals("![1]", b.run("list(1)").toString());
+    assertEquals("![1]", Interpreter.eval(Parser.parse("list(1)")).toString());
+  }
+
+  // a JIT dump directory that can't be written to is reported, but doesn't turn the JIT off
+  @Test
+  void test_jit_dump() throws Exception {
+    var threshold = caya.jit.JIT.threshold;
+    var dump = caya.jit.JIT.dump;
+    var file = java.nio.file.Files.createTempFile("caya", ".txt");
+    var directory = java.nio.file.Files.createTempDirectory("caya");
+    caya.jit.JIT.threshold = 0;
+    try {
+      caya.jit.JIT.dump = file.resolve("classes");
+      assertEquals("55", Interpreter.eval(Parser.parse("fn fib(n) { if n < 2 then n else fib(n - 1) + fib(n - 2) }; fib(10)")).toString());
+      caya.jit.JIT.dump = directory;
+      assertEquals("55", Interpreter.eval(Parser.parse("fn fib(n) { if n < 2 then n else fib(n - 1) + fib(n - 2) }; fib(10)")).toString());
+      try(var files = java.nio.file.Files.list(directory)) { assertTrue(files.findAny().isPresent()); }
+    } finally {
+      caya.jit.JIT.threshold = threshold;
+      caya.jit.JIT.dump = dump;
+    }
+  }
+
+  // every engine raises the error of a repeated named argument before evaluating it (or any argument after it)
+  @Test
+  void test_duplicate_named_argument() {
+    for(var engine : Main.Engine.values()) {
+      var out = new ByteArrayOutputStream();
+      var isolate = new Interpreter(new PrintStream(out, true));
+      var code = "fn f(a, b) { a }; f(a = (print(1)), a = (print(2)), b = (print(3)))";
+      var error = assertThrows(Interpreter.InterpreterError.class, () -> engine.eval(isolate.scope(), Parser.parse(code)));
+      assertEquals("duplicated named argument `a`", error.getMessage(), engine.toString());
+      assertEquals("1" + System.lineSeparator(), out.toString(), engine.toString());
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("optimized")
+  void test_optimized(String code, String expected) {
+    assertEquals(expected, Node.show(Optimizer.optimize(Resolver.resolve(Parser.parse(code)))));
+  }
+
+  private static Stream<Arguments> optimized() {
+    return Stream.of(
+      arguments("print(1 + 2 * 3)", "Print[Const[7]]"),
+      arguments("print(-(1 - 3) < 3 <= 4)", "Print[Const[true]]"),
+      arguments("print([1, 'a', (2, 3)])", "Print[Const[[1, a, [2, 3]]]]"),
+      arguments("print(if not (1 == 2) then 'a' else x)", "Print[Const[a]]"),
+      arguments("print(if 1 > 2 { x })", "Print[Block[[Const[none]], 0]]"),
+      arguments("print(true and x and y)", "Print[And[[Ident[x], Ident[y]]]]"),
+      arguments("print(false and x)", "Print[Const[false]]"),
+      arguments("print(true or x)", "Print[Const[true]]"),
+      arguments("print(false or 1)", "Print[Or[[Const[false], Const[1]]]]"),
+      arguments("print(1 + true)", "Print[Binary[Ident[+], Const[1], Const[true]]]")
+    );
+  }
+
   private static Stream<Arguments> ok() {
     return Stream.of(
       arguments("false", "false"),
@@ -27,6 +181,7 @@ public class InterpreterTest {
       arguments("![].append(1)", "none"),
       arguments("[].append(1)", "[1]"),
       arguments("[].append(1, 2)", "[1, 2]"),
+      arguments("l = list(); l.append(); l.append(1, 2); l.append(3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21); [l.size, [0].append(1, 2, 3).size]", "[21, 4]"),
       arguments("'xyzz'.size", "4"),
       arguments("\"'\".join([4,6,7,])", "4'6'7"),
       arguments("'  '.join(![4,6,7,])", "4  6  7"),
@@ -71,6 +226,15 @@ public class InterpreterTest {
       arguments("class X { var a = 0; fn this.b { this.a } fn this.b = x { this.a = x; };; } x = X(); x.b = 7; [x.a, x.b]", "[7, 7]"),
       arguments("`g", "`g"),
       arguments("`g.name", "g"),
+      arguments("k = [1, 2]; d = !{}; d[k] = 'a'; d[[2, 1]] = 'b'; d[{x = k}] = 'c'; i = [[1, 2] = 1, [2, 1] = 2]; [d[[1, 2]], d[[2, 1]], d[{x = [1, 2]}], i.get(k), i.get([2, 1]), [i = 1].get([[2, 1] = 2, [1, 2] = 1])]", "[a, b, c, 1, 2, 1]"),
+      arguments("v = [1, 2, 3]; w = v.edit(t -> (t.append(4, 5); t[0] = 0; t.shift(); t.update(1, 9); t.append(t.size))); [v, w, vector.empty.edit(t -> t.append(1))]", "[[1, 2, 3], [0, 9, 3, 4, 4], [1]]"),
+      arguments("f(t, n) = (i = 0; while i < n { t.append(i * i); i = i + 1 }); v = vector.empty.edit(t -> f(t, 1000)); [v.size, v[999], v.edit(t -> (t[0] = t.get(999); t.shift())).first]", "[1000, 998001, 998001]"),
+      arguments("v = vector.empty.edit(t -> (i = 0; while i < 100 { t.append(i); i = i + 1 })); w = v.drop(40).concat(v.take(40)); [w.size, w[0], w[59], w[60], v.slice(10, 13), v.take(2).concat([7]), v.drop(98)]", "[100, 40, 99, 0, [10, 11, 12], [0, 1, 7], [98, 99]]"),
+      arguments("v = vector.empty.edit(t -> (i = 0; while i < 50000 { t.append(i); i = i + 1 })); k = 3; w = v.map(x -> x * k); e = w.filter(x -> x > 149000); " +
+        "[w.size, w[49999], e.size, e.first, v.sum(), w.reduce((a, b) -> a + b, 1), [1, 2, 3].map(x -> -x), [].sum(), [2].reduce((a, b) -> a * b, 5)]",
+        "[50000, 149997, 333, 149001, 1249975000, 3749925001, [-1, -2, -3], 0, 10]"),
+      arguments("i = [1 = 'a', 'b' = 2, [3] = {x = 4}, 1 = 'c']; j = i.update(5, 6).update(1, 'd'); [i.size, i[1], i.get([3]).x, j.size, j[1], j[5]]", "[3, c, 4, 4, d, 6]"),
+      arguments("f() = `tag; i = [`a = 1, `tag = 2]; d = !{`tag = 3}; [i.get(f()), d[f()], i.get(`a)]", "[2, 3, 1]"),
       arguments("x = 0; [(x = 1; false) and (x = 2; true) and (x = 3; true), x]", "[false, 1]"),
       arguments("x = 0; [(x = 1; true) and (x = 2; false) and (x = 3; true), x]", "[false, 2]"),
       arguments("x = 0; [(x = 1; true) and (x = 2; true) and (x = 3; false), x]", "[false, 3]"),
@@ -90,8 +254,12 @@ public class InterpreterTest {
       arguments("{x=1}.x", "1"),
       arguments("{x=1, y=5}.y", "5"),
       arguments("var a = 3; {x=1, a}", "{x=1, a=3}"),
-      arguments("var a = {x = 1, b = 2}; {x = 4, ...a, y=6}", "{x=1, y=6, b=2}"),
+      arguments("var a = {x = 1, b = 2}; {x = 4, ...a, y=6}", "{x=1, b=2, y=6}"),
       arguments("var a = {x = 1, b = 2}; {x = 4, ...a, b=6}", "{x=1, b=6}"),
+      arguments("a = {x = 1, b = 2}; [{...a, x = 3}, {...a, c = 4}, {c = 0, ...a}, {...a, ...{c = 5, x = 6}}, a]", "[{x=3, b=2}, {x=1, b=2, c=4}, {c=0, x=1, b=2}, {x=6, b=2, c=5}, {x=1, b=2}]"),
+      arguments("f(r) = r.x; var s = 0; for r in [{x = 1}, {y = 0, x = 2}, {x = 3, z = 0}, {...{x = 4}, w = 0}, {a = 0, x = 5}, {b = 0, x = 6}, {x = 7}] { s = s + f(r) } s", "28"),
+      arguments("r = {f = x -> x + 1, g = 2}; [r.f(2), {...r, f = x -> x * 3}.f(2)]", "[3, 6]"),
+      arguments("i = [{x = 1, y = 2} = 3]; [i.get({y = 2, x = 1}), i.update({...{y = 2}, x = 1}, 4).size]", "[3, 1]"),
       arguments("(1, 2, 3).pop()", "[2, 3]"),
       arguments("(1, 2, 3).shift()", "[1, 2]"),
       arguments("(1, 2, 3).push(5)", "[5, 1, 2, 3]"),
@@ -115,6 +283,11 @@ public class InterpreterTest {
       arguments("list(1,6)", "![1, 6]"),
       arguments("x = ![5, 2, 9]; [list.last(x), list.size(x)]", "[9, 3]"),
       arguments("x = ![5, 2, 0]; list.pop(x); list.append(x, 3, 8); x", "![2, 0, 3, 8]"),
+      arguments("l = ![1, 2]; a = l.storage; l.append(9223372036854775807 + 1); [a, l.storage, l, l[2] - 1]", "[`int, `value, ![1, 2, 9223372036854775808], 9223372036854775807]"),
+      arguments("l = ![1, 2, 3]; l[1] = 'x'; [l.storage, l[1], l.pop(), l.shift(), l]", "[`value, x, 1, 3, ![x]]"),
+      arguments("l = ![1, 2, 3, 4]; a = [l.storage, l.capacity]; l.append(5); b = [l.storage, l.capacity]; l[0] = 'x'; l.append(6, 7, 8, 9); [a, b, l.storage, l.capacity]", "[[`int, 4], [`int, 8], `value, 16]"),
+      arguments("l = ![]; var i = 0; while i < 10 { l.push(i); l.append(-i); i = i + 1 } [l.pop(), l.pop(), l.shift(), l.size, l[0], l[16], l.last, l.storage]", "[9, 8, -9, 17, 7, -8, -8, `int]"),
+      arguments("l = ![]; var i = 0; while i < 6 { l.append(i); l.pop(); l.push(i); i = i + 1 } var s = 0; for x in l { s = s + x } l.append(`a); [l, s]", "[![5, 1, 2, 3, 4, 5, `a], 20]"),
       arguments("[].push(1,5,2,3)", "[3, 2, 5, 1]"),
       arguments("vector.push(vector.empty, 1,5,2,3)", "[3, 2, 5, 1]"),
       arguments("int", "type int"),
@@ -126,31 +299,124 @@ public class InterpreterTest {
       arguments("[isinstance(1, int), isinstance(1, str), isinstance('s', str)]", "[true, false, true]"),
       arguments("12348571234 * 90834714", "1121678936349017076"),
       arguments("x=1;y=2;[x + (x = 2; y), x]", "[3, 2]"),
-      arguments("typeof(!{})", "type dict")
+      arguments("typeof(!{})", "type dict"),
+      arguments("t = task.spawn(() -> 1 + 2); [t.join(), task.join(t), t.done]", "[3, 3, true]"),
+      arguments("ts = ![]; for x in (1, 2, 3, 4) { ts.append(task.spawn(() -> x * x)) } var s = 0; for t in ts { s = s + t.join() } s", "30"),
+      arguments("fn body(s) { a = s.spawn(() -> 2); b = s.spawn(() -> 3); a.join() * b.join() }; task.scope(body)", "6"),
+      arguments("r = {x = 1, v = (1, 2)}; fn f() { var i = 0; while i < 3 { i = i + r.v[1] } i + r.x }; task.spawn(f).join()", "5"),
+      arguments("fn f() { throw 7 }; try { task.spawn(f).join() } catch e { e }", "7"),
+      arguments("ch = task.channel(2); fn produce() { for x in (1, 2, 3, 4, 5) { ch.send(x) } ch.close() }; p = task.spawn(produce); var s = 0; for x in ch { s = s + x } p.join(); [s, ch.closed, ch.size]", "[15, true, 0]"),
+      arguments("ch = task.channel(); fn produce(n) { var i = 0; while i < 100 { ch.send(n); i = i + 1 } }; ts = ![]; for n in (1, 2, 3) { ts.append(task.spawn(() -> produce(n))) } for t in ts { t.join() } ch.close(); var s = 0; for x in ch { s = s + x } s", "600"),
+      arguments("ch = task.channel(4); fn consume() { var s = 0; for x in ch { s = s + x } s }; cs = ![]; for k in (1, 2, 3) { cs.append(task.spawn(consume)) } var i = 0; while i < 100 { i = i + 1; ch.send(i) } ch.close(); var s = 0; for c in cs { s = s + c.join() } s", "5050"),
+      arguments("add(total, x) = total + x; a = task.actor(add, 0, 2); for x in (1, 2, 3) { a.send(x) } a.close(); a.join()", "6"),
+      arguments("[par.reduce(par.range(1, 101), x -> x * x, (a, b) -> a + b, 0), par.reduce(par.range(5), x -> x, (a, b) -> a + b, 100), par.reduce([], x -> x, (a, b) -> a + b, 7)]", "[338350, 110, 7]"),
+      arguments("ch = task.channel(); par.each(par.range(10), x -> ch.send(x * 2)); ch.close(); var s = 0; for x in ch { s = s + x } s", "90"),
+      arguments("par.reduce([1 = 10, 2 = 20, 3 = 30], (k, v) -> k * v, (a, b) -> a + b, 0)", "140"),
+      arguments("v = vector.empty.edit(t -> (i = 0; while i < 20000 { t.append(i); i = i + 1 })); par.reduce(v, x -> x, (a, b) -> a + b, 0)", "199990000"),
+      arguments("var s = 0; for i in par.range(2, 5) { s = s + i } [s, par.range(3).size, par.range(3)]", "[9, 3, range(0, 3)]"),
+      arguments("par.range(0 - 9223372036854775807, 9223372036854775807).size", "18446744073709551614"),
+      arguments("var d = [1 = 1]; var i = 2; while i < 5000 { d = d.update(i, i); i = i + 1 }; par.reduce(d, (k, v) -> k * v, (a, b) -> a + b, 0)", "41654167500"),
+      arguments("fn f(x) { if x == 7 { throw x } }; try { par.each(par.range(100), f) } catch e { e }", "7"),
+      arguments("ch = task.channel(); ch.send(`a); ch.close(); [ch.receive(), typeof(ch)]", "[`a, type task.channel]"),
+      arguments("ch = task.channel(40); var i = 0; while i < 40 { ch.send(i); i = i + 1 } big = task.channel(1000000000); big.send(1); [ch.size, ch.receive(), big.receive()]", "[40, 0, 1]"),
+      arguments("d = !{3 = 'a', 1 = 'b', 2 = 'c', 1 = 'd'}; d[0] = 'e'; d.remove(3); d[3] = 'f'; [d.size, d.remove(7), d]", "[4, none, !{1=d, 2=c, 0=e, 3=f}]"),
+      arguments("d = !{}; var i = 0; var j = 0; while i < 300 { d[i] = i; j = j + 1; if j < 3 { d.remove(i) } else { j = 0 } i = i + 1 } [d.size, d[299], d[98]]", "[100, 299, 98]"),
+      arguments("f() = (g() = x; x = 5; g()); f()", "5"),
+      arguments("x = 1; f() = (x = x + 1; x); [f(), f(), x]", "[2, 3, 3]"),
+      arguments("x = 1; f() = (var x = x + 1; x); [f(), f(), x]", "[2, 2, 1]"),
+      arguments("fs = ![]; for i in [1, 2, 3] { fs.append(() -> i) } [fs[0](), fs[2]()]", "[1, 3]"),
+      arguments("f(x, y=x+1) = (g() = x + y; g()); f(2)", "5"),
+      arguments("f(x) = (throw x); g(x) = (try { f(x) } catch e { e + 1 }); g(4)", "5"),
+      arguments("try { for i in [1, 2] { try { break } catch e { 0 } } throw 7 } catch e { e }", "7"),
+      arguments("class A { var x = 1 }; class B { var y = 0; var x = 2 }; g(o) = o.x; [g(A()), g(B()), g(A()), g({x = 3})]", "[1, 2, 1, 3]"),
+      arguments("f(g, x) = g(x); [f(math.sign, -4), f(y -> y + 1, 1), f(int, '3')]", "[-1, 2, 3]"),
+      arguments("[9223372036854775807 + 1, -9223372036854775807 - 1 - 1, 3037000500 * 3037000500]", "[9223372036854775808, -9223372036854775809, 9223372037000250000]"),
+      arguments("x = 9223372036854775807 + 1; [x - 1 - 9223372036854775807, -(-9223372036854775807 - 1)]", "[0, 9223372036854775808]"),
+      arguments("[1 < 9223372036854775808, 9223372036854775808 == 9223372036854775807 + 1, -9223372036854775809 < -9223372036854775808]", "[true, true, true]"),
+      arguments("i = [9223372036854775808 = 1, 5 = 2]; [i.get(9223372036854775807 + 1), i.get(int('5')), i.get(9223372036854775809 - 9223372036854775804)]", "[1, 2, 2]"),
+      arguments("f(x, y=x+1, z=0) = [x, y, z]; [f(1), f(1, z=5), f(z=3, x=2), f(y=1, 4)]", "[[1, 2, 0], [1, 2, 5], [2, 3, 3], [4, 1, 0]]"),
+      arguments("f(a, b) = a - b; g(h) = h(b=1, a=5); [g(f), g(f), g((b, a) -> a * b)]", "[4, 4, 5]"),
+      arguments("class A { var x = 1; fn add(y, z=10) { this.x + y + z } }; a = A(); [a.add(z=0, y=2), a.add(1)]", "[3, 12]"),
+      arguments("class A { var x = 1 }; class B { var x = 2 }; class C { var y = 0; var x = 3 }; class D { var x = 4 }; class E { var x = 5 }; " +
+        "g(o) = (o.x = o.x * 10; o.x); [g(A()), g(B()), g(C()), g(D()), g(E()), g(A()), g(C())]", "[10, 20, 30, 40, 50, 10, 30]"),
+      arguments("class A { fn f(x) { x + 1 } }; class B { var f = x -> x * 2 }; class C { fn this.f { y -> y - 1 } }; " +
+        "g(o) = o.f(10); [g(A()), g(B()), g(C()), g(A()), g({f = x -> x})]", "[11, 20, 9, 11, 10]"),
+      arguments("r = {iter = () -> r, next = () -> (throw 5)}; try { ' '.join(r) } catch e { e + 1 }", "6"),
+      arguments("a = ![]; a.append(); list.append(a, 1, 2, 3); [str.join('-', a), a.size, list.size(a)]", "[1-2-3, 3, 3]"),
+      arguments("b = jvm.cls('java.lang.StringBuilder')(); for s in ['x', 'y', 'z'] { b.append(s) } [b.toString(), b.length(), b.reverse().toString()]", "[xyz, 3, zyx]"),
+      arguments("fn f(n) { if n == 0 { throw 'x' } return f(n - 1) }; fn g() { try { return f(3) } catch e { [e] } }; g()", "[x]"),
+      arguments("f() = [1, (2, 'a')]; [f()[1][1], -(2 * 3) + 1, 1 < 2 < 3, if 1 == 2 then 'x' else 'y', true and not false, false or 2 > 1]", "[a, -5, true, y, true, true]")
+    );
+  }
+
+  private static Stream<String> errors() {
+    return Stream.of(
+      "y",
+      "1 + true",
+      "if 1 then 'x' else 'y'",
+      "[][true]",
+      "f(x) = x + y; f(3)",
+      "m() = (x = 0; 1); m(); x",
+      "while 1 {}",
+      "class X { var a = 0 }; x = X(); x.b = 2",
+      "class X { var a = 0 }; x = X(); x.b",
+      "class X { var a = 0; var a = 1 }",
+      "{}.a",
+      "{x=1, x=2}",
+      "a = 1; {...a}",
+      "a={}; {a=1, ...a, a=1}",
+      "f(x, y=x+1, z=0) = x + y + z; f(z=2)",
+      "f(x, y=x+1, z=0) = x + y + z; f(z=2, y=5)",
+      "list.size([1,2,3])",
+      "var x = 1; var x = 2",
+      "f(x) = x; f(y=1)",
+      "f(x) = x; f(x=1, x=2)",
+      "f(x, y) = x; f(y=2)",
+      "[].iter(1)",
+      "math.sign()",
+      "math.sign('x')",
+      "str.join(1, [])",
+      "l = ![]; [1].edit(t -> l.append(t)); l[0].append(2)",
+      "[1, 2, 3].slice(2, 1)",
+      "vector.empty.edit(t -> (i = 0; while i < 20000 { t.append(i); i = i + 1 })).map(x -> if x == 12345 then x + true else x)",
+      "var n = 0; vector.empty.edit(t -> (i = 0; while i < 20000 { t.append(i); i = i + 1 })).map(x -> (n = n + 1; x)); n",
+      "[1 = 2].get(2)",
+      "task.spawn(() -> 1 + true).join()",
+      "ch = task.channel(1); ch.close(); ch.send(1)",
+      "var n = 0; par.each(par.range(10), x -> (n = x))",
+      "fn outer(i) { var c = 0; par.each(par.range(2000), j -> (c = c + 1)); c }; par.reduce(par.range(64), outer, (x, y) -> x + y, 0)",
+      "par.each(5, x -> x)",
+      "par.each([1, 2, true], x -> x + 1)",
+      "task.channel(0)",
+      "add(total, x) = total + x; a = task.actor(add, 0); a.send(true); a.close(); a.join()",
+      "add(total, x) = total + x; a = task.actor(add, 0, 1); a.send(true); var i = 0; while i < 100 { a.send(i); i = i + 1 }",
+      "var n = 0; fn f() { n = n + 1 }; task.spawn(f).join()",
+      "fn f(x) { fn g() { x = 2 }; task.spawn(g).join() }; f(1)",
+      "fn body(s) { s.spawn(() -> 1 + true); 5 }; task.scope(body)",
+      "![].pop()",
+      "l = ![1]; for x in l { l.append(x) }",
+      "f(r) = r.y; [f({y = 1}), f({x = 1})]",
+      "{...1}",
+      "true and 1",
+      "if 1 < 2 then -'x' else 0"
     );
   }
 
   @ParameterizedTest
-  @ValueSource(strings = {
-    "y",
-    "1 + true",
-    "if 1 then 'x' else 'y'",
-    "[][true]",
-    "f(x) = x + y; f(3)",
-    "m() = (x = 0; 1); m(); x",
-    "while 1 {}",
-    "class X { var a = 0 }; x = X(); x.b = 2",
-    "class X { var a = 0 }; x = X(); x.b",
-    "class X { var a = 0; var a = 1 }",
-    "{}.a",
-    "{x=1, x=2}",
-    "a = 1; {...a}",
-    "a={}; {a=1, ...a, a=1}",
-    "f(x, y=x+1, z=0) = x + y + z; f(z=2)",
-    "f(x, y=x+1, z=0) = x + y + z; f(z=2, y=5)",
-    "list.size([1,2,3])",
-  })
+  @MethodSource("errors")
   void test_error(String code) {
     assertThrows(Interpreter.InterpreterError.class, () -> Interpreter.eval(Parser.parse(code)));
   }
+
+  @ParameterizedTest
+  @MethodSource("errors")
+  void test_error_ast(String code) {
+    assertThrows(Interpreter.InterpreterError.class, () -> caya.ast.Tree.eval(Parser.parse(code)));
+  }
+
+  @ParameterizedTest
+  @MethodSource("errors")
+  void test_error_vm(String code) {
+    assertThrows(Interpreter.InterpreterError.class, () -> caya.bytecode.VM.eval(Parser.parse(code)));
+  }
 }
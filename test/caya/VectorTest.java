@@ -0,0 +1,200 @@
+package caya;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import caya.Builtins.Int;
+import caya.Runtime.Value;
+
+public class VectorTest {
+  private static Stream<Integer> sizes() {
+    return Stream.of(0, 1, 2, 31, 32, 33, 64, 65, 95, 96, 97, 1000, 1024, 1025, 1056, 1057, 2048, 33 * 32 + 1, 32768, 32800, 40000);
+  }
+
+  private static Vector<Value> appended(int size) {
+    @SuppressWarnings("unchecked")
+    var v = (Vector<Value>) Vector.empty;
+    for(var i = 0; i < size; i++) { v = v.append_one(Int.of(i)); }
+    return v;
+  }
+
+  private static Vector<Value> built(int size) {
+    var builder = new Vector.Builder<Value>();
+    for(var i = 0; i < size; i++) { builder.add(Int.of(i)); }
+    return builder.build();
+  }
+
+  private static void check(java.util.List<Value> expected, Vector<Value> v) {
+    assertEquals(expected.size(), v.size_int32());
+    assertEquals(expected, v.toList());
+    for(var i = 0; i < expected.size(); i++) { assertEquals(expected.get(i), v.get(i)); }
+  }
+
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_builder(int size) {
+    var v = built(size);
+    check(appended(size).toList(), v);
+    assertEquals(appended(size), v);
+    assertEquals(appended(size).hashCode(), v.hashCode());
+  }
+
+  // a built vector must keep working with all persistent operations
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_builder_operations(int size) {
+    var random = new Random(size);
+    var v = built(size);
+    var expected = new ArrayList<Value>(v.toList());
+    for(var step = 0; step < 3000; step++) {
+      var value = Int.of(-step);
+      switch(random.nextInt(expected.isEmpty() ? 2 : 5)) {
+        case 0 -> { v = v.append_one(value); expected.add(value); }
+        case 1 -> { v = v.push_one(value); expected.add(0, value); }
+        case 2 -> { v = v.shift(); expected.remove(expected.size() - 1); }
+        case 3 -> { v = v.pop(); expected.remove(0); }
+        default -> { var i = random.nextInt(expected.size()); v = v.update_int32(i, value); expected.set(i, value); }
+      }
+      if(step % 100 == 0) { check(expected, v); }
+    }
+    check(expected, v);
+  }
+
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_slice(int size) {
+    var random = new Random(size);
+    // vectors with a non-empty left half have leaves that aren't aligned to multiples of 32
+    for(var v : java.util.List.of(built(size), built(size).push_one(Int.of(-1)).push_one(Int.of(-2)))) {
+      var expected = v.toList();
+      for(var k = 0; k < 50; k++) {
+        var from = random.nextInt(expected.size() + 1);
+        var to = from + random.nextInt(expected.size() - from + 1);
+        check(expected.subList(from, to), v.slice_int32(from, to));
+      }
+      check(expected, v.take(Int.of(expected.size() + 5)));
+      check(expected.subList(0, 0), v.drop(Int.of(expected.size())));
+      check(expected.subList(Math.min(3, expected.size()), expected.size()), v.drop(Int.of(3)));
+      check(expected.subList(0, Math.min(40, expected.size())), v.take(Int.of(40)));
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_concat(int size) {
+    for(var other_size : new int[] {0, 1, 5, 32, 33, 100, 1025}) {
+      var a = built(size);
+      var b = built(other_size).push_one(Int.of(-1));
+      var expected = new ArrayList<Value>(a.toList());
+      expected.addAll(b.toList());
+      var v = a.concat(b);
+      check(expected, v);
+      // the result must keep working with all persistent operations
+      v = v.push_one(Int.of(-2)).append_one(Int.of(-3)).pop().shift().update_int32(expected.size() / 2, Int.of(-4));
+      expected.set(expected.size() / 2, Int.of(-4));
+      check(expected, v);
+      check(expected, b.push_one(Int.of(0)).pop().slice_int32(0, 0).concat(v));
+    }
+  }
+
+  // random chains of slices and concatenations (of unaligned pieces), mixed with the other persistent operations
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_slice_concat_operations(int size) {
+    var random = new Random(size);
+    var v = built(size).push_one(Int.of(-1));
+    var expected = new ArrayList<Value>(v.toList());
+    for(var step = 0; step < 400; step++) {
+      var value = Int.of(-step);
+      switch(random.nextInt(7)) {
+        case 0, 1 -> {
+          var from = random.nextInt(expected.size() + 1);
+          var to = from + random.nextInt(expected.size() - from + 1);
+          v = v.slice_int32(from, to);
+          expected = new ArrayList<>(expected.subList(from, to));
+        }
+        case 2, 3 -> {
+          var n = random.nextInt(2000);
+          var other = built(n).push(Int.of(-2), Int.of(-3)).slice_int32(1, random.nextInt(2, n + 3));
+          if(random.nextBoolean()) {
+            v = v.concat(other);
+            expected.addAll(other.toList());
+          } else {
+            v = other.concat(v);
+            expected.addAll(0, other.toList());
+          }
+        }
+        case 4 -> { v = v.concat(v); expected.addAll(new ArrayList<>(expected)); }
+        case 5 -> { v = v.append_one(value).push_one(value); expected.add(value); expected.add(0, value); }
+        default -> {
+          if(expected.size() >= 2) { v = v.pop().shift(); expected.remove(0); expected.remove(expected.size() - 1); }
+          if(!expected.isEmpty()) { var i = random.nextInt(expected.size()); v = v.update_int32(i, value); expected.set(i, value); }
+        }
+      }
+      if(expected.size() > 100000) { v = v.take(Int.of(50000)); expected = new ArrayList<>(expected.subList(0, 50000)); }
+      if(step % 20 == 0) { check(expected, v); }
+    }
+    check(expected, v);
+    assertEquals(Vector.make(expected), v);
+    assertEquals(expected, java.util.stream.StreamSupport.stream(v.spliterator(), true).toList());
+  }
+
+  // slicing and concatenating unaligned vectors shares all leaves but those at the edges
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_slice_concat_sharing(int size) {
+    if(size < 1000) { return; }
+    var v = built(size).push_one(Int.of(-1));
+    var sliced = v.slice_int32(1, size - 1);
+    assertSame(v.array_at(size / 2), sliced.array_at(size / 2 - 1));
+    var concatenated = sliced.concat(v);
+    assertSame(v.array_at(size / 2), concatenated.array_at(size / 2 - 1));
+    assertSame(v.array_at(size / 2), concatenated.array_at(size - 2 + size / 2));
+    // a long chain of slices and concatenations doesn't copy the whole vector each time
+    var expected = new ArrayList<Value>(concatenated.toList());
+    for(var i = 0; i < 10000; i++) {
+      var n = concatenated.size_int32();
+      concatenated = concatenated.slice_int32(1, n).concat(concatenated.slice_int32(0, 1));
+    }
+    java.util.Collections.rotate(expected, -10000);
+    check(expected, concatenated);
+  }
+
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_spliterator(int size) {
+    var v = built(size).push_one(Int.of(-1));
+    assertEquals(v.toList(), java.util.stream.StreamSupport.stream(v.spliterator(), true).toList());
+    assertEquals(v.toList(), java.util.stream.StreamSupport.stream(v.spliterator(), false).toList());
+    var s = v.spliterator();
+    var prefix = s.trySplit();
+    if(prefix != null) {
+      assertEquals(v.size_int32(), prefix.estimateSize() + s.estimateSize());
+      var items = new ArrayList<Value>();
+      prefix.forEachRemaining(items::add);
+      while(s.tryAdvance(items::add)) {}
+      assertEquals(v.toList(), items);
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("sizes")
+  void test_transient(int size) {
+    var original = built(size);
+    var t = new Vector.Transient(original);
+    var expected = new ArrayList<Value>(original.toList());
+    for(var i = 0; i < size / 2 + 40; i++) { t.append(Int.of(-i)); expected.add(Int.of(-i)); }
+    if(size > 0) { t.update(Int.of(size / 2), Int.of(7)); expected.set(size / 2, Int.of(7)); }
+    assertEquals(expected.remove(expected.size() - 1), t.shift());
+    assertEquals(Int.of(expected.size()), t.size());
+    check(expected, t.persistent());
+    check(IntStream.range(0, size).<Value>mapToObj(Int::of).toList(), original);
+  }
+}
@@ -0,0 +1,77 @@
+package caya.ast;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+import caya.Builtins.Int;
+import caya.Interpreter;
+import static caya.Builtins.*;
+
+public class ExecTest {
+  private static Exec constant(long value) { return new Exec.Const(Int.of(value)); }
+
+  @Test
+  void test_arith_stays_specialized() {
+    var block = new Exec.Block(0, new Exec[] {Exec.arith('*', constant(6), constant(7))}, false);
+    assertEquals(Int.of(42), block.execute(Interpreter.shared.scope()));
+    assertInstanceOf(Exec.MulInt.class, block.exprs[0]);
+  }
+
+  @Test
+  void test_arith_replaced_on_overflow() {
+    var add = Exec.arith('+', constant(Long.MAX_VALUE), constant(1));
+    var block = new Exec.Block(0, new Exec[] {add}, false);
+    var scope = Interpreter.shared.scope();
+    assertEquals("9223372036854775808", block.execute(scope).toString());
+    var generic = assertInstanceOf(Exec.Add.class, block.exprs[0]);
+    assertSame(block, generic.parent);
+    assertSame(generic, generic.left.parent);
+    // the replaced node delegates, e.g. when it's still the body of an existing function
+    assertEquals("9223372036854775808", add.execute(scope).toString());
+    assertEquals("9223372036854775808", block.execute(scope).toString());
+  }
+
+  @Test
+  void test_neg_replaced_in_field() {
+    var neg = new Exec.If(new Exec.Const(TRUE), new Exec.NegInt(constant(Long.MIN_VALUE)), null);
+    assertEquals("9223372036854775808", neg.execute(Interpreter.shared.scope()).toString());
+    assertInstanceOf(Exec.Neg.class, neg.then);
+  }
+
+  // a callee whose value can be changed between executions
+  private static final class Callee extends Exec {
+    caya.Runtime.Value value;
+    @Override public caya.Runtime.Value execute(caya.Interpreter.Scope scope) { return value; }
+  }
+
+  @Test
+  void test_call_specialized_and_replaced() {
+    var scope = Interpreter.shared.scope();
+    var callee = new Callee();
+    callee.value = new caya.Builtins.Function("math_sign");
+    var call = Exec.call(callee, new Exec[] {constant(-5)}, null);
+    var block = new Exec.Block(0, new Exec[] {call}, false);
+    assertEquals(Int.of(-1), block.execute(scope));
+    var builtin = assertInstanceOf(Exec.CallBuiltin.class, block.exprs[0]);
+    assertSame(builtin, callee.parent);
+    assertEquals(Int.of(-1), block.execute(scope));
+    assertSame(builtin, block.exprs[0]);
+    // a different kind of callee makes the call generic; the replaced nodes delegate to it
+    callee.value = Tree.eval(caya.Parser.parse("x -> x * 2"));
+    assertEquals(Int.of(-10), block.execute(scope));
+    var generic = assertInstanceOf(Exec.CallGeneric.class, block.exprs[0]);
+    assertSame(block, generic.parent);
+    assertEquals(Int.of(-10), call.execute(scope));
+    assertEquals(Int.of(-10), builtin.execute(scope));
+  }
+
+  @Test
+  void test_call_specialized_to_function() {
+    var call = Exec.call(new Exec.Const(Tree.eval(caya.Parser.parse("x -> x + 1"))), new Exec[] {constant(1)}, null);
+    var block = new Exec.Block(0, new Exec[] {call}, false);
+    assertEquals(Int.of(2), block.execute(Interpreter.shared.scope()));
+    assertInstanceOf(Exec.CallFunction.class, block.exprs[0]);
+  }
+}